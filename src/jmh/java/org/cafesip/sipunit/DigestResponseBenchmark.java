@@ -0,0 +1,58 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cafesip.sipunit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Digest responses computed per second on a single thread, for each supported algorithm, with and
+ * without an auth-int body. Run with -prof gc to see the allocation rate per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DigestResponseBenchmark {
+
+  private static final byte[] BODY = ("v=0\r\no=user1 53655765 2353687637 IN IP4 127.0.0.1\r\n"
+      + "s=-\r\nc=IN IP4 127.0.0.1\r\nt=0 0\r\nm=audio 6000 RTP/AVP 0\r\n"
+      + "a=rtpmap:0 PCMU/8000\r\n").getBytes(StandardCharsets.UTF_8);
+
+  @Param({"MD5", "MD5-sess", "SHA-256", "SHA-512-256"})
+  private String algorithm;
+
+  @Benchmark
+  public String register() {
+    return MessageDigestAlgorithm.calculateResponse(algorithm, "amit", "cafesip.org", "a1b2c3d4",
+        "4f2c9d3e5b6a7c8d", "00000001", "0a4f113b", "REGISTER", "sip:cafesip.org", (byte[]) null,
+        "auth");
+  }
+
+  @Benchmark
+  public String inviteAuthInt() {
+    return MessageDigestAlgorithm.calculateResponse(algorithm, "amit", "cafesip.org", "a1b2c3d4",
+        "4f2c9d3e5b6a7c8d", "00000001", "0a4f113b", "INVITE", "sip:becky@cafesip.org", BODY,
+        "auth-int");
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cafesip.sipunit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.RequestEvent;
+import javax.sip.message.Request;
+
+/**
+ * Many threads dispatching incoming requests through the same SipStack in parallel, the way the
+ * JAIN-SIP reader threads do under load. Each receiving phone has a MESSAGE request listener
+ * registered so that the per-session listener registry is exercised as well. Throughput should
+ * scale with the thread count since dispatch doesn't take any shared lock.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DispatchContentionBenchmark {
+
+  private static final String HOST = "127.0.0.1";
+
+  private static final int PORT = 5072;
+
+  private static final int PHONE_COUNT = 1000;
+
+  @State(Scope.Benchmark)
+  public static class StackState {
+
+    SipStack stack;
+
+    List<SipPhone> phones;
+
+    List<RequestEvent> requests;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      Properties props = new Properties();
+      props.setProperty("javax.sip.STACK_NAME", "contentionBenchmark");
+      props.setProperty("javax.sip.IP_ADDRESS", HOST);
+      props.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+
+      stack = new SipStack(SipStack.PROTOCOL_UDP, PORT, props);
+
+      phones = new ArrayList<>(PHONE_COUNT);
+      requests = new ArrayList<>(PHONE_COUNT);
+      for (int i = 0; i < PHONE_COUNT; i++) {
+        SipPhone phone = stack.createSipPhone("sip:user" + i + "@cafesip.org");
+        phone.addRequestListener(Request.MESSAGE, event -> {
+        });
+        phones.add(phone);
+        requests.add(createRequestEvent("user" + i));
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      for (SipPhone phone : phones) {
+        phone.dispose();
+      }
+      stack.dispose();
+    }
+
+    private RequestEvent createRequestEvent(String user) throws Exception {
+      String msg = "MESSAGE sip:" + user + "@" + HOST + ":" + PORT + " SIP/2.0\r\n"
+          + "Via: SIP/2.0/UDP " + HOST + ":5073;branch=z9hG4bKcontention\r\n"
+          + "Max-Forwards: 70\r\n"
+          + "From: <sip:benchmark@cafesip.org>;tag=1234\r\n"
+          + "To: <sip:" + user + "@cafesip.org>\r\n"
+          + "Call-ID: contention-" + user + "@" + HOST + "\r\n"
+          + "CSeq: 1 MESSAGE\r\n"
+          + "Content-Length: 0\r\n\r\n";
+
+      Request request = stack.getMessageFactory().createRequest(msg);
+      return new RequestEvent(stack.getSipProvider(), null, null, request);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void dispatchSingleThread(StackState state) {
+    dispatch(state);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void dispatchEightThreads(StackState state) {
+    dispatch(state);
+  }
+
+  @Benchmark
+  @Threads(32)
+  public void dispatchThirtyTwoThreads(StackState state) {
+    dispatch(state);
+  }
+
+  private static void dispatch(StackState state) {
+    int index = ThreadLocalRandom.current().nextInt(PHONE_COUNT);
+    state.stack.processRequest(state.requests.get(index));
+  }
+}
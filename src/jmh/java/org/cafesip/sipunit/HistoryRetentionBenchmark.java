@@ -0,0 +1,156 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.SipFactory;
+import javax.sip.message.MessageFactory;
+
+/**
+ * Heap retained by the received message history of 10k established calls under each
+ * HistoryPolicy. Every call gets the responses of its INVITE transaction (100, 180, 200) followed
+ * by a number of in-dialog requests, each a separately parsed message as it would be coming off
+ * the wire. The retainedBytes counter is the heap still in use after a full GC with all the
+ * histories reachable, less the heap in use before they were filled.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class HistoryRetentionBenchmark {
+
+  private static final int CALL_COUNT = 10000;
+
+  private static final String[] RESPONSE_STATUS = {"100 Trying", "180 Ringing", "200 OK"};
+
+  @Param({"FULL", "LAST_4", "NONE"})
+  private String policy;
+
+  @Param({"10"})
+  private int requestsPerCall;
+
+  public long retainedBytes;
+
+  private HistoryPolicy historyPolicy;
+
+  private MessageFactory messageFactory;
+
+  private List<MessageHistory<?>> histories;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    switch (policy) {
+      case "FULL":
+        historyPolicy = HistoryPolicy.FULL;
+        break;
+      case "NONE":
+        historyPolicy = HistoryPolicy.NONE;
+        break;
+      default:
+        historyPolicy = HistoryPolicy.lastN(Integer.parseInt(policy.substring("LAST_".length())));
+    }
+
+    messageFactory = SipFactory.getInstance().createMessageFactory();
+  }
+
+  @Setup(Level.Iteration)
+  public void release() {
+    histories = null;
+    retainedBytes = 0;
+  }
+
+  @Benchmark
+  public Object establishCalls() throws Exception {
+    long before = usedHeap();
+
+    List<MessageHistory<?>> calls = new ArrayList<>(CALL_COUNT * 2);
+    for (int i = 0; i < CALL_COUNT; i++) {
+      String callId = "history-" + i + "@127.0.0.1";
+
+      MessageHistory<SipResponse> responses = new MessageHistory<>(historyPolicy);
+      for (int j = 0; j < RESPONSE_STATUS.length; j++) {
+        responses.add(new SipResponse(
+            messageFactory.createResponse(response(callId, RESPONSE_STATUS[j]))));
+      }
+
+      MessageHistory<SipRequest> requests = new MessageHistory<>(historyPolicy);
+      for (int j = 0; j < requestsPerCall; j++) {
+        requests.add(new SipRequest(messageFactory.createRequest(request(callId, j + 2))));
+      }
+
+      calls.add(responses);
+      calls.add(requests);
+    }
+
+    histories = calls;
+    retainedBytes = usedHeap() - before;
+    return histories;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static String response(String callId, String status) {
+    return "SIP/2.0 " + status + "\r\n"
+        + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK" + callId.hashCode() + "\r\n"
+        + "From: <sip:amit@cafesip.org>;tag=1111\r\n"
+        + "To: <sip:becky@cafesip.org>;tag=2222\r\n"
+        + "Call-ID: " + callId + "\r\n"
+        + "CSeq: 1 INVITE\r\n"
+        + "Contact: <sip:becky@127.0.0.1:5061>\r\n"
+        + "Content-Length: 0\r\n\r\n";
+  }
+
+  private static String request(String callId, int cseq) {
+    return "INFO sip:amit@127.0.0.1:5060 SIP/2.0\r\n"
+        + "Via: SIP/2.0/UDP 127.0.0.1:5061;branch=z9hG4bK" + callId.hashCode() + cseq + "\r\n"
+        + "Max-Forwards: 70\r\n"
+        + "From: <sip:becky@cafesip.org>;tag=2222\r\n"
+        + "To: <sip:amit@cafesip.org>;tag=1111\r\n"
+        + "Call-ID: " + callId + "\r\n"
+        + "CSeq: " + cseq + " INFO\r\n"
+        + "Content-Type: application/dtmf-relay\r\n"
+        + "Content-Length: 24\r\n\r\n"
+        + "Signal=5\r\nDuration=160\r\n";
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cafesip.sipunit;
+
+import org.cafesip.sipunit.presenceparser.pidf.Presence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Throughput of parsing a NOTIFY PIDF body: the way PresenceSubscriber used to do it (building a
+ * new JAXBContext per NOTIFY), the JaxbPidfParser with its cached context and per-thread
+ * Unmarshaller, and the streaming StaxPidfParser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PidfParsingBenchmark {
+
+  private static final byte[] BODY = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<presence entity=\"sip:becky@cafesip.org\" xmlns=\"urn:ietf:params:xml:ns:pidf\">"
+      + "<tuple id=\"1\"><status><basic>open</basic></status>"
+      + "<contact priority=\"0.8\">sip:becky@192.168.1.101</contact>"
+      + "<note xml:lang=\"en\">Available</note></tuple>"
+      + "<tuple id=\"2\"><status><basic>closed</basic></status></tuple>"
+      + "<note>Working from home</note></presence>").getBytes(StandardCharsets.UTF_8);
+
+  @Benchmark
+  public Presence newContextPerNotify() throws Exception {
+    Unmarshaller parser =
+        JAXBContext.newInstance("org.cafesip.sipunit.presenceparser.pidf").createUnmarshaller();
+    parser.setEventHandler(arg -> arg.getMessage().startsWith("Unexpected element"));
+    return parser.unmarshal(new StreamSource(new ByteArrayInputStream(BODY)), Presence.class)
+        .getValue();
+  }
+
+  private final PidfParser jaxbParser = new JaxbPidfParser();
+
+  private final PidfParser staxParser = new StaxPidfParser();
+
+  @Benchmark
+  public PidfDocument jaxbParser() throws Exception {
+    return jaxbParser.parse(BODY);
+  }
+
+  @Benchmark
+  public PidfDocument staxParser() throws Exception {
+    return staxParser.parse(BODY);
+  }
+}
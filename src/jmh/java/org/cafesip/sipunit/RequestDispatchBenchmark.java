@@ -0,0 +1,112 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cafesip.sipunit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.RequestEvent;
+import javax.sip.message.Request;
+
+/**
+ * Measures the cost of dispatching one incoming request through SipStack.processRequest() as the
+ * number of SipPhones on the stack grows. A request addressed to one of the phones should cost the
+ * same regardless of the phone count; an unroutable request falls back to offering the request to
+ * every phone and grows linearly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestDispatchBenchmark {
+
+  private static final String HOST = "127.0.0.1";
+
+  private static final int PORT = 5070;
+
+  @Param({"10", "1000", "5000"})
+  private int phoneCount;
+
+  private SipStack stack;
+
+  private List<SipPhone> phones;
+
+  private RequestEvent routedRequest;
+
+  private RequestEvent unroutedRequest;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("javax.sip.STACK_NAME", "dispatchBenchmark");
+    props.setProperty("javax.sip.IP_ADDRESS", HOST);
+    props.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+
+    stack = new SipStack(SipStack.PROTOCOL_UDP, PORT, props);
+
+    phones = new ArrayList<>(phoneCount);
+    for (int i = 0; i < phoneCount; i++) {
+      phones.add(stack.createSipPhone("sip:user" + i + "@cafesip.org"));
+    }
+
+    routedRequest = createRequestEvent("user" + (phoneCount / 2));
+    unroutedRequest = createRequestEvent("nobody");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    for (SipPhone phone : phones) {
+      phone.dispose();
+    }
+    stack.dispose();
+  }
+
+  private RequestEvent createRequestEvent(String user) throws Exception {
+    String msg = "MESSAGE sip:" + user + "@" + HOST + ":" + PORT + " SIP/2.0\r\n"
+        + "Via: SIP/2.0/UDP " + HOST + ":5071;branch=z9hG4bKbenchmark\r\n"
+        + "Max-Forwards: 70\r\n"
+        + "From: <sip:benchmark@cafesip.org>;tag=1234\r\n"
+        + "To: <sip:" + user + "@cafesip.org>\r\n"
+        + "Call-ID: benchmark@" + HOST + "\r\n"
+        + "CSeq: 1 MESSAGE\r\n"
+        + "Content-Length: 0\r\n\r\n";
+
+    Request request = stack.getMessageFactory().createRequest(msg);
+    return new RequestEvent(stack.getSipProvider(), null, null, request);
+  }
+
+  @Benchmark
+  public void dispatchRoutedRequest() {
+    stack.processRequest(routedRequest);
+  }
+
+  @Benchmark
+  public void dispatchUnroutedRequest() {
+    stack.processRequest(unroutedRequest);
+  }
+}
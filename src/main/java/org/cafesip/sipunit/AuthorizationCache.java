@@ -0,0 +1,282 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.header.AuthorizationHeader;
+
+/**
+ * This class holds the AuthorizationHeaders a SipPhone has created in response to authentication
+ * challenges, per Call-ID, so that they can be added to subsequent requests of the same call. See
+ * SipPhone.getAuthorizationCache().
+ * 
+ * <p>
+ * The cache is bounded. When it is full, the least recently used Call-ID is evicted to make room
+ * for a new one, and a Call-ID that hasn't been used for longer than the time-to-live is dropped.
+ * Entries are also removed when the SipCall or subscription they belong to is disposed. The
+ * eviction and miss counters can be used by a long running test to check that the cache is sized
+ * right: an evicted Call-ID that is still in use goes through authentication again when it's next
+ * challenged.
+ * 
+ */
+public class AuthorizationCache {
+
+  /**
+   * The default maximum number of Call-IDs held.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  /**
+   * The default time-to-live, in milliseconds, of a Call-ID that isn't being used.
+   */
+  public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(1);
+
+  private static class Entry {
+
+    private final LinkedHashMap<String, AuthorizationHeader> authorizations =
+        new LinkedHashMap<>();
+
+    private long lastAccess;
+  }
+
+  // access ordered, the eldest entry is the least recently used one
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+  private long timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIME_TO_LIVE);
+
+  private long evictionCount;
+
+  private long expirationCount;
+
+  private long removalCount;
+
+  private long hitCount;
+
+  private long missCount;
+
+  protected AuthorizationCache() {}
+
+  /**
+   * Sets the maximum number of Call-IDs held by this cache.
+   * 
+   * @param maxEntries the maximum number of entries, must be greater than 0.
+   */
+  public synchronized void setMaxEntries(int maxEntries) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be greater than 0");
+    }
+    this.maxEntries = maxEntries;
+    evictEldest();
+  }
+
+  /**
+   * Gets the maximum number of Call-IDs held by this cache.
+   * 
+   * @return the maximum number of entries.
+   */
+  public synchronized int getMaxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * Sets how long a Call-ID that isn't being used is kept.
+   * 
+   * @param timeToLive the time-to-live in milliseconds, or 0 to keep entries until they're evicted
+   *        or removed.
+   */
+  public synchronized void setTimeToLive(long timeToLive) {
+    if (timeToLive < 0) {
+      throw new IllegalArgumentException("timeToLive must not be negative");
+    }
+    timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+  }
+
+  /**
+   * Gets how long a Call-ID that isn't being used is kept.
+   * 
+   * @return the time-to-live in milliseconds, 0 if entries don't expire.
+   */
+  public synchronized long getTimeToLive() {
+    return TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos);
+  }
+
+  /**
+   * Gets the number of Call-IDs currently held.
+   * 
+   * @return the number of entries.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the number of Call-IDs evicted because the cache was full.
+   * 
+   * @return the eviction count since this cache was created.
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Gets the number of Call-IDs dropped because they weren't used within the time-to-live.
+   * 
+   * @return the expiration count since this cache was created.
+   */
+  public synchronized long getExpirationCount() {
+    return expirationCount;
+  }
+
+  /**
+   * Gets the number of Call-IDs removed because their call or subscription was done with them.
+   * 
+   * @return the removal count since this cache was created.
+   */
+  public synchronized long getRemovalCount() {
+    return removalCount;
+  }
+
+  /**
+   * Gets the number of lookups that found the Call-ID's authorizations.
+   * 
+   * @return the hit count since this cache was created.
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Gets the number of lookups of a Call-ID that wasn't held, or had expired.
+   * 
+   * @return the miss count since this cache was created.
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Gets the authorizations held for the given Call-ID, keyed by realm.
+   * 
+   * @param callId the Call-ID.
+   * @return the authorizations, or null if authorization hasn't been enabled for the Call-ID or its
+   *         entry has been evicted.
+   */
+  protected synchronized Map<String, AuthorizationHeader> get(String callId) {
+    Entry entry = entries.get(callId);
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+
+    long now = System.nanoTime();
+    if (isExpired(entry, now)) {
+      entries.remove(callId);
+      expirationCount++;
+      missCount++;
+      return null;
+    }
+
+    entry.lastAccess = now;
+    hitCount++;
+    return entry.authorizations;
+  }
+
+  /**
+   * Starts holding authorizations for the given Call-ID, dropping any held so far.
+   * 
+   * @param callId the Call-ID.
+   * @return the (empty) authorizations now held for the Call-ID.
+   */
+  protected synchronized Map<String, AuthorizationHeader> enable(String callId) {
+    long now = System.nanoTime();
+    expire(now);
+
+    Entry entry = new Entry();
+    entry.lastAccess = now;
+    entries.put(callId, entry);
+
+    evictEldest();
+    return entry.authorizations;
+  }
+
+  /**
+   * Stops holding authorizations for the given Call-ID.
+   * 
+   * @param callId the Call-ID.
+   */
+  protected synchronized void remove(String callId) {
+    if (entries.remove(callId) != null) {
+      removalCount++;
+    }
+  }
+
+  /**
+   * Gets the authorizations held per Call-ID. The returned map is a copy but the authorizations of
+   * each Call-ID in it are the ones held. The entries aren't touched, expired ones are skipped.
+   * 
+   * @return the authorizations keyed by Call-ID then realm.
+   */
+  protected synchronized Map<String, LinkedHashMap<String, AuthorizationHeader>> asMap() {
+    long now = System.nanoTime();
+    Map<String, LinkedHashMap<String, AuthorizationHeader>> map = new LinkedHashMap<>();
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (!isExpired(entry.getValue(), now)) {
+        map.put(entry.getKey(), entry.getValue().authorizations);
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Drops everything held.
+   */
+  protected synchronized void clear() {
+    removalCount += entries.size();
+    entries.clear();
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return timeToLiveNanos > 0 && now - entry.lastAccess > timeToLiveNanos;
+  }
+
+  private void expire(long now) {
+    // least recently used first, stop at the first one still alive
+    Iterator<Entry> i = entries.values().iterator();
+    while (i.hasNext()) {
+      if (!isExpired(i.next(), now)) {
+        break;
+      }
+      i.remove();
+      expirationCount++;
+    }
+  }
+
+  private void evictEldest() {
+    Iterator<Entry> i = entries.values().iterator();
+    while (entries.size() > maxEntries && i.hasNext()) {
+      i.next();
+      i.remove();
+      evictionCount++;
+    }
+  }
+}
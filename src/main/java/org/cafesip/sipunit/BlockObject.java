@@ -16,14 +16,31 @@
 
 package org.cafesip.sipunit;
 
+import java.util.ArrayList;
+import java.util.EventObject;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * FOR INTERNAL USE ONLY. A test class doesn't use this class.
  * 
+ * <p>
+ * A FIFO hand-off of received events between the JAIN-SIP threads that deliver them and the test
+ * program threads waiting for them. An event added before anyone waits is kept until taken, each
+ * event is taken by exactly one waiter, and any number of threads may wait at the same time.
+ * 
  * @author Amit Chatterjee
  * 
  */
 public class BlockObject {
 
+  private final LinkedBlockingQueue<EventObject> events = new LinkedBlockingQueue<>();
+
+  // threads in waitForEvent(), which addEvent() then has to wake
+  private final AtomicInteger monitorWaiters = new AtomicInteger();
+
   /**
    * FOR INTERNAL USE ONLY - A test class doesn't use this method.
    */
@@ -33,19 +50,101 @@ public class BlockObject {
 
   /**
    * FOR INTERNAL USE ONLY - A test class doesn't use this method.
+   * 
+   * @param event the received event to hand off to a waiting (or future) taker.
+   */
+  public void addEvent(EventObject event) {
+    events.add(event);
+
+    if (monitorWaiters.get() > 0) {
+      notifyEvent();
+    }
+  }
+
+  /**
+   * FOR INTERNAL USE ONLY - A test class doesn't use this method.
+   * 
+   * <p>
+   * Removes and returns the oldest event, waiting for one to arrive if necessary. The wait ends at
+   * the absolute deadline given by the timeout, regardless of spurious wakeups.
+   * 
+   * @param timeout the maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
+   *        indefinitely.
+   * @return the oldest event, or null if the timeout elapsed first.
+   * @throws InterruptedException if the waiting thread is interrupted.
+   */
+  public EventObject takeEvent(long timeout) throws InterruptedException {
+    if (timeout == 0) {
+      return events.take();
+    }
+
+    return events.poll(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * FOR INTERNAL USE ONLY - A test class doesn't use this method.
+   * 
+   * @return true if no event is waiting to be taken.
+   */
+  public boolean isEmpty() {
+    return events.isEmpty();
+  }
+
+  /**
+   * FOR INTERNAL USE ONLY - A test class doesn't use this method.
+   * 
+   * <p>
+   * Discards any events not yet taken.
+   */
+  public void clear() {
+    events.clear();
+  }
+
+  /*
+   * The events not yet taken, oldest first, see SipTransaction.getEvents().
+   */
+  List<EventObject> pendingEvents() {
+    return new ArrayList<>(events);
+  }
+
+  /**
+   * FOR INTERNAL USE ONLY - A test class doesn't use this method.
+   * 
+   * <p>
+   * Waits for an event to be waiting to be taken, without taking it, or for notifyEvent() to be
+   * called.
+   * 
+   * @param timeout the maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
+   *        indefinitely.
+   * @throws Exception if the waiting thread is interrupted.
+   * @deprecated Use takeEvent(), which hands over the event as well.
    */
+  @Deprecated
   public void waitForEvent(long timeout) throws Exception {
-    synchronized (this) {
-      this.wait(timeout);
+    monitorWaiters.incrementAndGet();
+    try {
+      synchronized (this) {
+        if (events.isEmpty()) {
+          this.wait(timeout);
+        }
+      }
+    } finally {
+      monitorWaiters.decrementAndGet();
     }
   }
 
   /**
    * FOR INTERNAL USE ONLY - A test class doesn't use this method.
+   * 
+   * <p>
+   * Wakes the threads in waitForEvent(). addEvent() does this itself.
+   * 
+   * @deprecated Use addEvent().
    */
+  @Deprecated
   public void notifyEvent() {
     synchronized (this) {
-      this.notify();
+      this.notifyAll();
     }
   }
 }
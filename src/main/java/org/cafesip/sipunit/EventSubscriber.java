@@ -83,7 +83,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
   protected Address targetAddress;
 
-  protected String subscriptionState = SubscriptionStateHeader.PENDING;
+  protected volatile String subscriptionState = SubscriptionStateHeader.PENDING;
 
   private String terminationReason;
 
@@ -111,24 +111,28 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
   private CSeqHeader notifyCSeq;
 
+  // System.nanoTime() the last SUBSCRIBE was sent at, until the first NOTIFY after it, else 0
+  private volatile long notifyAwaitedSince;
+
   private CallIdHeader callId;
 
   /*
    * list of SipResponse
    */
-  protected LinkedList<SipResponse> receivedResponses = new LinkedList<>();
+  protected MessageHistory<SipResponse> receivedResponses;
 
   /*
    * list of SipRequest
    */
-  protected LinkedList<SipRequest> receivedRequests = new LinkedList<>();
+  protected MessageHistory<SipRequest> receivedRequests;
 
   /*
    * for wait operations
    */
-  private LinkedList<RequestEvent> reqEvents = new LinkedList<>();
+  private final BlockObject notifyBlock = new BlockObject();
 
-  private BlockObject responseBlock = new BlockObject();
+  // guards transaction, dialog and receivedResponses against the response-delivering thread
+  private final Object responseLock = new Object();
 
   /*
    * misc
@@ -147,7 +151,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
   private boolean removalComplete = false;
 
-  protected LinkedList<String> eventErrors = new LinkedList<>();
+  protected MessageHistory<String> eventErrors;
 
   protected EventSubscriber(String uri, SipPhone parent) throws ParseException {
     this(uri, parent, null);
@@ -158,6 +162,11 @@ public class EventSubscriber implements MessageListener, SipActionObject {
     targetAddress = parent.getAddressFactory().createAddress(this.targetUri);
     this.parent = parent;
 
+    HistoryPolicy historyPolicy = parent.getHistoryPolicy();
+    receivedResponses = new MessageHistory<>(historyPolicy, parent.getStateMonitor());
+    receivedRequests = new MessageHistory<>(historyPolicy, parent.getStateMonitor());
+    eventErrors = new MessageHistory<>(historyPolicy, parent.getStateMonitor());
+
     this.dialog = dialog;
     if (dialog == null) {
       callId = parent.getNewCallIdHeader();
@@ -167,11 +176,19 @@ public class EventSubscriber implements MessageListener, SipActionObject {
       myTag = dialog.getLocalTag();
     }
 
-    if (parent.getAuthorizations().get(callId.getCallId()) == null) {
+    if (parent.getAuthorizationCache().get(callId.getCallId()) == null) {
       parent.enableAuthorization(callId.getCallId());
     }
   }
 
+  /**
+   * Releases what the parent SipPhone holds for this subscription: the authorizations cached for
+   * its Call-ID. Subclasses overriding this method must call it.
+   */
+  protected void dispose() {
+    parent.clearAuthorizations(callId.getCallId());
+  }
+
   protected boolean startSubscription(Request req, long timeout, boolean viaProxy) {
     return startSubscription(req, timeout, viaProxy, null, null, null);
   }
@@ -216,7 +233,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
          * subscription invalid.
          */
 
-        subscriptionState = SubscriptionStateHeader.TERMINATED;
+        setSubscriptionState(SubscriptionStateHeader.TERMINATED);
 
         LOG.trace("Terminating subscription for URI {} due to received response code = {}",
             targetUri, getReturnCode());
@@ -243,8 +260,8 @@ public class EventSubscriber implements MessageListener, SipActionObject {
         || (subscriptionState.equalsIgnoreCase(SubscriptionStateHeader.PENDING))) {
       LOG.trace("Ending subscription for URI {}, time left = {}", targetUri, getTimeLeft());
 
-      subscriptionState = SubscriptionStateHeader.TERMINATED;
       terminationReason = reason;
+      setSubscriptionState(SubscriptionStateHeader.TERMINATED);
 
       if (sendRequest(req, viaProxy) == true) {
         if (waitNextPositiveResponse(timeout) == true) {
@@ -265,8 +282,8 @@ public class EventSubscriber implements MessageListener, SipActionObject {
     initErrorInfo();
     LOG.trace("Fetching subscription information for URI {}", targetUri);
 
-    subscriptionState = SubscriptionStateHeader.TERMINATED;
     terminationReason = "Fetch";
+    setSubscriptionState(SubscriptionStateHeader.TERMINATED);
 
     if (sendRequest(req, viaProxy) == true) {
       if (waitNextPositiveResponse(timeout) == true) {
@@ -401,9 +418,8 @@ public class EventSubscriber implements MessageListener, SipActionObject {
           // stack
           SipURI routeUri = parent.getAddressFactory().createSipURI(null, parent.getStackAddress());
           routeUri.setLrParam();
-          routeUri.setPort(parent.getParent().getSipProvider().getListeningPoints()[0].getPort());
-          routeUri.setTransportParam(parent.getParent().getSipProvider().getListeningPoints()[0]
-              .getTransport());
+          routeUri.setPort(parent.getListeningPoint().getPort());
+          routeUri.setTransportParam(parent.getListeningPoint().getTransport());
           routeUri.setSecure(((SipURI) requestUri).isSecure());
 
           Address routeAddress = parent.getAddressFactory().createAddress(routeUri);
@@ -517,7 +533,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
       return false;
     }
 
-    synchronized (responseBlock) {
+    synchronized (responseLock) {
       // clear open transaction if any
       if (transaction != null) {
         parent.clearTransaction(transaction);
@@ -529,6 +545,10 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
         setLastSentRequest(req);
 
+        if (Request.SUBSCRIBE.equals(req.getMethod())) {
+          notifyAwaitedSince = System.nanoTime();
+        }
+
         transaction =
             parent.sendRequestWithTransaction(req, viaProxy, dialog, this, additionalHeaders,
                 replaceHeaders, body);
@@ -595,7 +615,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
       String err = "*** NOTIFY REQUEST ERROR ***  (" + targetUri + ") - no CSEQ header received";
       synchronized (eventErrors) {
-        eventErrors.addLast(err);
+        eventErrors.add(err);
       }
       LOG.trace(err);
       return;
@@ -613,30 +633,35 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
     notifyCSeq = rcvSeqHdr;
 
+    long since = notifyAwaitedSince;
+    if (since != 0) {
+      notifyAwaitedSince = 0;
+      parent.recordLatency(LatencyMetric.SUBSCRIBE_NOTIFY,
+          SipMessage.receivedTimeOrNow(requestEvent) - since);
+    }
+
     synchronized (this) {
-      receivedRequests.addLast(new SipRequest(requestEvent));
-      reqEvents.addLast(requestEvent);
-      this.notify();
+      receivedRequests.add(new SipRequest(requestEvent));
     }
+    notifyBlock.addEvent(requestEvent);
   }
 
   private void processResponse(ResponseEvent responseEvent) {
-    synchronized (responseBlock) {
+    synchronized (responseLock) {
       if (transaction == null) {
         String errstring =
             "*** RESPONSE ERROR ***  (" + targetUri
                 + ") : unexpected null transaction at response reception for request: "
                 + responseEvent.getClientTransaction().getRequest().toString();
         synchronized (eventErrors) {
-          eventErrors.addLast(errstring);
+          eventErrors.add(errstring);
         }
         LOG.trace(errstring);
         return;
       }
 
-      receivedResponses.addLast(new SipResponse(responseEvent));
-      transaction.getEvents().addLast(responseEvent);
-      responseBlock.notifyEvent();
+      receivedResponses.add(new SipResponse(responseEvent));
+      transaction.getBlock().addEvent(responseEvent);
     }
   }
 
@@ -644,21 +669,20 @@ public class EventSubscriber implements MessageListener, SipActionObject {
     // this method is called if there was no response to the
     // request we sent
 
-    synchronized (responseBlock) {
+    synchronized (responseLock) {
       if (transaction == null) {
         String errstring =
             "*** RESPONSE ERROR ***  (" + targetUri
                 + ") : unexpected null transaction at event timeout for request: "
                 + timeout.getClientTransaction().getRequest().toString();
         synchronized (eventErrors) {
-          eventErrors.addLast(errstring);
+          eventErrors.add(errstring);
         }
         LOG.trace(errstring);
         return;
       }
 
-      transaction.getEvents().addLast(timeout);
-      responseBlock.notifyEvent();
+      transaction.getBlock().addEvent(timeout);
     }
   }
 
@@ -777,7 +801,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
       // set subscription state
       if (status == SipResponse.OK) {
-        subscriptionState = SubscriptionStateHeader.ACTIVE;
+        setSubscriptionState(SubscriptionStateHeader.ACTIVE);
       }
 
       return true;
@@ -807,7 +831,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
       long lastSeq = ((CSeqHeader) msg.getHeader(CSeqHeader.NAME)).getSeqNumber();
       ((CSeqHeader) msg.getHeader(CSeqHeader.NAME)).setSeqNumber(++lastSeq);
 
-      synchronized (responseBlock) {
+      synchronized (responseLock) {
         // send the message
         transaction = parent.sendRequestWithTransaction(msg, false, null, this);
 
@@ -932,7 +956,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
       // all is well, update our subscription state information
       if (subscriptionState.equalsIgnoreCase(SubscriptionStateHeader.TERMINATED) == false) {
-        subscriptionState = subsHdr.getState();
+        setSubscriptionState(subsHdr.getState());
       }
 
       if (subscriptionState.equalsIgnoreCase(SubscriptionStateHeader.TERMINATED)) {
@@ -1199,12 +1223,8 @@ public class EventSubscriber implements MessageListener, SipActionObject {
    * @see org.cafesip.sipunit.MessageListener#getLastReceivedResponse()
    */
   public SipResponse getLastReceivedResponse() {
-    synchronized (responseBlock) {
-      if (receivedResponses.isEmpty()) {
-        return null;
-      }
-
-      return (SipResponse) receivedResponses.getLast();
+    synchronized (responseLock) {
+      return receivedResponses.getLast();
     }
   }
 
@@ -1218,11 +1238,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
    */
   public SipRequest getLastReceivedRequest() {
     synchronized (this) {
-      if (receivedRequests.isEmpty()) {
-        return null;
-      }
-
-      return (SipRequest) receivedRequests.getLast();
+      return receivedRequests.getLast();
     }
   }
 
@@ -1236,7 +1252,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
    * @see org.cafesip.sipunit.MessageListener#getAllReceivedResponses()
    */
   public ArrayList<SipResponse> getAllReceivedResponses() {
-    synchronized (responseBlock) {
+    synchronized (responseLock) {
       return new ArrayList<>(receivedResponses);
     }
   }
@@ -1281,6 +1297,21 @@ public class EventSubscriber implements MessageListener, SipActionObject {
     return (subscriptionState.equalsIgnoreCase(SubscriptionStateHeader.PENDING));
   }
 
+  /**
+   * Sets the subscription state, waking up anyone waiting for it to change (see
+   * SipAssert.assertSubscriptionTerminated()).
+   * 
+   * @param subscriptionState The new state, one of the SubscriptionStateHeader state values.
+   */
+  protected void setSubscriptionState(String subscriptionState) {
+    this.subscriptionState = subscriptionState;
+    parent.getStateMonitor().changed();
+  }
+
+  StateMonitor getStateMonitor() {
+    return parent.getStateMonitor();
+  }
+
   /**
    * Returns the subscription termination reason for this subscription. Call this method when the
    * subscription has been terminated (method isSubscriptionTerminated() returns true).
@@ -1502,37 +1533,35 @@ public class EventSubscriber implements MessageListener, SipActionObject {
   public RequestEvent waitNotify(long timeout) {
     initErrorInfo();
 
-    synchronized (this) {
-      if (reqEvents.isEmpty()) {
-        try {
-          LOG.trace("about to block, waiting");
-          this.wait(timeout);
-          LOG.trace("we've come out of the block");
-        } catch (Exception ex) {
-          setException(ex);
-          setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
-          setReturnCode(SipSession.EXCEPTION_ENCOUNTERED);
-          return null;
-        }
-      }
-
-      LOG.trace("either we got the request, or timed out");
-      if (reqEvents.isEmpty()) {
-        String err =
-            "*** NOTIFY REQUEST ERROR ***  (" + targetUri
-                + ") - The maximum amount of time to wait for a NOTIFY message has elapsed.";
-        synchronized (eventErrors) {
-          eventErrors.addLast(err);
-        }
-        LOG.trace(err);
+    RequestEvent event;
+    try {
+      LOG.trace("about to block, waiting");
+      event = (RequestEvent) notifyBlock.takeEvent(timeout);
+      LOG.trace("we've come out of the block");
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      setException(ex);
+      setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
+      setReturnCode(SipSession.EXCEPTION_ENCOUNTERED);
+      return null;
+    }
 
-        setReturnCode(SipSession.TIMEOUT_OCCURRED);
-        setErrorMessage(err);
-        return null;
+    LOG.trace("either we got the request, or timed out");
+    if (event == null) {
+      String err =
+          "*** NOTIFY REQUEST ERROR ***  (" + targetUri
+              + ") - The maximum amount of time to wait for a NOTIFY message has elapsed.";
+      synchronized (eventErrors) {
+        eventErrors.add(err);
       }
+      LOG.trace(err);
 
-      return (RequestEvent) reqEvents.removeFirst();
+      setReturnCode(SipSession.TIMEOUT_OCCURRED);
+      setErrorMessage(err);
+      return null;
     }
+
+    return event;
   }
 
   /**
@@ -1553,31 +1582,33 @@ public class EventSubscriber implements MessageListener, SipActionObject {
    *         if applicable, getException() for further diagnostics.
    */
   protected EventObject waitResponse(long timeout) {
-    synchronized (responseBlock) {
-      LinkedList<EventObject> events = transaction.getEvents();
-      if (events.isEmpty()) {
-        try {
-          LOG.trace("about to block, waiting");
-          responseBlock.waitForEvent(timeout);
-          LOG.trace("we've come out of the block");
-        } catch (Exception ex) {
-          setException(ex);
-          setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
-          setReturnCode(SipSession.EXCEPTION_ENCOUNTERED);
-          return null;
-        }
-      }
+    SipTransaction trans;
+    synchronized (responseLock) {
+      trans = transaction;
+    }
 
-      LOG.trace("either we got the response, or timed out");
+    EventObject event;
+    try {
+      LOG.trace("about to block, waiting");
+      event = trans.getBlock().takeEvent(timeout);
+      LOG.trace("we've come out of the block");
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      setException(ex);
+      setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
+      setReturnCode(SipSession.EXCEPTION_ENCOUNTERED);
+      return null;
+    }
 
-      if (events.isEmpty()) {
-        setReturnCode(SipSession.TIMEOUT_OCCURRED);
-        setErrorMessage("The maximum amount of time to wait for a response message has elapsed.");
-        return null;
-      }
+    LOG.trace("either we got the response, or timed out");
 
-      return (EventObject) events.removeFirst();
+    if (event == null) {
+      setReturnCode(SipSession.TIMEOUT_OCCURRED);
+      setErrorMessage("The maximum amount of time to wait for a response message has elapsed.");
+      return null;
     }
+
+    return event;
   }
 
   /**
@@ -1599,7 +1630,7 @@ public class EventSubscriber implements MessageListener, SipActionObject {
 
   protected void addEventError(String err) {
     synchronized (eventErrors) {
-      eventErrors.addLast(err);
+      eventErrors.add(err);
     }
   }
 
@@ -0,0 +1,96 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+/**
+ * This class tells a SipCall or subscription how many of the messages it receives to keep around
+ * for later inspection via getAllReceivedRequests(), getAllReceivedResponses(), etc. See
+ * SipPhone.setHistoryPolicy() and SipCall.setHistoryPolicy().
+ *
+ * <p>
+ * The default, FULL, keeps everything, which is what a functional test normally wants. A long
+ * running (soak or load) test can use lastN() or NONE instead so that each call or subscription
+ * retains a bounded amount of memory no matter how many messages it sees. Whatever the policy, the
+ * last received request and response are always kept so that getLastReceivedRequest() and
+ * getLastReceivedResponse() work as usual.
+ *
+ */
+public final class HistoryPolicy {
+
+  /**
+   * Keep every received message (the default).
+   */
+  public static final HistoryPolicy FULL = new HistoryPolicy(Integer.MAX_VALUE);
+
+  /**
+   * Keep no message history other than the last received request and response.
+   */
+  public static final HistoryPolicy NONE = new HistoryPolicy(0);
+
+  private final int capacity;
+
+  private HistoryPolicy(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns a policy that keeps only the most recently received messages, discarding the oldest
+   * one when a new one comes in.
+   *
+   * @param count The number of messages to keep, must be greater than zero.
+   * @return The policy.
+   */
+  public static HistoryPolicy lastN(int count) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("count must be greater than zero");
+    }
+
+    return new HistoryPolicy(count);
+  }
+
+  /**
+   * Returns the maximum number of messages kept under this policy.
+   *
+   * @return The capacity, Integer.MAX_VALUE for FULL and 0 for NONE.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof HistoryPolicy && ((HistoryPolicy) obj).capacity == capacity;
+  }
+
+  @Override
+  public int hashCode() {
+    return capacity;
+  }
+
+  @Override
+  public String toString() {
+    if (capacity == Integer.MAX_VALUE) {
+      return "FULL";
+    }
+
+    if (capacity == 0) {
+      return "NONE";
+    }
+
+    return "LAST_" + capacity;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.cafesip.sipunit.presenceparser.pidf.Contact;
+import org.cafesip.sipunit.presenceparser.pidf.Note;
+import org.cafesip.sipunit.presenceparser.pidf.Presence;
+import org.cafesip.sipunit.presenceparser.pidf.Tuple;
+
+/**
+ * The default PidfParser. It unmarshals the PIDF body into the JAXB generated
+ * org.cafesip.sipunit.presenceparser.pidf classes and copies the result into the SipUnit presence
+ * objects, extension elements included.
+ * 
+ */
+public class JaxbPidfParser implements PidfParser {
+
+  private static final String PIDF_PACKAGE = "org.cafesip.sipunit.presenceparser.pidf";
+
+  /*
+   * The JAXB context is expensive to build and thread safe, so it's created once per JVM. An
+   * Unmarshaller isn't thread safe, NOTIFYs for different subscriptions are processed concurrently
+   * by the stack threads, so each thread keeps its own.
+   */
+  private static volatile JAXBContext pidfContext;
+
+  private static final ThreadLocal<Unmarshaller> pidfUnmarshaller = new ThreadLocal<>();
+
+  @Override
+  public PidfDocument parse(byte[] body) throws JAXBException {
+    Source source = new StreamSource(new ByteArrayInputStream(body));
+    Presence presence = getPidfUnmarshaller().unmarshal(source, Presence.class).getValue();
+
+    PidfDocument doc = new PidfDocument();
+    doc.setEntity(presence.getEntity());
+
+    if (presence.getTuple() != null) {
+      Iterator<?> i = presence.getTuple().iterator();
+      while (i.hasNext()) {
+        Tuple t = (Tuple) i.next();
+
+        PresenceDeviceInfo dev = new PresenceDeviceInfo();
+        if (t.getStatus().getBasic() != null) {
+          dev.setBasicStatus(t.getStatus().getBasic().value());
+        }
+
+        Contact contact = t.getContact();
+        if (contact != null) {
+          if (contact.getPriority() != null) {
+            dev.setContactPriority(contact.getPriority().doubleValue());
+          }
+          dev.setContactValue(contact.getValue());
+        }
+
+        dev.setDeviceExtensions(t.getAny());
+        dev.setId(t.getId());
+        dev.setStatusExtensions(t.getStatus().getAny());
+        if (null != t.getTimestamp()) {
+          dev.setTimestamp(t.getTimestamp().toGregorianCalendar());
+        }
+
+        List<PresenceNote> notes = new ArrayList<>();
+        if (t.getNote() != null) {
+          Iterator<?> j = t.getNote().iterator();
+          while (j.hasNext()) {
+            Note n = (Note) j.next();
+            notes.add(new PresenceNote(n.getLang(), n.getValue()));
+          }
+        }
+        dev.setDeviceNotes(notes);
+
+        doc.getDevices().add(dev);
+      }
+    }
+
+    if (presence.getNote() != null) {
+      Iterator<?> i = presence.getNote().iterator();
+      while (i.hasNext()) {
+        Note n = (Note) i.next();
+        doc.getNotes().add(new PresenceNote(n.getLang(), n.getValue()));
+      }
+    }
+
+    if (presence.getAny() != null) {
+      doc.getExtensions().addAll(presence.getAny());
+    }
+
+    return doc;
+  }
+
+  private static Unmarshaller getPidfUnmarshaller() throws JAXBException {
+    Unmarshaller parser = pidfUnmarshaller.get();
+    if (parser == null) {
+      parser = getPidfContext().createUnmarshaller();
+      parser.setEventHandler(arg -> arg.getMessage().startsWith("Unexpected element"));
+      pidfUnmarshaller.set(parser);
+    }
+
+    return parser;
+  }
+
+  private static JAXBContext getPidfContext() throws JAXBException {
+    JAXBContext context = pidfContext;
+    if (context == null) {
+      synchronized (JaxbPidfParser.class) {
+        context = pidfContext;
+        if (context == null) {
+          context = JAXBContext.newInstance(PIDF_PACKAGE);
+          pidfContext = context;
+        }
+      }
+    }
+
+    return context;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import javax.sip.message.Request;
+
+/**
+ * The SIP transaction and call phase latencies SipUnit measures, see LatencyStats. Each is timed
+ * from the moment the request is handed to the SIP stack for sending to the moment the response
+ * (or NOTIFY) is received by the SipSession.
+ */
+public enum LatencyMetric {
+
+  /**
+   * REGISTER to its final response.
+   */
+  REGISTER,
+
+  /**
+   * INVITE to 100 Trying.
+   */
+  INVITE_TRYING,
+
+  /**
+   * INVITE to 180 Ringing.
+   */
+  INVITE_RINGING,
+
+  /**
+   * INVITE to 2xx, ie call setup time.
+   */
+  INVITE_ANSWER,
+
+  /**
+   * BYE to its final response.
+   */
+  BYE,
+
+  /**
+   * SUBSCRIBE to the first NOTIFY received after it.
+   */
+  SUBSCRIBE_NOTIFY,
+
+  /**
+   * MESSAGE to its final response.
+   */
+  MESSAGE;
+
+  /*
+   * Returns the metric the given response to a request of the given method completes, or null
+   * if none.
+   */
+  static LatencyMetric forResponse(String method, int statusCode) {
+    boolean isFinal = statusCode >= 200;
+    switch (method) {
+      case Request.REGISTER:
+        return isFinal ? REGISTER : null;
+      case Request.INVITE:
+        if (statusCode == 100) {
+          return INVITE_TRYING;
+        }
+        if (statusCode == 180) {
+          return INVITE_RINGING;
+        }
+        return statusCode / 100 == 2 ? INVITE_ANSWER : null;
+      case Request.BYE:
+        return isFinal ? BYE : null;
+      case Request.MESSAGE:
+        return isFinal ? MESSAGE : null;
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * High dynamic range latency histograms, in nanoseconds, for each LatencyMetric. Every SipSession
+ * (SipPhone) records the latencies of the requests it sends into its own LatencyStats and into its
+ * SipStack's, see SipSession.getLatencyStats() and SipStack.getLatencyStats().
+ *
+ * <p>
+ * Recording is wait-free: each metric has an HdrHistogram Recorder that any number of threads
+ * record into without locking. Reading takes what has been recorded so far:
+ *
+ * <pre>
+ * Histogram setup = phone.getLatencyStats().getHistogram(LatencyMetric.INVITE_ANSWER);
+ * setup.getValueAtPercentile(99.9);
+ * </pre>
+ *
+ * <p>
+ * The statistics of several phones or stacks are merged with add(), and written out periodically
+ * in the HdrHistogram interval log format (readable by HistogramLogReader, HdrHistogram's
+ * HistogramLogProcessor and the usual plotting tools) with writeInterval(), each metric's
+ * histograms being tagged with its name.
+ *
+ * <pre>
+ * HistogramLogWriter writer = new HistogramLogWriter(new File(&quot;latency.hlog&quot;));
+ * writer.outputLogFormatVersion();
+ * writer.outputLegend();
+ * // then every few seconds:
+ * sipStack.getLatencyStats().writeInterval(writer);
+ * </pre>
+ */
+public class LatencyStats {
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Map<LatencyMetric, Recorder> recorders = new EnumMap<>(LatencyMetric.class);
+
+  // everything recorded so far, guarded by this
+  private final Map<LatencyMetric, Histogram> totals = new EnumMap<>(LatencyMetric.class);
+
+  // recorded since the last writeInterval(), guarded by this
+  private final Map<LatencyMetric, Histogram> pending = new EnumMap<>(LatencyMetric.class);
+
+  private final Map<LatencyMetric, Histogram> recycled = new EnumMap<>(LatencyMetric.class);
+
+  private long intervalStart = System.currentTimeMillis();
+
+  /**
+   * A constructor for this class.
+   */
+  public LatencyStats() {
+    for (LatencyMetric metric : LatencyMetric.values()) {
+      recorders.put(metric, new Recorder(SIGNIFICANT_DIGITS));
+      totals.put(metric, new Histogram(SIGNIFICANT_DIGITS));
+      pending.put(metric, new Histogram(SIGNIFICANT_DIGITS));
+    }
+  }
+
+  /**
+   * Records a latency. Doesn't block.
+   *
+   * @param metric What was measured.
+   * @param nanos The latency in nanoseconds; negative values are ignored.
+   */
+  public void record(LatencyMetric metric, long nanos) {
+    if (nanos >= 0) {
+      recorders.get(metric).recordValue(nanos);
+    }
+  }
+
+  /**
+   * Returns everything recorded for the given metric so far, including what other LatencyStats
+   * have been merged in with add().
+   *
+   * @param metric The metric.
+   * @return A copy of the histogram of the metric's latencies, in nanoseconds.
+   */
+  public synchronized Histogram getHistogram(LatencyMetric metric) {
+    drain(metric);
+    return totals.get(metric).copy();
+  }
+
+  /**
+   * Returns the latency of the given metric at the given percentile.
+   *
+   * @param metric The metric.
+   * @param percentile The percentile, ie 50, 99 or 99.9.
+   * @return The latency in nanoseconds, 0 if nothing was recorded.
+   */
+  public long getValueAtPercentile(LatencyMetric metric, double percentile) {
+    return getHistogram(metric).getValueAtPercentile(percentile);
+  }
+
+  /**
+   * Merges everything recorded so far by another LatencyStats into this one, ie to combine the
+   * statistics of several phones or stacks. What is recorded by the other one afterwards isn't.
+   *
+   * @param other The statistics to merge in.
+   */
+  public void add(LatencyStats other) {
+    for (LatencyMetric metric : LatencyMetric.values()) {
+      Histogram histogram = other.getHistogram(metric);
+      synchronized (this) {
+        drain(metric);
+        totals.get(metric).add(histogram);
+        pending.get(metric).add(histogram);
+      }
+    }
+  }
+
+  /**
+   * Writes what has been recorded (or merged in) since the previous call, or since this object was
+   * created or reset, as one interval histogram per metric with at least one value. Each
+   * histogram is tagged with the metric name.
+   *
+   * @param writer The interval log to write to. Its header (see
+   *        HistogramLogWriter.outputLogFormatVersion() and outputLegend()) is up to the caller.
+   */
+  public synchronized void writeInterval(HistogramLogWriter writer) {
+    long intervalEnd = System.currentTimeMillis();
+    for (LatencyMetric metric : LatencyMetric.values()) {
+      drain(metric);
+
+      Histogram interval = pending.get(metric);
+      if (interval.getTotalCount() > 0) {
+        interval.setStartTimeStamp(intervalStart);
+        interval.setEndTimeStamp(intervalEnd);
+        interval.setTag(metric.name());
+        writer.outputIntervalHistogram(interval);
+      }
+      interval.reset();
+    }
+    intervalStart = intervalEnd;
+  }
+
+  /**
+   * Discards everything recorded so far.
+   */
+  public synchronized void reset() {
+    for (LatencyMetric metric : LatencyMetric.values()) {
+      drain(metric);
+      totals.get(metric).reset();
+      pending.get(metric).reset();
+    }
+    intervalStart = System.currentTimeMillis();
+  }
+
+  // moves what the recorder has got into the totals and pending histograms
+  private void drain(LatencyMetric metric) {
+    Histogram interval = recorders.get(metric).getIntervalHistogram(recycled.get(metric));
+    totals.get(metric).add(interval);
+    pending.get(metric).add(interval);
+    recycled.put(metric, interval);
+  }
+
+  /**
+   * Returns a one line per metric summary of the latencies recorded so far, in milliseconds.
+   *
+   * @return The count, p50, p99, p99.9 and max of each metric with at least one value.
+   */
+  public String format() {
+    StringBuilder buf = new StringBuilder();
+    for (LatencyMetric metric : LatencyMetric.values()) {
+      Histogram histogram = getHistogram(metric);
+      if (histogram.getTotalCount() == 0) {
+        continue;
+      }
+
+      buf.append(String.format("%-16s count=%d p50=%.3f p99=%.3f p99.9=%.3f max=%.3f%n", metric,
+          histogram.getTotalCount(), millis(histogram.getValueAtPercentile(50)),
+          millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+          millis(histogram.getMaxValue())));
+    }
+    return buf.toString();
+  }
+
+  private static double millis(long nanos) {
+    return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
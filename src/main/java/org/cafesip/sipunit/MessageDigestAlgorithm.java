@@ -21,12 +21,17 @@
 
 package org.cafesip.sipunit;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * FOR INTERNAL USE, but available to test programs if needed. The class takes standard Http
- * Authentication details and returns a response according to the MD5 algorithm.
+ * Authentication details and returns a response according to the MD5 algorithm (rfc2617), or the
+ * SHA-256 and SHA-512-256 algorithms (rfc7616, rfc8760), each with its -sess variant.
  * 
  * <p>
  * This class was copied from the Sip Communicator project (package
@@ -39,6 +44,26 @@ import java.security.NoSuchAlgorithmException;
  */
 public class MessageDigestAlgorithm {
 
+  private static final byte COLON = ':';
+
+  private static final String SESSION_SUFFIX = "-SESS";
+
+  // digest algorithm token (rfc7616) to JCA algorithm name
+  private static final Map<String, String> jcaNames = new HashMap<>();
+
+  static {
+    jcaNames.put("MD5", "MD5");
+    jcaNames.put("SHA-256", "SHA-256");
+    jcaNames.put("SHA-512-256", "SHA-512/256");
+  }
+
+  /*
+   * MessageDigest.getInstance() goes through the provider lookup every time and a MessageDigest
+   * isn't thread safe, so each thread keeps one instance per algorithm.
+   */
+  private static final ThreadLocal<Map<String, MessageDigest>> digests =
+      ThreadLocal.withInitial(HashMap::new);
+
   /**
    * Calculates a response an http authentication response in accordance with rfc2617.
    * 
@@ -48,7 +73,8 @@ public class MessageDigestAlgorithm {
    * remove console/log messages). Thanks for making it publicly available. It is licensed under the
    * Apache Software License, Version 1.1 Copyright (c) 2000.
    * 
-   * @param algorithm MD5 or MD5-sess)
+   * @param algorithm MD5, MD5-sess, SHA-256, SHA-256-sess, SHA-512-256 or SHA-512-256-sess. Null
+   *        or empty means MD5.
    * @param username_value username_value (see rfc2617)
    * @param realm_value realm_value
    * @param passwd passwd
@@ -60,102 +86,221 @@ public class MessageDigestAlgorithm {
    * @param qop_value qop
    * @return a digest response as defined in rfc2617
    * @throws NullPointerException in case of incorrectly null parameters.
+   * @throws IllegalArgumentException if the algorithm isn't supported.
    * 
    * 
    */
   public static String calculateResponse(String algorithm, String username_value,
       String realm_value, String passwd, String nonce_value, String nc_value, String cnonce_value,
       String Method, String digest_uri_value, String entity_body, String qop_value) {
+    return calculateResponse(algorithm, username_value, realm_value, passwd, nonce_value,
+        nc_value, cnonce_value, Method, digest_uri_value,
+        entity_body == null ? null : entity_body.getBytes(StandardCharsets.UTF_8), qop_value);
+  }
+
+  /**
+   * Same as the other calculateResponse() method except that the entity body is given as the raw
+   * message content, which avoids converting it to a String and back.
+   * 
+   * @param algorithm MD5, MD5-sess, SHA-256, SHA-256-sess, SHA-512-256 or SHA-512-256-sess. Null
+   *        or empty means MD5.
+   * @param username_value username_value (see rfc2617)
+   * @param realm_value realm_value
+   * @param passwd passwd
+   * @param nonce_value nonce_value
+   * @param cnonce_value cnonce_value
+   * @param Method method
+   * @param digest_uri_value uri_value
+   * @param entity_body the raw message body, or null if none
+   * @param qop_value qop
+   * @return a digest response as defined in rfc2617
+   * @throws NullPointerException in case of incorrectly null parameters.
+   * @throws IllegalArgumentException if the algorithm isn't supported.
+   */
+  public static String calculateResponse(String algorithm, String username_value,
+      String realm_value, String passwd, String nonce_value, String nc_value, String cnonce_value,
+      String Method, String digest_uri_value, byte[] entity_body, String qop_value) {
     if (username_value == null || realm_value == null || passwd == null || Method == null
         || digest_uri_value == null || nonce_value == null)
       throw new NullPointerException("Null parameter to MessageDigestAlgorithm.calculateResponse()");
 
+    return respond(algorithm, ha1(algorithm, username_value, realm_value, passwd), nonce_value,
+        nc_value, cnonce_value, Method, digest_uri_value, entity_body, qop_value);
+  }
+
+  /**
+   * Calculates H(username:realm:password), the part of the response that only depends on the
+   * credentials. It can be cached and passed to calculateResponseFromHA1() for each subsequent
+   * challenge from the same realm. For the -sess algorithms this is the value before the nonce and
+   * cnonce are mixed in.
+   * 
+   * @param algorithm the digest algorithm, see calculateResponse().
+   * @param username_value username_value
+   * @param realm_value realm_value
+   * @param passwd passwd
+   * @return the hex encoded HA1
+   * @throws NullPointerException in case of incorrectly null parameters.
+   * @throws IllegalArgumentException if the algorithm isn't supported.
+   */
+  public static String calculateHA1(String algorithm, String username_value, String realm_value,
+      String passwd) {
+    if (username_value == null || realm_value == null || passwd == null)
+      throw new NullPointerException("Null parameter to MessageDigestAlgorithm.calculateHA1()");
+
+    return new String(ha1(algorithm, username_value, realm_value, passwd),
+        StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Same as calculateResponse() except that the credentials are given as a previously calculated
+   * HA1 (see calculateHA1()).
+   * 
+   * @param algorithm the digest algorithm, see calculateResponse().
+   * @param ha1 the value returned by calculateHA1() for the same algorithm and credentials
+   * @param nonce_value nonce_value
+   * @param nc_value nonce count
+   * @param cnonce_value cnonce_value
+   * @param Method method
+   * @param digest_uri_value uri_value
+   * @param entity_body the raw message body, or null if none
+   * @param qop_value qop
+   * @return a digest response as defined in rfc2617
+   * @throws NullPointerException in case of incorrectly null parameters.
+   * @throws IllegalArgumentException if the algorithm isn't supported.
+   */
+  public static String calculateResponseFromHA1(String algorithm, String ha1, String nonce_value,
+      String nc_value, String cnonce_value, String Method, String digest_uri_value,
+      byte[] entity_body, String qop_value) {
+    if (ha1 == null || Method == null || digest_uri_value == null || nonce_value == null)
+      throw new NullPointerException(
+          "Null parameter to MessageDigestAlgorithm.calculateResponseFromHA1()");
+
+    return respond(algorithm, ha1.getBytes(StandardCharsets.US_ASCII), nonce_value, nc_value,
+        cnonce_value, Method, digest_uri_value, entity_body, qop_value);
+  }
+
+  private static byte[] ha1(String algorithm, String username_value, String realm_value,
+      String passwd) {
+    MessageDigest digest = getDigest(baseAlgorithm(algorithm));
+
+    update(digest, username_value);
+    digest.update(COLON);
+    update(digest, realm_value);
+    digest.update(COLON);
+    update(digest, passwd);
+    return toHex(digest.digest());
+  }
+
+  private static String respond(String algorithm, byte[] ha1, String nonce_value, String nc_value,
+      String cnonce_value, String Method, String digest_uri_value, byte[] entity_body,
+      String qop_value) {
+    MessageDigest digest = getDigest(baseAlgorithm(algorithm));
+
     // The following follows closely the algorithm for generating a response
     // digest as specified by rfc2617
-    String A1 = null;
-
-    if (algorithm == null || algorithm.trim().length() == 0
-        || algorithm.trim().equalsIgnoreCase("MD5")) {
-      A1 = username_value + ":" + realm_value + ":" + passwd;
-    } else {
+    if (isSession(algorithm)) {
       if (cnonce_value == null || cnonce_value.length() == 0)
-        throw new NullPointerException("cnonce_value may not be absent for MD5-Sess algorithm.");
+        throw new NullPointerException("cnonce_value may not be absent for " + algorithm
+            + " algorithm.");
 
-      A1 =
-          H(username_value + ":" + realm_value + ":" + passwd) + ":" + nonce_value + ":"
-              + cnonce_value;
+      digest.update(ha1);
+      digest.update(COLON);
+      update(digest, nonce_value);
+      digest.update(COLON);
+      update(digest, cnonce_value);
+      ha1 = toHex(digest.digest());
     }
 
-    String A2 = null;
-    if (qop_value == null || qop_value.trim().length() == 0
-        || qop_value.trim().equalsIgnoreCase("auth")) {
-      A2 = Method + ":" + digest_uri_value;
-    } else {
-      if (entity_body == null)
-        entity_body = "";
-      A2 = Method + ":" + digest_uri_value + ":" + H(entity_body);
+    byte[] bodyHash = null;
+    if (qop_value != null && qop_value.trim().length() > 0
+        && !qop_value.trim().equalsIgnoreCase("auth")) {
+      bodyHash = toHex(digest.digest(entity_body == null ? new byte[0] : entity_body));
     }
 
-    String request_digest = null;
+    update(digest, Method);
+    digest.update(COLON);
+    update(digest, digest_uri_value);
+    if (bodyHash != null) {
+      digest.update(COLON);
+      digest.update(bodyHash);
+    }
+    byte[] ha2 = toHex(digest.digest());
+
+    digest.update(ha1);
+    digest.update(COLON);
+    update(digest, nonce_value);
+    digest.update(COLON);
     if (cnonce_value != null && qop_value != null
         && (qop_value.equals("auth") || (qop_value.equals("auth-int")))) {
-      request_digest =
-          KD(H(A1), nonce_value + ":" + nc_value + ":" + cnonce_value + ":" + qop_value + ":"
-              + H(A2));
-
-    } else {
-      request_digest = KD(H(A1), nonce_value + ":" + H(A2));
+      update(digest, nc_value);
+      digest.update(COLON);
+      update(digest, cnonce_value);
+      digest.update(COLON);
+      update(digest, qop_value);
+      digest.update(COLON);
     }
+    digest.update(ha2);
 
-    return request_digest;
+    return new String(toHex(digest.digest()), StandardCharsets.US_ASCII);
   }
 
-  /**
-   * Defined in rfc 2617 as H(data) = MD5(data); .
-   * 
-   * @param data data
-   * @return MD5(data)
-   */
-  private static String H(String data) {
-    try {
-      MessageDigest digest = MessageDigest.getInstance("MD5");
-
-      return toHexString(digest.digest(data.getBytes()));
-    } catch (NoSuchAlgorithmException ex) {
-      // shouldn't happen
-      return null;
+  private static boolean isSession(String algorithm) {
+    return algorithm != null
+        && algorithm.trim().toUpperCase(Locale.ROOT).endsWith(SESSION_SUFFIX);
+  }
+
+  private static String baseAlgorithm(String algorithm) {
+    String token = algorithm == null ? "" : algorithm.trim().toUpperCase(Locale.ROOT);
+    if (token.endsWith(SESSION_SUFFIX)) {
+      token = token.substring(0, token.length() - SESSION_SUFFIX.length());
     }
+    return token.isEmpty() ? "MD5" : token;
   }
 
-  /**
-   * Defined in rfc 2617 as KD(secret, data) = H(concat(secret, ":", data)) .
-   * 
-   * @param data data
-   * @param secret secret
-   * @return H(concat(secret, ":", data));
-   */
-  private static String KD(String secret, String data) {
-    return H(secret + ":" + data);
+  private static MessageDigest getDigest(String token) {
+    String jcaName = jcaNames.get(token);
+    if (jcaName == null) {
+      throw new IllegalArgumentException("Unsupported digest algorithm: " + token);
+    }
+
+    Map<String, MessageDigest> threadDigests = digests.get();
+    MessageDigest digest = threadDigests.get(jcaName);
+    if (digest == null) {
+      try {
+        digest = MessageDigest.getInstance(jcaName);
+      } catch (NoSuchAlgorithmException ex) {
+        // shouldn't happen, all of them are required to be supported by the JRE
+        throw new IllegalArgumentException("Unsupported digest algorithm: " + token, ex);
+      }
+      threadDigests.put(jcaName, digest);
+    }
+
+    digest.reset();
+    return digest;
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
   }
 
   // the following code was copied from the NIST-SIP instant
   // messenger (its author is Olivier Deruelle). Thanks for making it public!
-  private static final char[] toHex = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b',
+  private static final byte[] toHex = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b',
       'c', 'd', 'e', 'f'};
 
   /**
-   * Converts b[] to hex string.
+   * Converts b[] to its lower case hex representation, as ASCII bytes.
    * 
    * @param b the bte array to convert
    * @return a Hex representation of b.
    */
-  private static String toHexString(byte b[]) {
+  private static byte[] toHex(byte b[]) {
     int pos = 0;
-    char[] c = new char[b.length * 2];
+    byte[] c = new byte[b.length * 2];
     for (int i = 0; i < b.length; i++) {
       c[pos++] = toHex[(b[i] >> 4) & 0x0F];
       c[pos++] = toHex[b[i] & 0x0f];
     }
-    return new String(c);
+    return c;
   }
 }
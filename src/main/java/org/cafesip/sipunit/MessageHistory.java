@@ -0,0 +1,169 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+
+/**
+ * A list of received messages (or anything else) that retains items according to a HistoryPolicy.
+ * Under a lastN() policy the list works as a ring buffer holding the most recent items in arrival
+ * order. The last item added is always available via getLast(), even under HistoryPolicy.NONE.
+ *
+ * <p>
+ * All methods are synchronized on the list itself.
+ *
+ * @param <E> The type of the items held.
+ */
+public class MessageHistory<E> extends AbstractList<E> {
+
+  private HistoryPolicy policy;
+
+  private ArrayList<E> items = new ArrayList<>();
+
+  // index in items of the oldest item, non-zero only once a bounded history has wrapped
+  private int head;
+
+  private E last;
+
+  private long discardCount;
+
+  // told about each item added, may be null
+  private final StateMonitor monitor;
+
+  protected MessageHistory(HistoryPolicy policy) {
+    this(policy, null);
+  }
+
+  MessageHistory(HistoryPolicy policy, StateMonitor monitor) {
+    this.policy = policy;
+    this.monitor = monitor;
+  }
+
+  /**
+   * Adds an item to the end of the history, discarding the oldest item if the policy's capacity
+   * has been reached.
+   */
+  @Override
+  public synchronized boolean add(E item) {
+    last = item;
+    modCount++;
+
+    int capacity = policy.getCapacity();
+    if (capacity == 0) {
+      discardCount++;
+    } else if (items.size() < capacity) {
+      items.add(item);
+    } else {
+      items.set(head, item);
+      head = (head + 1) % capacity;
+      discardCount++;
+    }
+
+    if (monitor != null) {
+      monitor.changed();
+    }
+
+    return true;
+  }
+
+  @Override
+  public synchronized E get(int index) {
+    if (index < 0 || index >= items.size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + items.size());
+    }
+
+    return items.get((head + index) % items.size());
+  }
+
+  @Override
+  public synchronized int size() {
+    return items.size();
+  }
+
+  @Override
+  public synchronized void clear() {
+    items = new ArrayList<>();
+    head = 0;
+    last = null;
+    modCount++;
+  }
+
+  @Override
+  public synchronized Object[] toArray() {
+    return head == 0 ? items.toArray() : ordered().toArray();
+  }
+
+  @Override
+  public synchronized <T> T[] toArray(T[] a) {
+    return head == 0 ? items.toArray(a) : ordered().toArray(a);
+  }
+
+  /**
+   * Returns the last item added, whether or not it is still retained in the history.
+   *
+   * @return The last item added, or null if none has been added since the history was created or
+   *         last cleared.
+   */
+  public synchronized E getLast() {
+    return last;
+  }
+
+  /**
+   * Returns the number of items discarded so far because of the policy's capacity.
+   *
+   * @return The discard count.
+   */
+  public synchronized long getDiscardCount() {
+    return discardCount;
+  }
+
+  public synchronized HistoryPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Changes the policy of this history. If the new policy has a smaller capacity than the number
+   * of items currently held, the oldest items are discarded.
+   *
+   * @param policy The new policy.
+   */
+  public synchronized void setPolicy(HistoryPolicy policy) {
+    ArrayList<E> current = ordered();
+    int excess = current.size() - policy.getCapacity();
+    if (excess > 0) {
+      current = new ArrayList<>(current.subList(excess, current.size()));
+      discardCount += excess;
+    }
+
+    this.policy = policy;
+    items = current;
+    head = 0;
+    modCount++;
+  }
+
+  private ArrayList<E> ordered() {
+    if (head == 0) {
+      return new ArrayList<>(items);
+    }
+
+    ArrayList<E> list = new ArrayList<>(items.size());
+    list.addAll(items.subList(head, items.size()));
+    list.addAll(items.subList(0, head));
+    return list;
+  }
+}
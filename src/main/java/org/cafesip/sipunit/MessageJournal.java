@@ -0,0 +1,476 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import gov.nist.javax.sip.message.SIPMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sip.PeerUnavailableException;
+import javax.sip.SipFactory;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Message;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+/**
+ * This class records the raw bytes of the SIP messages received by a SipSession outside of the
+ * Java heap, for long running (soak) tests that need the complete message history for post-mortem
+ * assertions but can't afford to keep every parsed message alive on the heap. See
+ * SipSession.setMessageJournal().
+ *
+ * <p>
+ * Each message is stored with the System.nanoTime() at which it was received and its Call-ID, in
+ * fixed size segments that are either direct ByteBuffers or regions of a memory-mapped file. A
+ * message is only parsed again when it is accessed, via getAllReceivedRequests(),
+ * getAllReceivedResponses() or Entry.getMessage(). Combined with HistoryPolicy.NONE on the calls
+ * and subscriptions, this keeps the heap used per call constant no matter how long the test runs.
+ *
+ * <p>
+ * All methods are synchronized on the journal. Call close() when done with the journal; for a
+ * mapped journal, the file is left in place.
+ *
+ */
+public class MessageJournal implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessageJournal.class);
+
+  /**
+   * The default segment size, 4 MB.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+  // timestamp, kind, Call-ID length, message length
+  private static final int RECORD_HEADER_SIZE = 8 + 1 + 2 + 4;
+
+  private static final byte REQUEST = 0;
+
+  private static final byte RESPONSE = 1;
+
+  private static volatile MessageFactory messageFactory;
+
+  private final int segmentSize;
+
+  private final FileChannel channel;
+
+  private final List<ByteBuffer> segments = new ArrayList<>();
+
+  private long mappedBytes;
+
+  private int count;
+
+  private long byteCount;
+
+  private boolean closed;
+
+  // incremented by clear() so that entries obtained before can tell their data is gone
+  private int generation;
+
+  /**
+   * A constructor for this class. The journal is kept in direct ByteBuffers of
+   * DEFAULT_SEGMENT_SIZE.
+   */
+  public MessageJournal() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * A constructor for this class. The journal is kept in direct ByteBuffers of the given size.
+   *
+   * @param segmentSize The number of bytes to allocate each time the journal runs out of room. A
+   *        message larger than this gets a segment of its own.
+   */
+  public MessageJournal(int segmentSize) {
+    this(segmentSize, null);
+  }
+
+  private MessageJournal(int segmentSize, FileChannel channel) {
+    if (segmentSize <= RECORD_HEADER_SIZE) {
+      throw new IllegalArgumentException("segment size too small: " + segmentSize);
+    }
+
+    this.segmentSize = segmentSize;
+    this.channel = channel;
+  }
+
+  /**
+   * Creates a journal that is kept in the given file, memory-mapped one segment at a time. The
+   * file is created if it doesn't exist and overwritten if it does.
+   *
+   * @param file The journal file.
+   * @param segmentSize The number of bytes to map each time the journal runs out of room.
+   * @return The journal.
+   * @throws IOException If the file can't be opened.
+   */
+  public static MessageJournal mapped(Path file, int segmentSize) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    return new MessageJournal(segmentSize, channel);
+  }
+
+  /**
+   * Records a received request.
+   *
+   * @param request The request.
+   */
+  public void recordRequest(Request request) {
+    record(REQUEST, request);
+  }
+
+  /**
+   * Records a received response.
+   *
+   * @param response The response.
+   */
+  public void recordResponse(Response response) {
+    record(RESPONSE, response);
+  }
+
+  private void record(byte kind, Message message) {
+    long timestamp = System.nanoTime();
+
+    CallIdHeader callIdHeader = (CallIdHeader) message.getHeader(CallIdHeader.NAME);
+    byte[] callId = callIdHeader == null ? new byte[0]
+        : callIdHeader.getCallId().getBytes(StandardCharsets.UTF_8);
+    byte[] bytes;
+    try {
+      bytes = encode(message);
+    } catch (RuntimeException e) {
+      // never in the way of the message being handled
+      LOG.error("Couldn't encode the message for the journal, message not recorded", e);
+      return;
+    }
+
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+
+      ByteBuffer segment;
+      try {
+        segment = segmentFor(RECORD_HEADER_SIZE + callId.length + bytes.length);
+      } catch (IOException e) {
+        LOG.error("Couldn't extend the message journal, message not recorded", e);
+        return;
+      }
+
+      segment.putLong(timestamp);
+      segment.put(kind);
+      segment.putShort((short) callId.length);
+      segment.putInt(bytes.length);
+      segment.put(callId);
+      segment.put(bytes);
+
+      count++;
+      byteCount += bytes.length;
+    }
+  }
+
+  /*
+   * The NIST encodeAsBytes(transport) sets the given transport on the top Via before encoding (and
+   * fails on null). Handing it the top Via's own transport leaves the received message as it was,
+   * and keeps a binary body intact, which toString() wouldn't.
+   */
+  private static byte[] encode(Message message) {
+    ViaHeader via = (ViaHeader) message.getHeader(ViaHeader.NAME);
+    if (message instanceof SIPMessage && via != null && via.getTransport() != null) {
+      return ((SIPMessage) message).encodeAsBytes(via.getTransport());
+    }
+
+    return message.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private ByteBuffer segmentFor(int recordSize) throws IOException {
+    if (!segments.isEmpty()) {
+      ByteBuffer current = segments.get(segments.size() - 1);
+      if (current.remaining() >= recordSize) {
+        return current;
+      }
+    }
+
+    int size = Math.max(segmentSize, recordSize);
+    ByteBuffer segment;
+    if (channel == null) {
+      segment = ByteBuffer.allocateDirect(size);
+    } else {
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, size);
+      mappedBytes += size;
+    }
+
+    segments.add(segment);
+    return segment;
+  }
+
+  /**
+   * Returns the entries of this journal in the order the messages were received.
+   *
+   * @return ArrayList of zero or more entries.
+   */
+  public synchronized ArrayList<Entry> getEntries() {
+    return getEntries(null);
+  }
+
+  /**
+   * Returns the entries of this journal for the given Call-ID, in the order the messages were
+   * received.
+   *
+   * @param callId The Call-ID, or null for all entries.
+   * @return ArrayList of zero or more entries.
+   */
+  public synchronized ArrayList<Entry> getEntries(String callId) {
+    ArrayList<Entry> entries = new ArrayList<>();
+    for (int i = 0; i < segments.size(); i++) {
+      ByteBuffer segment = segments.get(i).duplicate();
+      int end = segment.position();
+      segment.position(0);
+
+      while (segment.position() < end) {
+        long timestamp = segment.getLong();
+        boolean request = segment.get() == REQUEST;
+        byte[] id = new byte[segment.getShort() & 0xffff];
+        int length = segment.getInt();
+        segment.get(id);
+
+        String entryCallId = new String(id, StandardCharsets.UTF_8);
+        if (callId == null || callId.equals(entryCallId)) {
+          entries.add(new Entry(timestamp, request, entryCallId, generation, i,
+              segment.position(), length));
+        }
+
+        segment.position(segment.position() + length);
+      }
+    }
+
+    return entries;
+  }
+
+  /**
+   * Gets all the requests in this journal, parsing them from their recorded bytes. A request that
+   * can't be parsed is logged and left out.
+   *
+   * @return ArrayList of zero or more SipRequest objects.
+   */
+  public ArrayList<SipRequest> getAllReceivedRequests() {
+    return getAllReceivedRequests(null);
+  }
+
+  /**
+   * Gets the requests in this journal for the given Call-ID, parsing them from their recorded
+   * bytes. A request that can't be parsed is logged and left out.
+   *
+   * @param callId The Call-ID, or null for all requests.
+   * @return ArrayList of zero or more SipRequest objects.
+   */
+  public ArrayList<SipRequest> getAllReceivedRequests(String callId) {
+    ArrayList<SipRequest> requests = new ArrayList<>();
+    for (Entry entry : getEntries(callId)) {
+      if (entry.isRequest()) {
+        try {
+          requests.add(new SipRequest((Request) entry.getMessage()));
+        } catch (ParseException e) {
+          LOG.warn("Couldn't parse journaled request", e);
+        }
+      }
+    }
+
+    return requests;
+  }
+
+  /**
+   * Gets all the responses in this journal, parsing them from their recorded bytes. A response
+   * that can't be parsed is logged and left out.
+   *
+   * @return ArrayList of zero or more SipResponse objects.
+   */
+  public ArrayList<SipResponse> getAllReceivedResponses() {
+    return getAllReceivedResponses(null);
+  }
+
+  /**
+   * Gets the responses in this journal for the given Call-ID, parsing them from their recorded
+   * bytes. A response that can't be parsed is logged and left out.
+   *
+   * @param callId The Call-ID, or null for all responses.
+   * @return ArrayList of zero or more SipResponse objects.
+   */
+  public ArrayList<SipResponse> getAllReceivedResponses(String callId) {
+    ArrayList<SipResponse> responses = new ArrayList<>();
+    for (Entry entry : getEntries(callId)) {
+      if (!entry.isRequest()) {
+        try {
+          responses.add(new SipResponse((Response) entry.getMessage()));
+        } catch (ParseException e) {
+          LOG.warn("Couldn't parse journaled response", e);
+        }
+      }
+    }
+
+    return responses;
+  }
+
+  /**
+   * Returns the number of messages recorded.
+   *
+   * @return The message count.
+   */
+  public synchronized int size() {
+    return count;
+  }
+
+  /**
+   * Returns the total size of the messages recorded, not counting the per-message overhead.
+   *
+   * @return The number of message bytes recorded.
+   */
+  public synchronized long getByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * Discards everything recorded so far. For a mapped journal, the file is reused from the start.
+   */
+  public synchronized void clear() {
+    segments.clear();
+    generation++;
+    mappedBytes = 0;
+    count = 0;
+    byteCount = 0;
+  }
+
+  /**
+   * Discards everything recorded and stops recording. For a mapped journal, the file is closed.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    clear();
+    closed = true;
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  private synchronized byte[] read(int entryGeneration, int segment, int offset, int length) {
+    if (entryGeneration != generation) {
+      throw new IllegalStateException("journal has been cleared");
+    }
+
+    ByteBuffer buffer = segments.get(segment).duplicate();
+    buffer.position(offset);
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static MessageFactory getMessageFactory() throws ParseException {
+    if (messageFactory == null) {
+      try {
+        messageFactory = SipFactory.getInstance().createMessageFactory();
+      } catch (PeerUnavailableException e) {
+        ParseException pe = new ParseException("no SIP message factory available", 0);
+        pe.initCause(e);
+        throw pe;
+      }
+    }
+
+    return messageFactory;
+  }
+
+  /**
+   * One message recorded in a MessageJournal. The message itself stays in the journal until
+   * getBytes() or getMessage() is called.
+   */
+  public class Entry {
+
+    private final long timestamp;
+
+    private final boolean request;
+
+    private final String callId;
+
+    private final int generation;
+
+    private final int segment;
+
+    private final int offset;
+
+    private final int length;
+
+    private Entry(long timestamp, boolean request, String callId, int generation, int segment,
+        int offset, int length) {
+      this.timestamp = timestamp;
+      this.request = request;
+      this.callId = callId;
+      this.generation = generation;
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Returns the System.nanoTime() at which the message was recorded.
+     *
+     * @return The timestamp in nanoseconds.
+     */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public boolean isRequest() {
+      return request;
+    }
+
+    public String getCallId() {
+      return callId;
+    }
+
+    /**
+     * Returns a copy of the message bytes as recorded.
+     *
+     * @throws IllegalStateException If the journal has been cleared since this entry was obtained.
+     * @return The message bytes.
+     */
+    public byte[] getBytes() {
+      return read(generation, segment, offset, length);
+    }
+
+    /**
+     * Parses the message from its recorded bytes. Each call parses the message again.
+     *
+     * @return A javax.sip.message.Request or javax.sip.message.Response.
+     * @throws ParseException If the message can't be parsed.
+     */
+    public Message getMessage() throws ParseException {
+      String text = new String(getBytes(), StandardCharsets.UTF_8);
+      MessageFactory factory = getMessageFactory();
+      return request ? factory.createRequest(text) : factory.createResponse(text);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the presence information parsed from a single PIDF document (NOTIFY body) by a
+ * PidfParser.
+ * 
+ */
+public class PidfDocument {
+
+  private String entity;
+
+  private final List<PresenceDeviceInfo> devices = new ArrayList<>();
+
+  private final List<PresenceNote> notes = new ArrayList<>();
+
+  private final List<Object> extensions = new ArrayList<>();
+
+  /**
+   * Creates an empty document, for a PidfParser implementation to fill in: set the entity and add
+   * to the lists returned by getDevices(), getNotes() and getExtensions().
+   */
+  public PidfDocument() {}
+
+  /**
+   * Gets the presentity URI given by the 'entity' attribute of the document.
+   * 
+   * @return The presentity URI.
+   */
+  public String getEntity() {
+    return entity;
+  }
+
+  /**
+   * Sets the presentity URI of the document.
+   * 
+   * @param entity The presentity URI.
+   */
+  public void setEntity(String entity) {
+    this.entity = entity;
+  }
+
+  /**
+   * Gets the devices (tuples) of the document, in document order.
+   * 
+   * @return A list of zero or more PresenceDeviceInfo objects.
+   */
+  public List<PresenceDeviceInfo> getDevices() {
+    return devices;
+  }
+
+  /**
+   * Gets the top level notes of the document, in document order.
+   * 
+   * @return A list of zero or more PresenceNote objects.
+   */
+  public List<PresenceNote> getNotes() {
+    return notes;
+  }
+
+  /**
+   * Gets the top level extension elements of the document.
+   * 
+   * @return A list of zero or more extension objects.
+   */
+  public List<Object> getExtensions() {
+    return extensions;
+  }
+}
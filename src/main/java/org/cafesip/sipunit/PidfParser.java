@@ -0,0 +1,44 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+/**
+ * A PidfParser turns the application/pidf+xml body of a received presence NOTIFY into the
+ * presence information (devices, notes, extensions) made available by PresenceSubscriber. The
+ * parser used by a SipPhone's subscriptions is selected with SipPhone.setPidfParser().
+ * 
+ * <p>
+ * Two implementations are provided: JaxbPidfParser (the default) which unmarshals the complete
+ * PIDF document including any extension elements, and StaxPidfParser which streams the body
+ * straight into PresenceDeviceInfo and PresenceNote objects and ignores extension elements.
+ * 
+ * <p>
+ * Implementations must be thread safe, NOTIFY messages for different subscriptions may be parsed
+ * concurrently.
+ * 
+ */
+public interface PidfParser {
+
+  /**
+   * Parses the given PIDF document.
+   * 
+   * @param body The raw NOTIFY message body.
+   * @return The parsed presence information.
+   * @throws Exception if the body isn't a well-formed PIDF document.
+   */
+  PidfDocument parse(byte[] body) throws Exception;
+}
@@ -50,7 +50,10 @@ public class PresenceDeviceInfo {
 
   private Calendar timestamp;
 
-  protected PresenceDeviceInfo() {}
+  /**
+   * Creates an empty presence device, for a PidfParser implementation to fill in.
+   */
+  public PresenceDeviceInfo() {}
 
   /**
    * Gets the basic status for this presence device (ie, "open" or "closed").
@@ -61,7 +64,7 @@ public class PresenceDeviceInfo {
     return basicStatus;
   }
 
-  protected void setBasicStatus(String basicStatus) {
+  public void setBasicStatus(String basicStatus) {
     this.basicStatus = basicStatus;
   }
 
@@ -82,7 +85,7 @@ public class PresenceDeviceInfo {
     return contactPriority;
   }
 
-  protected void setContactPriority(double contactPriority) {
+  public void setContactPriority(double contactPriority) {
     this.contactPriority = contactPriority;
   }
 
@@ -96,7 +99,7 @@ public class PresenceDeviceInfo {
     return contactValue;
   }
 
-  protected void setContactValue(String contactValue) {
+  public void setContactValue(String contactValue) {
     this.contactValue = contactValue;
   }
 
@@ -110,7 +113,7 @@ public class PresenceDeviceInfo {
     return deviceExtensions;
   }
 
-  protected void setDeviceExtensions(List<Object> deviceExtensions) {
+  public void setDeviceExtensions(List<Object> deviceExtensions) {
     this.deviceExtensions = deviceExtensions;
   }
 
@@ -123,7 +126,7 @@ public class PresenceDeviceInfo {
     return deviceNotes;
   }
 
-  protected void setDeviceNotes(List<PresenceNote> deviceNotes) {
+  public void setDeviceNotes(List<PresenceNote> deviceNotes) {
     this.deviceNotes = deviceNotes;
   }
 
@@ -136,7 +139,7 @@ public class PresenceDeviceInfo {
     return id;
   }
 
-  protected void setId(String id) {
+  public void setId(String id) {
     this.id = id;
   }
 
@@ -150,7 +153,7 @@ public class PresenceDeviceInfo {
     return statusExtensions;
   }
 
-  protected void setStatusExtensions(List<Object> statusExtensions) {
+  public void setStatusExtensions(List<Object> statusExtensions) {
     this.statusExtensions = statusExtensions;
   }
 
@@ -163,7 +166,7 @@ public class PresenceDeviceInfo {
     return timestamp;
   }
 
-  protected void setTimestamp(Calendar timestamp) {
+  public void setTimestamp(Calendar timestamp) {
     this.timestamp = timestamp;
   }
 }
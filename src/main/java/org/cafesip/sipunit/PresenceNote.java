@@ -33,7 +33,13 @@ public class PresenceNote {
 
   private String value;
 
-  protected PresenceNote(String language, String value) {
+  /**
+   * Creates a note, as a PidfParser implementation does for each note element of the document.
+   * 
+   * @param language The language of the note (xml:lang), or null if not given.
+   * @param value The text of the note.
+   */
+  public PresenceNote(String language, String value) {
     this.language = language;
     this.value = value;
   }
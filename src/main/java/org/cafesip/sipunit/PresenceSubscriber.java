@@ -19,27 +19,15 @@ package org.cafesip.sipunit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 
 import javax.sip.header.AcceptHeader;
 import javax.sip.header.ContentTypeHeader;
 import javax.sip.header.EventHeader;
 import javax.sip.message.Request;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
-
-import org.cafesip.sipunit.presenceparser.pidf.Contact;
-import org.cafesip.sipunit.presenceparser.pidf.Note;
-import org.cafesip.sipunit.presenceparser.pidf.Presence;
-import org.cafesip.sipunit.presenceparser.pidf.Tuple;
 
 /**
  * The PresenceSubscriber class represents a buddy from a SipPhone buddy list or a single-shot
@@ -153,11 +141,7 @@ public class PresenceSubscriber extends EventSubscriber {
     // parse and get info from the xml body
 
     try {
-      Unmarshaller parser =
-          JAXBContext.newInstance("org.cafesip.sipunit.presenceparser.pidf").createUnmarshaller();
-      parser.setEventHandler(arg -> arg.getMessage().startsWith("Unexpected element"));
-      Source source = new StreamSource(new ByteArrayInputStream(bodyBytes));
-      Presence doc = parser.unmarshal(source, Presence.class).getValue();
+      PidfDocument doc = parent.getPidfParser().parse(bodyBytes);
 
       // is it the correct presentity?
 
@@ -169,56 +153,15 @@ public class PresenceSubscriber extends EventSubscriber {
       // finally, update our presence information
 
       devices.clear();
-      if (doc.getTuple() != null) {
-        Iterator<?> i = doc.getTuple().iterator();
-        while (i.hasNext()) {
-          Tuple t = (Tuple) i.next();
-
-          PresenceDeviceInfo dev = new PresenceDeviceInfo();
-          dev.setBasicStatus(t.getStatus().getBasic().value());
-
-          Contact contact = t.getContact();
-          if (contact != null) {
-            if (contact.getPriority() != null) {
-              dev.setContactPriority(contact.getPriority().doubleValue());
-            }
-            dev.setContactValue(contact.getValue());
-          }
-
-          dev.setDeviceExtensions(t.getAny());
-          dev.setId(t.getId());
-          dev.setStatusExtensions(t.getStatus().getAny());
-          if(null != t.getTimestamp()) {
-            dev.setTimestamp(t.getTimestamp().toGregorianCalendar());
-          }
-
-          List<PresenceNote> notes = new ArrayList<>();
-          if (t.getNote() != null) {
-            Iterator<?> j = t.getNote().iterator();
-            while (j.hasNext()) {
-              Note n = (Note) j.next();
-              notes.add(new PresenceNote(n.getLang(), n.getValue()));
-            }
-          }
-          dev.setDeviceNotes(notes);
-
-          devices.put(t.getId(), dev);
-        }
+      for (PresenceDeviceInfo dev : doc.getDevices()) {
+        devices.put(dev.getId(), dev);
       }
 
       presenceNotes.clear();
-      if (doc.getNote() != null) {
-        Iterator<?> i = doc.getNote().iterator();
-        while (i.hasNext()) {
-          Note n = (Note) i.next();
-          presenceNotes.add(new PresenceNote(n.getLang(), n.getValue()));
-        }
-      }
+      presenceNotes.addAll(doc.getNotes());
 
       presenceExtensions.clear();
-      if (doc.getAny() != null) {
-        presenceExtensions.addAll(doc.getAny());
-      }
+      presenceExtensions.addAll(doc.getExtensions());
 
       LOG.trace("Successfully processed NOTIFY message body for Subscription to " + targetUri);
     } catch (Exception e) {
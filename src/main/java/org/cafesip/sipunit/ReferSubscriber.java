@@ -82,6 +82,7 @@ public class ReferSubscriber extends EventSubscriber {
    */
   public void dispose() {
     parent.removeRefer(this);
+    super.dispose();
   }
 
   /**
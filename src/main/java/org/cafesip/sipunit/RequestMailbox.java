@@ -0,0 +1,497 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.sip.RequestEvent;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.ToHeader;
+import javax.sip.message.Request;
+
+/**
+ * The received requests of a SipSession waiting to be picked up by the test program, indexed so
+ * that several waiters - typically the SipCalls of one SipPhone - can each wait for their own
+ * requests without taking each other's. A request can be taken as the oldest of all (see
+ * SipSession.waitRequest()), as the oldest new incoming call (an INVITE without a To tag), or as the
+ * oldest request of a given method, optionally on a given Call-ID, or as the oldest request on a
+ * given Call-ID. Any of these can be narrowed further by a predicate. Whichever way it is taken, a
+ * request is taken exactly once.
+ *
+ * <p>
+ * The mailbox holds a bounded number of requests: when a request arrives with the mailbox full,
+ * the oldest one is dropped to make room for it.
+ */
+class RequestMailbox {
+
+  /**
+   * Identifies the requests a waiter is interested in.
+   */
+  static final class Query {
+
+    private static final Query ANY = new Query("*");
+
+    private static final Query NEW_CALL = new Query("new");
+
+    private final String key;
+
+    private Query(String key) {
+      this.key = key;
+    }
+
+    /**
+     * Any request.
+     */
+    static Query any() {
+      return ANY;
+    }
+
+    /**
+     * An INVITE that isn't part of an existing dialog, ie, doesn't have a To tag.
+     */
+    static Query newCall() {
+      return NEW_CALL;
+    }
+
+    /**
+     * A request of the given method (other than an INVITE without a To tag) on the given Call-ID,
+     * or on any Call-ID if callId is null.
+     */
+    static Query of(String callId, String method) {
+      return new Query(callId == null ? methodKey(method) : callKey(callId, method));
+    }
+
+    /**
+     * Any request on the given Call-ID.
+     */
+    static Query call(String callId) {
+      return new Query(idKey(callId));
+    }
+  }
+
+  /**
+   * Hands a waiter the request it takes and the requests it passed over - left in the mailbox
+   * because they didn't match what it was waiting for - each one once, across successive waits. A
+   * request passed over by one wait and taken by a later one isn't handed over again.
+   */
+  static final class Observer {
+
+    private final Consumer<SipRequest> consumer;
+
+    // sequence number of the newest request handed to the consumer so far, guarded by the lock
+    private long seen;
+
+    Observer(Consumer<SipRequest> consumer) {
+      this.consumer = consumer;
+    }
+  }
+
+  private static final class Entry {
+
+    final RequestEvent event;
+
+    final String callId;
+
+    final String methodKey;
+
+    final String callKey;
+
+    // arrival order, assigned under the lock
+    long seq;
+
+    // created on first use by a predicate, then handed to whoever takes the entry
+    private SipRequest request;
+
+    Entry(RequestEvent event, String callId, String methodKey, String callKey) {
+      this.event = event;
+      this.callId = callId;
+      this.methodKey = methodKey;
+      this.callKey = callKey;
+    }
+
+    SipRequest request() {
+      if (request == null) {
+        request = new SipRequest(event);
+      }
+      return request;
+    }
+  }
+
+  private static final class Waiters {
+
+    final Condition condition;
+
+    int count;
+
+    Waiters(Condition condition) {
+      this.condition = condition;
+    }
+  }
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // whether requests are being accepted, see open() - written under the lock
+  private volatile boolean open;
+
+  private int capacity;
+
+  private long dropped;
+
+  private long lastSeq;
+
+  // all entries in arrival order, plus the same entries indexed by query key
+  private final LinkedHashSet<Entry> all = new LinkedHashSet<>();
+
+  private final Map<String, LinkedHashSet<Entry>> index = new HashMap<>();
+
+  // key = query key, value = the condition the threads waiting on that query wait on
+  private final Map<String, Waiters> waiters = new HashMap<>();
+
+  RequestMailbox(int capacity) {
+    setCapacity(capacity);
+  }
+
+  private static String methodKey(String method) {
+    return "m:" + method;
+  }
+
+  private static String callKey(String callId, String method) {
+    return "c:" + method + ' ' + callId;
+  }
+
+  private static String idKey(String callId) {
+    return "i:" + callId;
+  }
+
+  /**
+   * Starts accepting requests.
+   */
+  void open() {
+    lock.lock();
+    try {
+      open = true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops accepting requests and discards the ones not yet taken. A request being added
+   * concurrently is either discarded too or refused, never left behind.
+   */
+  void close() {
+    lock.lock();
+    try {
+      open = false;
+      all.clear();
+      index.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds a received request and wakes up the threads waiting for it, unless this mailbox isn't
+   * open.
+   *
+   * @return false if the request was refused because the mailbox isn't open.
+   */
+  boolean add(RequestEvent event) {
+    if (!open) {
+      return false;
+    }
+
+    Request request = event.getRequest();
+    String method = request.getMethod();
+    ToHeader to = (ToHeader) request.getHeader(ToHeader.NAME);
+    CallIdHeader callIdHeader = (CallIdHeader) request.getHeader(CallIdHeader.NAME);
+    String callId = callIdHeader == null ? null : callIdHeader.getCallId();
+
+    Entry entry;
+    if (Request.INVITE.equals(method) && (to == null || to.getTag() == null)) {
+      entry = new Entry(event, callId, Query.NEW_CALL.key, null);
+    } else {
+      entry = new Entry(event, callId, methodKey(method),
+          callId == null ? null : callKey(callId, method));
+    }
+
+    lock.lock();
+    try {
+      if (!open) {
+        return false;
+      }
+
+      while (all.size() >= capacity) {
+        remove(all.iterator().next());
+        dropped++;
+      }
+
+      entry.seq = ++lastSeq;
+      all.add(entry);
+      index.computeIfAbsent(entry.methodKey, k -> new LinkedHashSet<>()).add(entry);
+      if (entry.callKey != null) {
+        index.computeIfAbsent(entry.callKey, k -> new LinkedHashSet<>()).add(entry);
+      }
+      if (entry.callId != null) {
+        index.computeIfAbsent(idKey(entry.callId), k -> new LinkedHashSet<>()).add(entry);
+      }
+
+      signal(Query.ANY.key);
+      signal(entry.methodKey);
+      if (entry.callKey != null) {
+        signal(entry.callKey);
+      }
+      if (entry.callId != null) {
+        signal(idKey(entry.callId));
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void signal(String key) {
+    Waiters waiting = waiters.get(key);
+    if (waiting != null) {
+      waiting.condition.signalAll();
+    }
+  }
+
+  /**
+   * Removes and returns the oldest request matching both the query and the filter, waiting for one
+   * to arrive if necessary. Requests matching the query but not the filter are left in place for
+   * other waiters. The timeout is turned into a single deadline up front, so it isn't extended by
+   * requests that arrive and are passed over.
+   *
+   * @param query the requests of interest.
+   * @param filter further narrows the requests of interest, or null to take any matching the query.
+   * @param timeout the maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
+   *        indefinitely.
+   * @return the oldest matching request, or null if the timeout elapsed first.
+   * @throws InterruptedException if the waiting thread is interrupted.
+   */
+  SipRequest take(Query query, Predicate<? super SipRequest> filter, long timeout)
+      throws InterruptedException {
+    return take(query, filter, timeout, null);
+  }
+
+  /**
+   * Same as the other take() method, and then hands the given observer, in arrival order, the
+   * request taken and the requests still in the mailbox that it hasn't been given yet - those
+   * passed over by this wait or earlier ones.
+   */
+  SipRequest take(Query query, Predicate<? super SipRequest> filter, long timeout,
+      Observer observer) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    Entry taken;
+    List<SipRequest> handed = null;
+
+    lock.lock();
+    try {
+      taken = await(query, filter, timeout, deadline);
+      if (observer != null) {
+        handed = handOver(observer, taken);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    // outside the lock, the consumer may signal the session's StateMonitor
+    if (handed != null) {
+      handed.forEach(observer.consumer);
+    }
+    return taken == null ? null : taken.request();
+  }
+
+  // called with the lock held - an entry with a sequence number up to the observer's has already
+  // been handed to it
+  private List<SipRequest> handOver(Observer observer, Entry taken) {
+    List<SipRequest> handed = new ArrayList<>();
+    boolean takenPending = taken != null && taken.seq > observer.seen;
+    for (Entry entry : all) {
+      if (takenPending && taken.seq < entry.seq) {
+        handed.add(taken.request());
+        takenPending = false;
+      }
+      if (entry.seq > observer.seen) {
+        handed.add(entry.request());
+      }
+    }
+    if (takenPending) {
+      handed.add(taken.request());
+    }
+
+    observer.seen = lastSeq;
+    return handed;
+  }
+
+  // called with the lock held
+  private Entry await(Query query, Predicate<? super SipRequest> filter, long timeout,
+      long deadline) throws InterruptedException {
+    Entry entry = poll(query.key, filter);
+    if (entry != null) {
+      return entry;
+    }
+
+    Waiters waiting = waiters.computeIfAbsent(query.key, k -> new Waiters(lock.newCondition()));
+    waiting.count++;
+    try {
+      while ((entry = poll(query.key, filter)) == null) {
+        if (timeout == 0) {
+          waiting.condition.await();
+          continue;
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return null;
+        }
+        waiting.condition.awaitNanos(remaining);
+      }
+
+      return entry;
+    } finally {
+      if (--waiting.count == 0) {
+        waiters.remove(query.key);
+      }
+    }
+  }
+
+  private Entry poll(String key, Predicate<? super SipRequest> filter) {
+    LinkedHashSet<Entry> entries = Query.ANY.key.equals(key) ? all : index.get(key);
+    if (entries == null) {
+      return null;
+    }
+
+    for (Entry entry : entries) {
+      if (filter == null || filter.test(entry.request())) {
+        remove(entry);
+        return entry;
+      }
+    }
+
+    return null;
+  }
+
+  private void remove(Entry entry) {
+    all.remove(entry);
+    removeFromIndex(entry.methodKey, entry);
+    if (entry.callKey != null) {
+      removeFromIndex(entry.callKey, entry);
+    }
+    if (entry.callId != null) {
+      removeFromIndex(idKey(entry.callId), entry);
+    }
+  }
+
+  private void removeFromIndex(String key, Entry entry) {
+    LinkedHashSet<Entry> entries = index.get(key);
+    entries.remove(entry);
+    if (entries.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  /**
+   * Sets the maximum number of requests held, dropping the oldest ones if there are more.
+   */
+  void setCapacity(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be greater than 0");
+    }
+
+    lock.lock();
+    try {
+      this.capacity = capacity;
+      while (all.size() > capacity) {
+        remove(all.iterator().next());
+        dropped++;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int getCapacity() {
+    lock.lock();
+    try {
+      return capacity;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of requests dropped, without being taken, because the mailbox was full.
+   */
+  long getDropped() {
+    lock.lock();
+    try {
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Tells whether a request of the given method is waiting to be taken.
+   */
+  boolean contains(String method) {
+    lock.lock();
+    try {
+      return index.containsKey(methodKey(method))
+          || (Request.INVITE.equals(method) && index.containsKey(Query.NEW_CALL.key));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of requests waiting to be taken.
+   */
+  int size() {
+    lock.lock();
+    try {
+      return all.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Discards the requests not yet taken that have the given Call-ID.
+   */
+  void clear(String callId) {
+    lock.lock();
+    try {
+      all.stream().filter(entry -> callId.equals(entry.callId)).collect(Collectors.toList())
+          .forEach(this::remove);
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An ordered queue of event deliveries for one SipSession, drained by a shared Executor. Tasks
+ * submitted to the same mailbox run one at a time in submission order, while the mailboxes of
+ * different sessions are drained in parallel. See SipStack.setDispatchExecutor().
+ */
+class SessionMailbox implements Executor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionMailbox.class);
+
+  // tasks drained per turn before giving other mailboxes a chance at the executor's threads
+  private static final int BATCH_SIZE = 64;
+
+  private final Executor executor;
+
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger depth = new AtomicInteger();
+
+  private final AtomicInteger maxDepth = new AtomicInteger();
+
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  SessionMailbox(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    tasks.add(task);
+    int current = depth.incrementAndGet();
+    maxDepth.accumulateAndGet(current, Math::max);
+    schedule();
+  }
+
+  private void schedule() {
+    if (!scheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      executor.execute(this::drain);
+    } catch (RejectedExecutionException e) {
+      // the executor has been shut down, deliver on the calling thread instead of losing events
+      LOG.warn("Dispatch executor rejected mailbox, delivering on the calling thread", e);
+      drain();
+    }
+  }
+
+  private void drain() {
+    try {
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        Runnable task = tasks.poll();
+        if (task == null) {
+          break;
+        }
+
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          LOG.error("Exception delivering event to session", e);
+        } finally {
+          depth.decrementAndGet();
+        }
+      }
+    } finally {
+      scheduled.set(false);
+      if (!tasks.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of events waiting in, or being delivered from, this mailbox.
+   */
+  int getDepth() {
+    return depth.get();
+  }
+
+  /**
+   * Returns the highest depth this mailbox has reached.
+   */
+  int getMaxDepth() {
+    return maxDepth.get();
+  }
+}
@@ -25,9 +25,9 @@ import javax.sip.message.Request;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.function.BooleanSupplier;
 
 import static com.jayway.awaitility.Awaitility.await;
-import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -53,6 +53,9 @@ import static org.junit.jupiter.api.Assertions.*;
 @UtilityClass
 public class SipAssert {
 
+  // same as Awaitility's default, which the awaitXxx() methods used to poll with
+  private final long AWAIT_TIMEOUT = 10000;
+
   /**
    * Asserts that the last SIP operation performed by the given object was successful.
    * 
@@ -172,7 +175,26 @@ public class SipAssert {
    *         period.
    */
   public void awaitReceivedResponses(final SipCall call, final int count) {
-    await().until(() -> call.getAllReceivedResponses().size(), is(count));
+    if (!awaitState(call.getStateMonitor(), () -> call.getAllReceivedResponses().size() == count,
+        AWAIT_TIMEOUT)) {
+      throw new ConditionTimeoutException(
+          "Expected " + count + " responses, got " + call.getAllReceivedResponses().size());
+    }
+  }
+
+  /**
+   * Asserts that the given message listener object receives a response with the indicated status
+   * code within the given time. Returns as soon as the response has been received, without
+   * polling, if the object is a SipCall or a subscription.
+   * 
+   * @param statusCode The response status code to check for (eg, SipResponse.RINGING)
+   * @param obj The MessageListener object (ie, SipCall, Subscription, etc.).
+   * @param timeout The maximum amount of time to wait, in milliseconds.
+   */
+  public void assertResponseReceived(int statusCode, MessageListener obj, long timeout) {
+    assertNotNull(obj);
+    assertTrue(awaitState(monitorOf(obj), () -> responseReceived(statusCode, obj), timeout),
+        "No " + statusCode + " response received within " + timeout + " ms");
   }
 
   /**
@@ -271,6 +293,38 @@ public class SipAssert {
     assertTrue(requestReceived(method, obj));
   }
 
+  /**
+   * Asserts that the given message listener object receives a request with the indicated CSeq
+   * method within the given time. Returns as soon as the request has been received, without
+   * polling, if the object is a SipCall or a subscription.
+   * 
+   * @param method The CSeq method to look for (SipRequest.REGISTER, etc.)
+   * @param obj The MessageListener object (ie, SipCall, Subscription, etc.).
+   * @param timeout The maximum amount of time to wait, in milliseconds.
+   */
+  public void assertRequestReceived(String method, MessageListener obj, long timeout) {
+    assertNotNull(obj);
+    assertTrue(awaitState(monitorOf(obj), () -> requestReceived(method, obj), timeout),
+        "No " + method + " request received within " + timeout + " ms");
+  }
+
+  /**
+   * Asserts that a request with the indicated method, addressed to the given SipSession (ie,
+   * SipPhone), is received within the given time. The request is not consumed, it's still there
+   * for the next waitRequest() or SipCall waitForXxx() call. Call listenRequestMessage() (or a
+   * SipCall listenForXxx() method) beforehand.
+   * 
+   * @param method The request method to look for (SipRequest.BYE, etc.)
+   * @param session The receiving SipSession.
+   * @param timeout The maximum amount of time to wait, in milliseconds.
+   */
+  public void assertRequestReceived(String method, SipSession session, long timeout) {
+    assertNotNull(session);
+    assertTrue(
+        awaitState(session.getStateMonitor(), () -> session.isRequestPending(method), timeout),
+        "No " + method + " request received within " + timeout + " ms");
+  }
+
   private boolean requestReceived(String method, MessageListener obj) {
     List<SipRequest> requests = obj.getAllReceivedRequests();
 
@@ -364,7 +418,22 @@ public class SipAssert {
    * @param call The incoming or outgoing call leg.
    */
   public void awaitAnswered(final SipCall call) {
-    await().until(() -> assertAnswered(call));
+    if (!awaitState(call.getStateMonitor(), call::isCallAnswered, AWAIT_TIMEOUT)) {
+      throw new ConditionTimeoutException("Call not answered within " + AWAIT_TIMEOUT + " ms");
+    }
+  }
+
+  /**
+   * Asserts that the given incoming or outgoing call leg gets answered within the given time.
+   * Returns as soon as the call is answered, without polling.
+   * 
+   * @param call The incoming or outgoing call leg.
+   * @param timeout The maximum amount of time to wait, in milliseconds.
+   */
+  public void assertAnswered(SipCall call, long timeout) {
+    assertNotNull(call);
+    assertTrue(awaitState(call.getStateMonitor(), call::isCallAnswered, timeout),
+        "Call not answered within " + timeout + " ms");
   }
 
   public void awaitDialogReady(final ReferNotifySender ub) {
@@ -450,6 +519,19 @@ public class SipAssert {
     assertTrue(true);
   }
 
+  /**
+   * Asserts that the given subscription gets terminated within the given time. Returns as soon as
+   * the subscription state changes to TERMINATED, without polling.
+   * 
+   * @param subscription the Subscription in question.
+   * @param timeout The maximum amount of time to wait, in milliseconds.
+   */
+  public void assertSubscriptionTerminated(EventSubscriber subscription, long timeout) {
+    assertNotNull(subscription);
+    assertTrue(awaitState(subscription.getStateMonitor(), subscription::isSubscriptionTerminated,
+        timeout), "Subscription not terminated within " + timeout + " ms");
+  }
+
   /**
    * Asserts that the given Subscription has not encountered any errors while processing received
    * subscription responses and received NOTIFY requests. Assertion failure output includes the
@@ -476,6 +558,26 @@ public class SipAssert {
     });
   }
 
+  private StateMonitor monitorOf(MessageListener obj) {
+    if (obj instanceof SipCall) {
+      return ((SipCall) obj).getStateMonitor();
+    }
+    if (obj instanceof EventSubscriber) {
+      return ((EventSubscriber) obj).getStateMonitor();
+    }
+
+    return StateMonitor.UNMONITORED;
+  }
+
+  private boolean awaitState(StateMonitor monitor, BooleanSupplier condition, long timeout) {
+    try {
+      return monitor.await(condition, timeout);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return fail("Interrupted while waiting", e);
+    }
+  }
+
   // Later: ContentDispositionHeader, ContentEncodingHeader,
   // ContentLanguageHeader,
   // ContentLengthHeader, ContentTypeHeader, MimeVersionHeader
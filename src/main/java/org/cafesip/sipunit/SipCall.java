@@ -21,17 +21,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.ParseException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.EventObject;
 import java.util.List;
 import java.util.ListIterator;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import javax.sip.ClientTransaction;
 import javax.sip.Dialog;
 import javax.sip.DialogState;
 import javax.sip.RequestEvent;
 import javax.sip.ResponseEvent;
 import javax.sip.ServerTransaction;
+import javax.sip.SipException;
 import javax.sip.TimeoutEvent;
 import javax.sip.TransactionState;
 import javax.sip.address.Address;
@@ -83,6 +91,10 @@ import javax.sip.message.Response;
  */
 @Slf4j
 public class SipCall implements SipActionObject, MessageListener {
+  // upper bound for the OK to be handed to us before sending the ACK, see awaitDialogConfirmed()
+  // and sendReinviteOkAck()
+  private static final long ACK_READY_TIMEOUT = 1000;
+
   private SipPhone parent;
 
   private int returnCode = -1;
@@ -99,19 +111,36 @@ public class SipCall implements SipActionObject, MessageListener {
 
   private CallIdHeader callId;
 
-  private SipTransaction transaction;
+  // written by the sending thread, read by the stack thread delivering asynchronous responses
+  private volatile SipTransaction transaction;
+
+  private final MessageHistory<SipResponse> receivedResponses;
 
-  private final List<SipResponse> receivedResponses;
+  private final MessageHistory<SipRequest> receivedRequests;
 
-  private final List<SipRequest> receivedRequests;
+  // collects the requests the wait methods take and those they leave for others, each once - see
+  // getAllReceivedRequests()
+  private final RequestMailbox.Observer recorder =
+      new RequestMailbox.Observer(request -> this.receivedRequests.add(request));
 
-  private List<String> allReceivedMessagesContent;
+  private final MessageHistory<String> allReceivedMessagesContent;
 
   private Request messageRequest;
 
-  private Dialog dialog;
+  private volatile Dialog dialog;
+
+  private volatile boolean callAnswered;
+
+  // transport this call's requests and responses go out on, null for the phone's own - see
+  // SipSession.selectTransport()
+  private volatile String transport;
+
+  // asynchronous call lifecycle, see onAnswered() and the xxxAsync() methods
+  private volatile CompletableFuture<SipCall> answered = new CompletableFuture<>();
 
-  private boolean callAnswered;
+  private volatile boolean autoAck;
+
+  private volatile PendingResponse pendingFinalResponse;
 
   private boolean messageDelivered;
 
@@ -124,9 +153,10 @@ public class SipCall implements SipActionObject, MessageListener {
     this.parent = phone;
     this.myAddress = myAddress;
 
-    receivedResponses = Collections.synchronizedList(new ArrayList<>());
-    receivedRequests = Collections.synchronizedList(new ArrayList<>());
-    allReceivedMessagesContent = Collections.synchronizedList(new ArrayList<>());
+    HistoryPolicy historyPolicy = phone.getHistoryPolicy();
+    receivedResponses = new MessageHistory<>(historyPolicy, parent.getStateMonitor());
+    receivedRequests = new MessageHistory<>(historyPolicy, parent.getStateMonitor());
+    allReceivedMessagesContent = new MessageHistory<>(historyPolicy, parent.getStateMonitor());
   }
 
   /**
@@ -135,9 +165,11 @@ public class SipCall implements SipActionObject, MessageListener {
    * is in the confirmed state.
    */
   public void dispose() {
-    parent.unlistenRequestMessage(); // TODO (buddy) - remove or refactor
-    // SipSession -
-    // make it per-callId. Update Subscription to do the same.
+    // other SipCalls of the SipPhone may still be listening, only drop what's pending for this one
+    CallIdHeader current = callId;
+    if (current != null) {
+      parent.discardRequests(current.getCallId());
+    }
 
     if (dialog != null) {
       if (dialog.getState() != null) {
@@ -241,18 +273,13 @@ public class SipCall implements SipActionObject, MessageListener {
    * Otherwise alot of overhead is used up and wasted.
    * 
    * <p>
-   * If there are any pending requests (received but not processed yet), those are discarded.
+   * If there are any pending requests (received but not processed yet), those are discarded. Note
+   * that request listening is per SipPhone, this affects all the SipCalls of the SipPhone.
    * 
    * @return true unless an error is encountered, in which case false is returned.
    */
   public boolean stopListeningForRequests() {
     return parent.unlistenRequestMessage();
-
-    // TODO: probably need several versions of unlistenRequestMessage(), to
-    // handle multiple SipCalls per SipPhone; ie, here, purge parent's
-    // request
-    // queue of requests only with this SipCall's callId. Bigger issue -
-    // wait blocking.
   }
 
   /**
@@ -268,8 +295,10 @@ public class SipCall implements SipActionObject, MessageListener {
    * this case. 3) An error occurs. false is returned in this case.
    * 
    * <p>
-   * Any non-BYE requests received for this user agent are collected while waiting for a BYE message
-   * and can be seen by calling getAllReceivedRequests() once this method returns.
+   * Only a BYE on this call's Call-ID is taken. Other requests received for this user agent are
+   * left for the other SipCalls of the SipPhone, or for a later waitForXxx() call. They are still
+   * collected while waiting and can be seen by calling getAllReceivedRequests() once this method
+   * returns.
    * 
    * <p>
    * Regardless of the outcome, incoming requests associated with this User Agent will continue to
@@ -291,9 +320,10 @@ public class SipCall implements SipActionObject, MessageListener {
   public boolean waitForDisconnect(long timeout) {
     initErrorInfo();
 
-    RequestEvent event = parent.waitRequest(timeout);
+    SipRequest received = parent.waitRequest(
+        RequestMailbox.Query.of(currentCallId(), Request.BYE), null, timeout, recorder);
 
-    if (event == null) {
+    if (received == null) {
       setReturnCode(parent.getReturnCode());
       setErrorMessage(parent.getErrorMessage());
       setException(parent.getException());
@@ -301,24 +331,8 @@ public class SipCall implements SipActionObject, MessageListener {
       return false;
     }
 
+    RequestEvent event = received.getRequestEvent();
     Request request = event.getRequest();
-    receivedRequests.add(new SipRequest(event));
-
-    while (!request.getMethod().equals(Request.BYE)) {
-      event = parent.waitRequest(timeout); // TODO, adjust
-
-      if (event == null) {
-        setReturnCode(parent.getReturnCode());
-        setErrorMessage(parent.getErrorMessage());
-        setException(parent.getException());
-
-        return false;
-      }
-
-      request = event.getRequest();
-      receivedRequests.add(new SipRequest(event));
-      continue;
-    }
 
     ServerTransaction tr = event.getServerTransaction();
 
@@ -355,8 +369,11 @@ public class SipCall implements SipActionObject, MessageListener {
    * this case. 3) An error occurs. False is returned in this case.
    * 
    * <p>
-   * Any non-INVITE requests received for this user agent are collected while waiting for an INVITE
-   * message and can be seen by calling getAllReceivedRequests() once this method returns.
+   * Only a new INVITE (one without a To tag) is taken. Other requests received for this user agent
+   * are left for the other SipCalls of the SipPhone, or for a later waitForXxx() call. They are
+   * still collected while waiting and can be seen by calling getAllReceivedRequests() once this
+   * method returns. When several SipCalls of one SipPhone wait for an incoming call, each new
+   * INVITE goes to one of them.
    * 
    * <p>
    * Regardless of the outcome, incoming requests associated with this User Agent will continue to
@@ -383,11 +400,13 @@ public class SipCall implements SipActionObject, MessageListener {
     transaction = null;
     dialog = null;
     myTag = null;
-    callAnswered = false;
+    setCallAnswered(false);
+    answered = new CompletableFuture<>();
 
-    RequestEvent event = parent.waitRequest(timeout);
+    SipRequest received =
+        parent.waitRequest(RequestMailbox.Query.newCall(), null, timeout, recorder);
 
-    if (event == null) {
+    if (received == null) {
       setReturnCode(parent.getReturnCode());
       setErrorMessage(parent.getErrorMessage());
       setException(parent.getException());
@@ -395,24 +414,8 @@ public class SipCall implements SipActionObject, MessageListener {
       return false;
     }
 
+    RequestEvent event = received.getRequestEvent();
     Request request = event.getRequest();
-    receivedRequests.add(new SipRequest(event));
-
-    while (!request.getMethod().equals(Request.INVITE)) {
-      event = parent.waitRequest(timeout); // TODO, adjust timeout
-
-      if (event == null) {
-        setReturnCode(parent.getReturnCode());
-        setErrorMessage(parent.getErrorMessage());
-        setException(parent.getException());
-
-        return false;
-      }
-
-      request = event.getRequest();
-      receivedRequests.add(new SipRequest(event));
-      continue;
-    }
 
     SipStack.dumpMessage("INVITE after received by stack", request);
 
@@ -432,14 +435,31 @@ public class SipCall implements SipActionObject, MessageListener {
     transaction = new SipTransaction();
     transaction.setServerTransaction(tr);
 
-    callId = (CallIdHeader) request.getHeader(CallIdHeader.NAME);
+    replaceCallId((CallIdHeader) request.getHeader(CallIdHeader.NAME));
     parent.enableAuthorization(callId.getCallId());
 
     cseq = (CSeqHeader) request.getHeader(CSeqHeader.NAME);
 
+    // answer on the transport the INVITE came in on
+    ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
+    transport = parent.selectTransport(via.getTransport());
+
     return true;
   }
 
+  /*
+   * Returns the transport an out-of-dialog request is sent on: that of the given route or, without
+   * one, that of the proxy. Null if there's neither.
+   */
+  private String routeTransport(String viaNonProxyRoute) {
+    if (viaNonProxyRoute != null) {
+      int xport_offset = viaNonProxyRoute.indexOf('/');
+      return xport_offset < 0 ? null : viaNonProxyRoute.substring(xport_offset + 1);
+    }
+
+    return parent.proxyHost == null ? null : parent.proxyProto;
+  }
+
   /**
    * The waitForAck() method waits for an ACK request addressed to this user agent to be received
    * from the network. Prior to calling this method, any of the listenForXyz() methods must have
@@ -454,8 +474,10 @@ public class SipCall implements SipActionObject, MessageListener {
    * returned in this case. 3) An error occurs. false is returned in this case.
    * 
    * <p>
-   * Any non-ACK requests received for this user agent are collected while waiting for an ACK
-   * message and can be seen by calling getAllReceivedRequests() once this method returns.
+   * Only an ACK on this call's Call-ID is taken. Other requests received for this user agent are
+   * left for the other SipCalls of the SipPhone, or for a later waitForXxx() call. They are still
+   * collected while waiting and can be seen by calling getAllReceivedRequests() once this method
+   * returns.
    * 
    * <p>
    * Regardless of the outcome, incoming requests associated with this User Agent will continue to
@@ -476,9 +498,10 @@ public class SipCall implements SipActionObject, MessageListener {
   public boolean waitForAck(long timeout) {
     initErrorInfo();
 
-    RequestEvent event = parent.waitRequest(timeout);
+    SipRequest received = parent.waitRequest(
+        RequestMailbox.Query.of(currentCallId(), Request.ACK), null, timeout, recorder);
 
-    if (event == null) {
+    if (received == null) {
       setReturnCode(parent.getReturnCode());
       setErrorMessage(parent.getErrorMessage());
       setException(parent.getException());
@@ -486,24 +509,8 @@ public class SipCall implements SipActionObject, MessageListener {
       return false;
     }
 
+    RequestEvent event = received.getRequestEvent();
     Request request = event.getRequest();
-    receivedRequests.add(new SipRequest(event));
-
-    while (!request.getMethod().equals(Request.ACK)) {
-      event = parent.waitRequest(timeout); // TODO, adjust
-
-      if (event == null) {
-        setReturnCode(parent.getReturnCode());
-        setErrorMessage(parent.getErrorMessage());
-        setException(parent.getException());
-
-        return false;
-      }
-
-      request = event.getRequest();
-      receivedRequests.add(new SipRequest(event));
-      continue;
-    }
 
     ServerTransaction tr = event.getServerTransaction();
 
@@ -535,8 +542,10 @@ public class SipCall implements SipActionObject, MessageListener {
    * returned in this case. 3) An error occurs. false is returned in this case.
    * 
    * <p>
-   * Any non-MESSAGE requests received for this user agent are collected while waiting for an
-   * MESSAGE message and can be seen by calling getAllReceivedRequests() once this method returns.
+   * Only a MESSAGE is taken: one on this call's Call-ID if the call has a dialog, otherwise any
+   * MESSAGE. Other requests received for this user agent are left for the other SipCalls of the
+   * SipPhone, or for a later waitForXxx() call. They are still collected while waiting and can be
+   * seen by calling getAllReceivedRequests() once this method returns.
    * 
    * <p>
    * Regardless of the outcome, incoming requests associated with this User Agent will continue to
@@ -557,9 +566,12 @@ public class SipCall implements SipActionObject, MessageListener {
   public boolean waitForMessage(long timeout) {
     initErrorInfo();
 
-    RequestEvent event = parent.waitRequest(timeout);
+    // a MESSAGE outside of a dialog comes with a Call-ID of its own
+    SipRequest received = parent.waitRequest(
+        RequestMailbox.Query.of(dialog == null ? null : currentCallId(), Request.MESSAGE), null,
+        timeout, recorder);
 
-    if (event == null) {
+    if (received == null) {
       setReturnCode(parent.getReturnCode());
       setErrorMessage(parent.getErrorMessage());
       setException(parent.getException());
@@ -567,42 +579,14 @@ public class SipCall implements SipActionObject, MessageListener {
       return false;
     }
 
+    RequestEvent event = received.getRequestEvent();
     Request request = event.getRequest();
-    receivedRequests.add(new SipRequest(event));
-
-    if (request.getMethod().equals(Request.MESSAGE)) {
-      setLastReceivedMessageRequest(request);
-      // Try to get the content of the message, if there is no content ignore it
-      try {
-        allReceivedMessagesContent.add(new String(request.getRawContent()));
-      } catch (Exception e) {
-      }
-    }
-
-    while (!request.getMethod().equals(Request.MESSAGE)) {
-      event = parent.waitRequest(timeout); // TODO, adjust
-
-      if (event == null) {
-        setReturnCode(parent.getReturnCode());
-        setErrorMessage(parent.getErrorMessage());
-        setException(parent.getException());
-
-        return false;
-      }
-
-      request = event.getRequest();
-      receivedRequests.add(new SipRequest(event));
 
-      if (request.getMethod().equals(Request.MESSAGE)) {
-        setLastReceivedMessageRequest(request);
-        // Try to get the content of the message, if there is no content ignore it
-        try {
-          allReceivedMessagesContent.add(new String(request.getRawContent()));
-        } catch (Exception e) {
-        }
-      }
-
-      continue;
+    setLastReceivedMessageRequest(request);
+    // Try to get the content of the message, if there is no content ignore it
+    try {
+      allReceivedMessagesContent.add(new String(request.getRawContent()));
+    } catch (Exception e) {
     }
 
     ServerTransaction tr = event.getServerTransaction();
@@ -625,6 +609,46 @@ public class SipCall implements SipActionObject, MessageListener {
     return true;
   }
 
+  /**
+   * The waitFor() method waits for a request on this call (that is, with this SipCall's Call-ID)
+   * that satisfies the given predicate. Call this method after calling a listenForXxx() method.
+   * Requests not satisfying the predicate are left for the other SipCalls of the SipPhone or for a
+   * later waitForXxx() call, and don't extend the time spent waiting - the timeout is converted to
+   * a single deadline when this method is called. Before this SipCall has sent or received its
+   * first INVITE, when it has no Call-ID yet, any request received for this user agent is
+   * considered.
+   * 
+   * <p>
+   * The received request is added to those returned by getAllReceivedRequests(), as are the
+   * requests passed over while waiting. No response is sent for it; use getRequestEvent() on the
+   * returned object to get at its server transaction. The predicate must not block.
+   * 
+   * @param filter Selects the request of interest, ie {@code r -> r.isBye()}.
+   * @param timeout The maximum amount of time to wait. Use Duration.ZERO to wait indefinitely.
+   * @return The matching request or null in the case of wait timeout or error; call
+   *         getReturnCode() and/or getErrorMessage() and, if applicable, getException() for
+   *         further diagnostics.
+   * @throws IllegalArgumentException if the timeout is negative.
+   */
+  public SipRequest waitFor(Predicate<SipRequest> filter, Duration timeout) {
+    initErrorInfo();
+
+    String current = currentCallId();
+    SipRequest received = parent.waitRequest(
+        current == null ? RequestMailbox.Query.any() : RequestMailbox.Query.call(current), filter,
+        SipSession.toMillis(timeout), recorder);
+
+    if (received == null) {
+      setReturnCode(parent.getReturnCode());
+      setErrorMessage(parent.getErrorMessage());
+      setException(parent.getException());
+
+      return null;
+    }
+
+    return received;
+  }
+
   /**
    * This method sends a basic response to a previously received MESSAGE request. The response is
    * constructed based on the parameters passed in. Call this method after waitForMessage() returns
@@ -821,7 +845,7 @@ public class SipCall implements SipActionObject, MessageListener {
       // Check if we are in a dialog
       if (dialog == null) {
         // create a new Call-ID
-        callId = parent.getNewCallIdHeader();
+        replaceCallId(parent.getNewCallIdHeader());
         cseq = hdr_factory.createCSeqHeader(cseq == null ? 1 : (cseq.getSeqNumber() + 1), method);
         myTag = parent.generateNewTag();
 
@@ -834,7 +858,8 @@ public class SipCall implements SipActionObject, MessageListener {
         MaxForwardsHeader max_forwards =
             hdr_factory.createMaxForwardsHeader(SipPhone.MAX_FORWARDS_DEFAULT);
 
-        List<ViaHeader> via_headers = parent.getViaHeaders();
+        transport = parent.selectTransport(routeTransport(viaNonProxyRoute));
+        List<ViaHeader> via_headers = parent.getViaHeaders(transport);
 
         msg = parent.getMessageFactory().createRequest(request_uri, method, callId, cseq,
             from_header, to_header, via_headers, max_forwards);
@@ -869,12 +894,8 @@ public class SipCall implements SipActionObject, MessageListener {
       }
 
       // send the message
-      synchronized (this) // needed for asynchronous response -
-      // processEvent()
-      {
-        transaction = parent.sendRequestWithTransaction(msg, viaProxy, dialog, null,
-            additionalHeaders, replaceHeaders, body);
-      }
+      transaction = parent.sendRequestWithTransaction(msg, viaProxy, dialog, null,
+          additionalHeaders, replaceHeaders, body);
 
       if (transaction != null) {
         SipStack.dumpMessage("MESSAGE after sending out through stack",
@@ -1016,11 +1037,12 @@ public class SipCall implements SipActionObject, MessageListener {
     }
 
     if (parent.sendReply(transaction, statusCode, reasonPhrase, myTag,
-        (Address) parent.getContactInfo().getContactHeader().getAddress().clone(), expires,
+        parent.getContactHeader(transport).getAddress(), expires,
         additionalHeaders, replaceHeaders, body) != null) {
       dialog = transaction.getServerTransaction().getDialog();
       if (statusCode == SipResponse.OK) {
-        callAnswered = true;
+        setCallAnswered(true);
+        answered.complete(this);
       }
 
       return true;
@@ -1083,6 +1105,139 @@ public class SipCall implements SipActionObject, MessageListener {
     }
   }
 
+  /**
+   * This method is the non-blocking counterpart of waitForIncomingCall() followed by
+   * sendIncomingCallResponse(SipResponse.OK, null, -1). It returns immediately; the next incoming
+   * INVITE addressed to the parent SipPhone is answered with an OK as soon as it arrives, and the
+   * returned future completes with the received INVITE. The calling program doesn't need to call
+   * listenForIncomingCall() beforehand. Cancelling the returned future before an INVITE arrives
+   * stops listening for it.
+   * 
+   * @return a future for the INVITE that was answered.
+   */
+  public CompletableFuture<SipRequest> answerAsync() {
+    return answerAsync(SipResponse.OK, null, -1);
+  }
+
+  /**
+   * Same as answerAsync() except that the response to send to the INVITE is given by the caller.
+   * The returned future completes once that response has been sent; onAnswered() completes as well
+   * if the status code is OK.
+   * 
+   * @param statusCode The status code of the response to send (may use SipResponse constants).
+   * @param reasonPhrase If not null, the reason phrase to send.
+   * @param expires If not -1, an expiration time is added to the response. This parameter indicates
+   *        the duration the message is valid, in seconds.
+   * @return a future for the INVITE that was responded to.
+   */
+  public CompletableFuture<SipRequest> answerAsync(int statusCode, String reasonPhrase,
+      int expires) {
+    initErrorInfo();
+
+    receivedRequests.clear();
+    receivedResponses.clear();
+    transaction = null;
+    dialog = null;
+    myTag = null;
+    transport = null;
+    setCallAnswered(false);
+    answered = new CompletableFuture<>();
+
+    IncomingCallListener listener =
+        new IncomingCallListener(statusCode, reasonPhrase, expires);
+    parent.addRequestListener(Request.INVITE, listener);
+    listener.future.whenComplete((request, ex) -> {
+      if (listener.future.isCancelled()) {
+        parent.removeRequestListener(Request.INVITE, listener);
+      }
+    });
+
+    return listener.future;
+  }
+
+  // the final response disconnectAsync() waits for, told apart from the responses to this call's
+  // other requests by the client transaction of the BYE
+  private static final class PendingResponse {
+
+    private final CompletableFuture<SipResponse> future = new CompletableFuture<>();
+
+    // null until the BYE is sent, and again while it is resent with authorization
+    private volatile ClientTransaction clientTransaction;
+
+    private boolean isFor(ClientTransaction ct) {
+      return ct != null && ct == clientTransaction;
+    }
+  }
+
+  private class IncomingCallListener implements RequestListener {
+
+    private final CompletableFuture<SipRequest> future = new CompletableFuture<>();
+
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private final int statusCode;
+
+    private final String reasonPhrase;
+
+    private final int expires;
+
+    private IncomingCallListener(int statusCode, String reasonPhrase, int expires) {
+      this.statusCode = statusCode;
+      this.reasonPhrase = reasonPhrase;
+      this.expires = expires;
+    }
+
+    @Override
+    public void processEvent(EventObject event) {
+      RequestEvent requestEvent = (RequestEvent) event;
+      Request request = requestEvent.getRequest();
+
+      if (((ToHeader) request.getHeader(ToHeader.NAME)).getTag() != null) {
+        return; // re-INVITE, not for us
+      }
+
+      if (future.isDone() || !claimed.compareAndSet(false, true)) {
+        return;
+      }
+
+      ServerTransaction tr = requestEvent.getServerTransaction();
+      if (tr == null) {
+        try {
+          tr = parent.getParent().getSipProvider().getNewServerTransaction(request);
+        } catch (Exception ex) {
+          // already taken by someone else, keep waiting for the next one
+          log.trace("INVITE already has a server transaction, ignoring it: {}", ex.getMessage());
+          claimed.set(false);
+          return;
+        }
+      }
+
+      parent.removeRequestListener(Request.INVITE, this);
+      parent.consumeRequest(requestEvent);
+
+      SipRequest sipRequest = new SipRequest(requestEvent);
+      receivedRequests.add(sipRequest);
+
+      transaction = new SipTransaction();
+      transaction.setServerTransaction(tr);
+
+      replaceCallId((CallIdHeader) request.getHeader(CallIdHeader.NAME));
+      parent.enableAuthorization(callId.getCallId());
+
+      cseq = (CSeqHeader) request.getHeader(CSeqHeader.NAME);
+
+      // answer on the transport the INVITE came in on, as waitForIncomingCall() does
+      ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
+      transport = parent.selectTransport(via.getTransport());
+
+      if (sendIncomingCallResponse(statusCode, reasonPhrase, expires)) {
+        future.complete(sipRequest);
+      } else {
+        future.completeExceptionally(new SipException(getErrorMessage(), getException()));
+      }
+    }
+  }
+
   /**
    * The waitForReinvite() method waits for a RE-INVITE request addressed to this user agent to be
    * received from the network. Call this method after calling the listenForReinvite() method.
@@ -1097,8 +1252,10 @@ public class SipCall implements SipActionObject, MessageListener {
    * case. 3) An error occurs. Null is returned in this case.
    * 
    * <p>
-   * Any non-INVITE requests received for this user agent are collected while waiting for the
-   * RE-INVITE message and can be seen by calling getAllReceivedRequests() once this method returns.
+   * Only an INVITE on this call's Call-ID is taken. Other requests received for this user agent are
+   * left for the other SipCalls of the SipPhone, or for a later waitForXxx() call. They are still
+   * collected while waiting and can be seen by calling getAllReceivedRequests() once this method
+   * returns.
    * 
    * @param timeout The maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
    *        indefinitely.
@@ -1119,9 +1276,10 @@ public class SipCall implements SipActionObject, MessageListener {
       return null;
     }
 
-    RequestEvent event = parent.waitRequest(timeout);
+    SipRequest received = parent.waitRequest(
+        RequestMailbox.Query.of(currentCallId(), Request.INVITE), null, timeout, recorder);
 
-    if (event == null) {
+    if (received == null) {
       setReturnCode(parent.getReturnCode());
       setErrorMessage(parent.getErrorMessage());
       setException(parent.getException());
@@ -1129,24 +1287,8 @@ public class SipCall implements SipActionObject, MessageListener {
       return null;
     }
 
+    RequestEvent event = received.getRequestEvent();
     Request request = event.getRequest();
-    receivedRequests.add(new SipRequest(event));
-
-    while (!request.getMethod().equals(Request.INVITE)) {
-      event = parent.waitRequest(timeout); // TODO, adjust timeout
-
-      if (event == null) {
-        setReturnCode(parent.getReturnCode());
-        setErrorMessage(parent.getErrorMessage());
-        setException(parent.getException());
-
-        return null;
-      }
-
-      request = event.getRequest();
-      receivedRequests.add(new SipRequest(event));
-      continue;
-    }
 
     SipStack.dumpMessage("INVITE after received by stack", request);
 
@@ -1281,7 +1423,7 @@ public class SipCall implements SipActionObject, MessageListener {
     try {
       ContactHeader contact_hdr;
       if (newContact == null) {
-        contact_hdr = (ContactHeader) parent.getContactInfo().getContactHeader().clone();
+        contact_hdr = parent.getContactHeader(transport);
       } else {
         contact_hdr = parent.updateContactInfo(newContact, displayName);
       }
@@ -1438,6 +1580,92 @@ public class SipCall implements SipActionObject, MessageListener {
     return false;
   }
 
+  /**
+   * This method is the non-blocking counterpart of waitForDisconnect() followed by
+   * respondToDisconnect(). It returns immediately; the BYE received for the current call is
+   * answered with an OK as soon as it arrives, and the returned future completes with the received
+   * BYE. The calling program doesn't need to call listenForDisconnect() beforehand. Cancelling the
+   * returned future before the BYE arrives stops listening for it.
+   * 
+   * @return a future for the BYE that was answered. It completes exceptionally with a SipException
+   *         if there is no current call or the OK can't be sent.
+   */
+  public CompletableFuture<SipRequest> respondToDisconnectAsync() {
+    initErrorInfo();
+
+    String currentId = currentCallId();
+    if (currentId == null) {
+      setReturnCode(SipSession.INVALID_OPERATION);
+      setErrorMessage(SipSession.statusCodeDescription.get(returnCode)
+          + " - there's no call to be disconnected");
+      return CompletableFuture.failedFuture(new SipException(getErrorMessage()));
+    }
+
+    DisconnectListener listener = new DisconnectListener(currentId);
+    parent.addRequestListener(Request.BYE, listener);
+    listener.future.whenComplete((request, ex) -> {
+      if (listener.future.isCancelled()) {
+        parent.removeRequestListener(Request.BYE, listener);
+      }
+    });
+
+    return listener.future;
+  }
+
+  private class DisconnectListener implements RequestListener {
+
+    private final CompletableFuture<SipRequest> future = new CompletableFuture<>();
+
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private final String callId;
+
+    private DisconnectListener(String callId) {
+      this.callId = callId;
+    }
+
+    @Override
+    public void processEvent(EventObject event) {
+      RequestEvent requestEvent = (RequestEvent) event;
+      Request request = requestEvent.getRequest();
+
+      if (!callId.equals(((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId())) {
+        return; // another call's
+      }
+
+      if (future.isDone() || !claimed.compareAndSet(false, true)) {
+        return;
+      }
+
+      parent.removeRequestListener(Request.BYE, this);
+      parent.consumeRequest(requestEvent);
+
+      ServerTransaction tr = requestEvent.getServerTransaction();
+      if (tr == null) {
+        try {
+          tr = parent.getParent().getSipProvider().getNewServerTransaction(request);
+        } catch (Exception ex) {
+          future.completeExceptionally(ex);
+          return;
+        }
+      }
+
+      SipRequest sipRequest = new SipRequest(requestEvent);
+      receivedRequests.add(sipRequest);
+
+      dialog = tr.getDialog();
+
+      transaction = new SipTransaction();
+      transaction.setServerTransaction(tr);
+
+      if (respondToDisconnect()) {
+        future.complete(sipRequest);
+      } else {
+        future.completeExceptionally(new SipException(getErrorMessage(), getException()));
+      }
+    }
+  }
+
   /**
    * This basic method is used to initiate an outgoing call. That is, it applies to the scenario
    * where a UAC is originating a call to the network. There are two ways to make an outgoing call:
@@ -1554,13 +1782,22 @@ public class SipCall implements SipActionObject, MessageListener {
   protected boolean initiateOutgoingCall(String fromUri, String toUri, String viaNonProxyRoute,
       MessageListener respListener, ArrayList<Header> additionalHeaders,
       ArrayList<Header> replaceHeaders, String body) {
+    return initiateOutgoingCall(fromUri, toUri, viaNonProxyRoute, respListener, additionalHeaders,
+        replaceHeaders, body, false);
+  }
+
+  private boolean initiateOutgoingCall(String fromUri, String toUri, String viaNonProxyRoute,
+      MessageListener respListener, ArrayList<Header> additionalHeaders,
+      ArrayList<Header> replaceHeaders, String body, boolean ackOnAnswer) {
     initErrorInfo();
 
     transaction = null;
     dialog = null;
     receivedResponses.clear();
     receivedRequests.clear();
-    callAnswered = false;
+    setCallAnswered(false);
+    answered = new CompletableFuture<>();
+    autoAck = ackOnAnswer;
 
     toUri = toUri.trim();
     if (fromUri == null) {
@@ -1579,7 +1816,7 @@ public class SipCall implements SipActionObject, MessageListener {
       }
 
       // create a new Call-ID
-      callId = parent.getNewCallIdHeader();
+      replaceCallId(parent.getNewCallIdHeader());
       parent.enableAuthorization(callId.getCallId());
 
       String method = Request.INVITE;
@@ -1605,12 +1842,13 @@ public class SipCall implements SipActionObject, MessageListener {
       MaxForwardsHeader max_forwards =
           hdr_factory.createMaxForwardsHeader(SipPhone.MAX_FORWARDS_DEFAULT);
 
-      List<ViaHeader> via_headers = parent.getViaHeaders();
+      transport = parent.selectTransport(routeTransport(viaNonProxyRoute));
+      List<ViaHeader> via_headers = parent.getViaHeaders(transport);
 
       Request msg = parent.getMessageFactory().createRequest(request_uri, method, callId, cseq,
           from_header, to_header, via_headers, max_forwards);
 
-      msg.addHeader((ContactHeader) parent.getContactInfo().getContactHeader().clone());
+      msg.addHeader(parent.getContactHeader(transport));
 
       // create and add the RouteHeader if needed
       boolean viaProxy = true;
@@ -1629,12 +1867,9 @@ public class SipCall implements SipActionObject, MessageListener {
       }
 
       // send the message
-      synchronized (this) // needed for asynchronous response -
-      // processEvent()
-      {
-        transaction = parent.sendRequestWithTransaction(msg, viaProxy, null, respListener,
-            additionalHeaders, replaceHeaders, body);
-      }
+      // publish the transaction before sending, for asynchronous response - processEvent()
+      transaction = parent.sendRequestWithTransaction(msg, viaProxy, null, respListener,
+          additionalHeaders, replaceHeaders, body, this::setTransaction);
 
       if (transaction != null) {
         SipStack.dumpMessage("INVITE after sending out through stack",
@@ -1671,6 +1906,50 @@ public class SipCall implements SipActionObject, MessageListener {
     return initiateOutgoingCall(null, toUri, viaNonProxyRoute);
   }
 
+  /**
+   * This method is the non-blocking counterpart of initiateOutgoingCall(). It sends the INVITE and
+   * returns a future that completes with this SipCall once the call has been answered (OK
+   * received). The future completes exceptionally with a SipException if the call is rejected or
+   * can't be sent, or with a TimeoutException if the transaction times out. Authentication
+   * challenges are handled automatically using the credentials of the parent SipPhone.
+   * 
+   * <p>
+   * The responses received along the way are collected and available via getAllReceivedResponses()
+   * as usual.
+   * 
+   * @param fromUri The URI (ie, sip:bob@nist.gov) of the caller, or null to use this SipCall's
+   *        address.
+   * @param toUri The URI (ie, sip:bob@nist.gov) to which the INVITE will be sent.
+   * @param viaNonProxyRoute Indicates whether to route the INVITE via Proxy or some other route. If
+   *        null, route the call to the Proxy that was specified when the SipPhone object was
+   *        created (SipStack.createSipPhone()). Else route it to the given node, which is specified
+   *        as "hostaddress:port;parms/transport" i.e. 129.1.22.333:5060;lr/UDP.
+   * @param autoAck If true, the ACK is sent as soon as the OK is received and before the returned
+   *        future completes. If false, the calling program must send it with sendInviteOkAck().
+   * @return a future for the answered call.
+   */
+  public CompletableFuture<SipCall> initiateOutgoingCallAsync(String fromUri, String toUri,
+      String viaNonProxyRoute, boolean autoAck) {
+    if (!initiateOutgoingCall(fromUri, toUri, viaNonProxyRoute, this, null, null, null,
+        autoAck)) {
+      return CompletableFuture.failedFuture(new SipException(getErrorMessage(), getException()));
+    }
+
+    return answered;
+  }
+
+  /**
+   * Same as initiateOutgoingCallAsync(null, toUri, viaNonProxyRoute, true).
+   * 
+   * @param toUri The URI (ie, sip:bob@nist.gov) to which the INVITE will be sent.
+   * @param viaNonProxyRoute Indicates whether to route the INVITE via Proxy or some other route.
+   * @return a future for the answered call.
+   */
+  public CompletableFuture<SipCall> initiateOutgoingCallAsync(String toUri,
+      String viaNonProxyRoute) {
+    return initiateOutgoingCallAsync(null, toUri, viaNonProxyRoute, true);
+  }
+
   /**
    * This method is used to re-initiate an outgoing call. That is, it applies to the scenario where
    * a UAC is re-originating a call to the network because a previous origination attempt failed. An
@@ -1710,11 +1989,9 @@ public class SipCall implements SipActionObject, MessageListener {
       msg.setHeader(cseq);
 
       // send the message
-      synchronized (this) // needed for asynchronous response -
-      // processEvent()
-      {
-        transaction = parent.sendRequestWithTransaction(msg, false, null, respListener);
-      }
+      // publish the transaction before sending, for asynchronous response - processEvent()
+      transaction = parent.sendRequestWithTransaction(msg, false, null, respListener, null, null,
+          null, this::setTransaction);
 
       if (transaction != null) {
         return true;
@@ -1812,20 +2089,13 @@ public class SipCall implements SipActionObject, MessageListener {
       if (newContact != null) {
         req.setHeader(parent.updateContactInfo(newContact, displayName));
       } else {
-        req.setHeader((ContactHeader) parent.getContactInfo().getContactHeader().clone());
+        req.setHeader(parent.getContactHeader(transport));
       }
 
       SipStack.dumpMessage("We have created this RE-INVITE", req);
 
-      SipTransaction siptrans;
-      synchronized (this) // needed for asynchronous response -
-      // processEvent(), although we're not using that here now.
-      // Change there would be needed because that uses attribute
-      // 'transaction'
-      {
-        siptrans = parent.sendRequestWithTransaction(req, false, dialog, additionalHeaders,
-            replaceHeaders, body);
-      }
+      SipTransaction siptrans = parent.sendRequestWithTransaction(req, false, dialog, additionalHeaders,
+          replaceHeaders, body);
 
       if (siptrans != null) {
         cseq = (CSeqHeader) req.getHeader(CSeqHeader.NAME);
@@ -1949,8 +2219,7 @@ public class SipCall implements SipActionObject, MessageListener {
     }
 
     try {
-      Thread.sleep(100); // TODO - investigate more. why needed? if so,
-      // use OK timestamp here
+      awaitDialogConfirmed();
 
       Request ack = dialog.createAck(
           ((CSeqHeader) this.getLastReceivedResponse().getMessage().getHeader(CSeqHeader.NAME))
@@ -1971,6 +2240,47 @@ public class SipCall implements SipActionObject, MessageListener {
     }
   }
 
+  /*
+   * The ACK can only be created once the stack has processed the 2xx and confirmed the dialog. The
+   * OK reaches this SipCall after the stack is done with it so normally there's nothing to wait
+   * for, but when the OK is still being processed wait for it to be handed to us (see
+   * processInviteResponse() and waitOutgoingCallResponse()) instead of sleeping a fixed time.
+   */
+  private void awaitDialogConfirmed() throws InterruptedException {
+    if (DialogState.CONFIRMED.equals(dialog.getState())) {
+      return;
+    }
+
+    try {
+      answered.get(ACK_READY_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException ex) {
+      // let createAck() report why the ACK can't be sent
+      log.trace("Dialog not confirmed before sending the ACK: {}", ex.toString());
+    }
+  }
+
+  private boolean sendAck(Response okResponse, ArrayList<Header> additionalHeaders,
+      ArrayList<Header> replaceHeaders, String body) {
+    try {
+      Request ack =
+          dialog.createAck(((CSeqHeader) okResponse.getHeader(CSeqHeader.NAME)).getSeqNumber());
+      parent.addAuthorizations(callId.getCallId(), ack);
+      parent.putElements(ack, additionalHeaders, replaceHeaders, body);
+
+      SipStack.dumpMessage("Sending the ACK", ack);
+      dialog.sendAck(ack);
+
+      return true;
+    } catch (Exception ex) {
+      setReturnCode(SipSession.EXCEPTION_ENCOUNTERED);
+      setException(ex);
+      setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
+      log.error(getErrorMessage());
+
+      return false;
+    }
+  }
+
   /**
    * This method is the same as the basic sendInviteOkAck() method except that it allows the caller
    * to specify a message body and/or additional message headers to add to or replace in the
@@ -2065,7 +2375,11 @@ public class SipCall implements SipActionObject, MessageListener {
     }
 
     try {
-      Thread.sleep(10); // TODO - needed here? see sendInviteOkAck().
+      // the dialog is confirmed already, it's the OK to the RE-INVITE the stack must be done with
+      if (!siptrans.awaitFinalResponse(ACK_READY_TIMEOUT)) {
+        // let createAck() report why the ACK can't be sent
+        log.trace("No final response to the RE-INVITE before sending the ACK");
+      }
 
       Request ack = dialog.createAck(
           ((CSeqHeader) this.getLastReceivedResponse().getMessage().getHeader(CSeqHeader.NAME))
@@ -2206,12 +2520,13 @@ public class SipCall implements SipActionObject, MessageListener {
     log.trace("Outgoing call response received: {}", resp.toString());
 
     setReturnCode(resp.getStatusCode());
+    dialog = transaction.getClientTransaction().getDialog();
+
     if (returnCode == SipResponse.OK) {
-      callAnswered = true;
+      setCallAnswered(true);
+      answered.complete(this);
     }
 
-    dialog = transaction.getClientTransaction().getDialog();
-
     /*
      * Note, on future requests: add RouteHeaders per dialog.getRouteSet() (RFC: The calling user
      * agent client copies the RecordRouteHeaders into RouteHeaders of subsequent Requests within
@@ -2339,12 +2654,9 @@ public class SipCall implements SipActionObject, MessageListener {
       Request bye = dialog.createRequest(Request.BYE);
       parent.addAuthorizations(callId.getCallId(), bye);
 
-      synchronized (this) {
-        // needed for asynchronous response -
-        // processEvent()
-        transaction = parent.sendRequestWithTransaction(bye, false, dialog, this, additionalHeaders,
-            replaceHeaders, body);
-      }
+      // publish the transaction before sending, for asynchronous response - processEvent()
+      transaction = parent.sendRequestWithTransaction(bye, false, dialog, this, additionalHeaders,
+          replaceHeaders, body, this::setTransaction);
 
       if (transaction != null) {
         return true;
@@ -2413,6 +2725,26 @@ public class SipCall implements SipActionObject, MessageListener {
     }
   }
 
+  /**
+   * This method is the non-blocking counterpart of disconnect(). It sends a BYE and returns a future
+   * that completes with the final response received for it. Authentication challenges are handled
+   * automatically. The future completes exceptionally with a SipException if the BYE can't be sent
+   * or authorized, or with a TimeoutException if the transaction times out.
+   * 
+   * @return a future for the final response to the BYE.
+   */
+  public CompletableFuture<SipResponse> disconnectAsync() {
+    PendingResponse pending = new PendingResponse();
+    pendingFinalResponse = pending;
+
+    if (!disconnect()) {
+      pendingFinalResponse = null;
+      pending.future.completeExceptionally(new SipException(getErrorMessage(), getException()));
+    }
+
+    return pending.future;
+  }
+
   /**
    * This method returns the SipPhone object associated with this call.
    * 
@@ -2543,13 +2875,7 @@ public class SipCall implements SipActionObject, MessageListener {
    * 
    */
   public SipResponse getLastReceivedResponse() {
-    synchronized (receivedResponses) {
-      if (receivedResponses.isEmpty()) {
-        return null;
-      }
-
-      return receivedResponses.get(receivedResponses.size() - 1);
-    }
+    return receivedResponses.getLast();
   }
 
   /**
@@ -2563,13 +2889,7 @@ public class SipCall implements SipActionObject, MessageListener {
    * 
    */
   public SipRequest getLastReceivedRequest() {
-    synchronized (receivedRequests) {
-      if (receivedRequests.isEmpty()) {
-        return null;
-      }
-
-      return receivedRequests.get(receivedRequests.size() - 1);
-    }
+    return receivedRequests.getLast();
   }
 
   /**
@@ -2608,6 +2928,39 @@ public class SipCall implements SipActionObject, MessageListener {
     return allReceivedMessagesContent;
   }
 
+  /**
+   * Sets how much of the received message history this call keeps: the requests and responses
+   * returned by getAllReceivedRequests() and getAllReceivedResponses() and the MESSAGE contents
+   * returned by getAllReceivedMessagesContent(). The initial policy is the parent SipPhone's
+   * policy at the time this SipCall was created. If the new policy keeps fewer messages than are
+   * currently held, the oldest ones are discarded.
+   * 
+   * <p>
+   * getLastReceivedRequest() and getLastReceivedResponse() work the same under any policy. Methods
+   * that search the history, such as findMostRecentResponse(), only see the messages retained.
+   * 
+   * @param policy The history policy, HistoryPolicy.FULL by default.
+   */
+  public void setHistoryPolicy(HistoryPolicy policy) {
+    if (policy == null) {
+      throw new IllegalArgumentException("policy must not be null");
+    }
+
+    receivedResponses.setPolicy(policy);
+    receivedRequests.setPolicy(policy);
+    allReceivedMessagesContent.setPolicy(policy);
+  }
+
+  /**
+   * Gets the history policy of this call.
+   * 
+   * @return The history policy.
+   * @see #setHistoryPolicy(HistoryPolicy)
+   */
+  public HistoryPolicy getHistoryPolicy() {
+    return receivedResponses.getPolicy();
+  }
+
   /**
    * This method returns the last MESSAGE request received on this call.
    * 
@@ -2666,8 +3019,7 @@ public class SipCall implements SipActionObject, MessageListener {
   // (nonblocking) response
   // handling
   {
-    synchronized (this) {
-    } // wail til message sending has finished (transaction attribute set)
+    // the transaction attribute was published before the request was sent (see setTransaction())
 
     if (event instanceof ResponseEvent) {
       processResponse((ResponseEvent) event);
@@ -2695,11 +3047,19 @@ public class SipCall implements SipActionObject, MessageListener {
 
     transaction = null;
     log.error(getErrorMessage());
+
+    TimeoutException ex = new TimeoutException(getErrorMessage());
+    if (timeout.getClientTransaction().getRequest().getMethod().equals(Request.INVITE)) {
+      answered.completeExceptionally(ex);
+    } else {
+      failPendingRequest(timeout.getClientTransaction(), ex);
+    }
   }
 
   private void processResponse(ResponseEvent responseEvent) {
     Response resp = responseEvent.getResponse();
-    receivedResponses.add(new SipResponse(responseEvent));
+    SipResponse response = new SipResponse(responseEvent);
+    receivedResponses.add(response);
     log.trace("Asynchronous response received: {}", resp);
 
     if (transaction == null) {
@@ -2718,13 +3078,14 @@ public class SipCall implements SipActionObject, MessageListener {
     if (req_type.equals(Request.INVITE)) {
       processInviteResponse(resp);
     } else {
-      processNonInviteResponse(resp);
+      processNonInviteResponse(responseEvent.getClientTransaction(), resp, response);
     }
 
     return;
   }
 
-  private void processNonInviteResponse(Response resp) {
+  private void processNonInviteResponse(ClientTransaction ct, Response resp,
+      SipResponse response) {
     if (returnCode / 100 == 1) {
       return; // provisional response, keep waiting
     }
@@ -2733,12 +3094,29 @@ public class SipCall implements SipActionObject, MessageListener {
 
     if ((returnCode == Response.UNAUTHORIZED)
         || (returnCode == Response.PROXY_AUTHENTICATION_REQUIRED)) {
-      authorizeResend(resp, req);
-    } else if (returnCode != SipResponse.OK) {
+      PendingResponse pending = pendingFor(ct);
+      if (pending != null) {
+        pending.clientTransaction = null; // taken up by the resent BYE, see setTransaction()
+      }
+
+      if (!authorizeResend(resp, req) && pending != null) {
+        pendingFinalResponse = null;
+        pending.future.completeExceptionally(new SipException(getErrorMessage(), getException()));
+      }
+      return;
+    }
+
+    if (returnCode != SipResponse.OK) {
       setErrorMessage(SipSession.statusCodeDescription.get(returnCode));
 
       log.error("received response: {}\n for sent request: {}", resp.toString(), req.toString());
     }
+
+    PendingResponse pending = pendingFor(ct);
+    if (pending != null) {
+      pendingFinalResponse = null;
+      pending.future.complete(response);
+    }
   }
 
   private void processInviteResponse(Response resp) {
@@ -2749,7 +3127,13 @@ public class SipCall implements SipActionObject, MessageListener {
     }
 
     if (returnCode == SipResponse.OK) {
-      callAnswered = true;
+      setCallAnswered(true);
+      if (autoAck && !sendAck(resp, null, null, null)) {
+        answered.completeExceptionally(new SipException(getErrorMessage(), getException()));
+        return;
+      }
+
+      answered.complete(this);
     } else if ((returnCode == Response.UNAUTHORIZED)
         || (returnCode == Response.PROXY_AUTHENTICATION_REQUIRED)) {
       Request msg = getSentRequest();
@@ -2761,6 +3145,7 @@ public class SipCall implements SipActionObject, MessageListener {
         setReturnCode(parent.getReturnCode());
         setErrorMessage(parent.getErrorMessage());
         log.error(getErrorMessage());
+        answered.completeExceptionally(new SipException(getErrorMessage(), getException()));
 
         return;
       }
@@ -2768,11 +3153,28 @@ public class SipCall implements SipActionObject, MessageListener {
       if (!reInitiateOutgoingCall(msg, this)) {
         // error info already set
         log.error(getErrorMessage());
+        answered.completeExceptionally(new SipException(getErrorMessage(), getException()));
       }
+    } else {
+      answered.completeExceptionally(
+          new SipException("Call was not answered, got this instead: " + returnCode));
+    }
+  }
+
+  private PendingResponse pendingFor(ClientTransaction ct) {
+    PendingResponse pending = pendingFinalResponse;
+    return pending != null && pending.isFor(ct) ? pending : null;
+  }
+
+  private void failPendingRequest(ClientTransaction ct, Throwable cause) {
+    PendingResponse pending = pendingFor(ct);
+    if (pending != null) {
+      pendingFinalResponse = null;
+      pending.future.completeExceptionally(cause);
     }
   }
 
-  private void authorizeResend(Response resp, Request sentmsg) {
+  private boolean authorizeResend(Response resp, Request sentmsg) {
     // modify the request to include user authorization info and resend
 
     Request msg = parent.processAuthChallenge(resp, sentmsg);
@@ -2781,16 +3183,14 @@ public class SipCall implements SipActionObject, MessageListener {
       setErrorMessage(parent.getErrorMessage());
       log.error(getErrorMessage());
 
-      return;
+      return false;
     }
 
     try {
       // send the message
-      synchronized (this) {
-        // needed for asynchronous response -
-        // processEvent()
-        transaction = parent.sendRequestWithTransaction(msg, false, dialog, this);
-      }
+      // publish the transaction before sending, for asynchronous response - processEvent()
+      transaction = parent.sendRequestWithTransaction(msg, false, dialog, this, null, null, null,
+          this::setTransaction);
 
       if (transaction == null) {
         setReturnCode(parent.getReturnCode());
@@ -2806,7 +3206,50 @@ public class SipCall implements SipActionObject, MessageListener {
 
     if (transaction == null) {
       log.error(getErrorMessage());
+      return false;
     }
+
+    return true;
+  }
+
+  private static String branchIdOf(RequestEvent event) {
+    ServerTransaction tr = event.getServerTransaction();
+    return tr == null ? "" : tr.getBranchId();
+  }
+
+  private String currentCallId() {
+    CallIdHeader current = callId;
+    return current == null ? null : current.getCallId();
+  }
+
+  // a SipCall reused for a new call drops the authorizations cached for the previous one
+  private void replaceCallId(CallIdHeader newCallId) {
+    if (callId != null && !callId.getCallId().equals(newCallId.getCallId())) {
+      parent.clearAuthorizations(callId.getCallId());
+    }
+    callId = newCallId;
+  }
+
+  private void setTransaction(SipTransaction transaction) {
+    this.transaction = transaction;
+
+    PendingResponse pending = pendingFinalResponse;
+    ClientTransaction ct = transaction.getClientTransaction();
+    if (pending != null && pending.clientTransaction == null && ct != null
+        && Request.BYE.equals(ct.getRequest().getMethod())) {
+      pending.clientTransaction = ct;
+    }
+  }
+
+  /**
+   * Returns a future that completes with this SipCall when the current call (incoming or outgoing)
+   * is answered, whether the call is being driven by the blocking or the asynchronous methods. The
+   * future is replaced each time a new call is initiated or awaited on this SipCall.
+   * 
+   * @return a future for the answered call.
+   */
+  public CompletableFuture<SipCall> onAnswered() {
+    return answered;
   }
 
   /**
@@ -2818,6 +3261,15 @@ public class SipCall implements SipActionObject, MessageListener {
     return callAnswered;
   }
 
+  private void setCallAnswered(boolean answered) {
+    callAnswered = answered;
+    parent.getStateMonitor().changed();
+  }
+
+  StateMonitor getStateMonitor() {
+    return parent.getStateMonitor();
+  }
+
   /**
    * Indicates if the current outgoing call has encountered a response timeout or any kind of error.
    * Only applicable for an outgoing call leg.
@@ -3040,15 +3492,8 @@ public class SipCall implements SipActionObject, MessageListener {
 
       SipStack.dumpMessage("We have created this CANCEL", req);
 
-      SipTransaction siptrans;
-      synchronized (this)// needed for asynchronous response -
-      // processEvent(), although we're not using that here now.
-      // Change there would be needed because that uses attribute
-      // 'transaction'
-      {
-        siptrans = parent.sendRequestWithTransaction(req, false, null, additionalHeaders,
-            replaceHeaders, body);
-      }
+      SipTransaction siptrans = parent.sendRequestWithTransaction(req, false, null, additionalHeaders,
+          replaceHeaders, body);
 
       if (siptrans != null) {
         return siptrans;
@@ -3141,8 +3586,10 @@ public class SipCall implements SipActionObject, MessageListener {
    * period specified by the parameter to this method expires. Null is returned in this case. 3) An
    * error occurs. Null is returned in this case.
    * <p>
-   * Any non-CANCEL requests or unmatched CANCEL requests received for this user agent are collected
-   * while waiting for the CANCEL message and can be seen by calling getAllReceivedRequests().
+   * Only a CANCEL for the INVITE transaction of this SipCall is taken. Other requests received for
+   * this user agent, including a CANCEL of some other INVITE transaction, are left for the other
+   * SipCalls of the SipPhone, and don't extend the time spent waiting. They are still collected
+   * while waiting and can be seen by calling getAllReceivedRequests().
    * 
    * @param timeout The maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
    *        indefinitely.
@@ -3165,9 +3612,14 @@ public class SipCall implements SipActionObject, MessageListener {
       return null;
     }
 
-    RequestEvent event = parent.waitRequest(timeout);
+    // a CANCEL for some other INVITE transaction on this Call-ID stays queued
+    String inviteBranchId = transaction.getServerTransaction().getBranchId();
+    SipRequest received = parent.waitRequest(
+        RequestMailbox.Query.of(currentCallId(), Request.CANCEL),
+        cancel -> inviteBranchId.equals(branchIdOf(cancel.getRequestEvent())), timeout,
+        recorder);
 
-    if (event == null) {
+    if (received == null) {
       setReturnCode(parent.getReturnCode());
       setErrorMessage(parent.getErrorMessage());
       setException(parent.getException());
@@ -3175,38 +3627,9 @@ public class SipCall implements SipActionObject, MessageListener {
       return null;
     }
 
+    RequestEvent event = received.getRequestEvent();
     Request request = event.getRequest();
 
-    String branchId = "";
-    if (event.getServerTransaction() != null) {
-      branchId = event.getServerTransaction().getBranchId();
-    }
-
-    receivedRequests.add(new SipRequest(event));
-
-    while ((!request.getMethod().equals(Request.CANCEL))
-        || (!branchId.equals(transaction.getServerTransaction().getBranchId()))) {
-      event = parent.waitRequest(timeout); // TODO, adjust timeout
-
-      if (event == null) {
-        setReturnCode(parent.getReturnCode());
-        setErrorMessage(parent.getErrorMessage());
-        setException(parent.getException());
-
-        return null;
-      }
-
-      request = event.getRequest();
-
-      branchId = "";
-      if (event.getServerTransaction() != null) {
-        branchId = event.getServerTransaction().getBranchId();
-      }
-
-      receivedRequests.add(new SipRequest(event));
-      continue;
-    }
-
     SipStack.dumpMessage("CANCEL after received by stack", request);
 
     ServerTransaction tr = event.getServerTransaction();
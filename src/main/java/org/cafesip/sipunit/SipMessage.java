@@ -19,7 +19,10 @@
 package org.cafesip.sipunit;
 
 import java.util.Collections;
+import java.util.EventObject;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.sip.header.Header;
 import javax.sip.message.Message;
@@ -35,8 +38,55 @@ public class SipMessage {
 
   protected Message message;
 
+  private final long receivedTime;
+
   protected SipMessage(Message message) {
+    this(message, 0);
+  }
+
+  SipMessage(Message message, long receivedTime) {
     this.message = message;
+    this.receivedTime = receivedTime;
+  }
+
+  /*
+   * When each request/response event came in, so that the SipRequest/SipResponse built from it
+   * later on, whichever path it's picked up by, carries the time it came in rather than the time it
+   * was looked at. Keyed by the event - an EventObject has identity equality - and weakly, so an
+   * entry goes away with its event and nothing is stored in the JAIN-SIP message itself.
+   */
+  private static final Map<EventObject, Long> receivedTimes =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  /*
+   * Marks the given event as received now, unless it already is.
+   */
+  static void markReceived(EventObject event) {
+    receivedTimes.putIfAbsent(event, System.nanoTime());
+  }
+
+  static long receivedTimeOf(EventObject event) {
+    Long nanos = receivedTimes.get(event);
+    return nanos == null ? 0 : nanos;
+  }
+
+  // for when the receive time is needed whether or not the event was marked
+  static long receivedTimeOrNow(EventObject event) {
+    long nanos = receivedTimeOf(event);
+    return nanos == 0 ? System.nanoTime() : nanos;
+  }
+
+  /**
+   * Returns when this message was received by the SipStack, as a System.nanoTime() value - only
+   * meaningful compared with other System.nanoTime() values such as the SipTransaction times. The
+   * time is taken when the stack hands the message to SipUnit, before it's routed, queued or
+   * waited for, so it isn't affected by how late the test picks the message up.
+   *
+   * @return the System.nanoTime() the message was received at, or 0 if this message wasn't
+   *         received (it's one being sent) or wasn't created from the event it was received in.
+   */
+  public long getReceivedTime() {
+    return receivedTime;
   }
 
   /**
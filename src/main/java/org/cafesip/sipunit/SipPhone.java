@@ -30,6 +30,9 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sip.Dialog;
 import javax.sip.InvalidArgumentException;
@@ -51,6 +54,8 @@ import javax.sip.header.Header;
 import javax.sip.header.HeaderFactory;
 import javax.sip.header.MaxForwardsHeader;
 import javax.sip.header.ProxyAuthenticateHeader;
+import javax.sip.header.ProxyAuthorizationHeader;
+import javax.sip.header.RouteHeader;
 import javax.sip.header.ToHeader;
 import javax.sip.header.ViaHeader;
 import javax.sip.header.WWWAuthenticateHeader;
@@ -98,8 +103,10 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
 
   private Hashtable<String, Credential> credentials = new Hashtable<>();
 
-  private Hashtable<String, LinkedHashMap<String, AuthorizationHeader>> authorizations =
-      new Hashtable<>();
+  private final AuthorizationCache authorizations = new AuthorizationCache();
+
+  // Call-IDs whose authorizations were cached by authorizeRequest(), see releaseAuthorization()
+  private final Set<String> asyncAuthorizations = ConcurrentHashMap.newKeySet();
 
   private ArrayList<SipCall> callList = new ArrayList<>();
 
@@ -126,21 +133,68 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
 
   private List<ReferSubscriber> refererList = new ArrayList<>();
 
+  private volatile PidfParser pidfParser = new JaxbPidfParser();
+
+  private volatile boolean preemptiveAuthorization;
+
+  private volatile HistoryPolicy historyPolicy = HistoryPolicy.FULL;
+
+  // key = header type, challenging target and realm (see challengeKey()), value = the last
+  // challenge received for that key
+  private final Map<String, RealmChallenge> realmChallenges = new ConcurrentHashMap<>();
+
+  private static class RealmChallenge {
+
+    private final String target;
+
+    private final String realm;
+
+    private final WWWAuthenticateHeader challenge;
+
+    private final String user;
+
+    private final String password;
+
+    // the response to the challenge itself used nonce count 1
+    private final AtomicInteger nonceCount = new AtomicInteger(1);
+
+    private RealmChallenge(String target, String realm, WWWAuthenticateHeader challenge,
+        String user, String password) {
+      this.target = target;
+      this.realm = realm;
+      this.challenge = challenge;
+      this.user = user;
+      this.password = password;
+    }
+
+    private boolean isProxyChallenge() {
+      return challenge instanceof ProxyAuthenticateHeader;
+    }
+
+    private String getAuthorizationHeaderName() {
+      return isProxyChallenge() ? ProxyAuthorizationHeader.NAME : AuthorizationHeader.NAME;
+    }
+  }
+
   protected SipPhone(SipStack stack, String host, String proto, int port, String me, boolean acceptTrafficOnEphemeralPorts)
           throws ParseException, InvalidArgumentException {
     super(stack, host, proto, port, me, acceptTrafficOnEphemeralPorts);
     this.addRequestListener(Request.NOTIFY, this);
   }
 
+  protected SipPhone(SipStack stack, String host, String proto, int port, String me,
+      boolean acceptTrafficOnEphemeralPorts, String transport)
+      throws ParseException, InvalidArgumentException {
+    super(stack, host, proto, port, me, acceptTrafficOnEphemeralPorts, transport);
+    this.addRequestListener(Request.NOTIFY, this);
+  }
+
   protected SipPhone(SipStack stack, String host, String proto, int port, String me)
       throws ParseException, InvalidArgumentException {
     super(stack, host, proto, port, me);
     this.addRequestListener(Request.NOTIFY, this);
   }
 
-  // TODO, all SipPhone creation on a per-SipProvider basis, use its
-  // listening point info for setting up phone
-
   protected SipPhone(SipStack stack, String host, String me)
       throws ParseException, InvalidArgumentException {
     super(stack, host, me);
@@ -282,6 +336,7 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
           contactInfo = new SipContact();
           contactInfo.setContactHeader(hdr);
         }
+        updateRoutes();
       }
 
       List<ViaHeader> via_headers = getViaHeaders();
@@ -301,8 +356,12 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
       // if any exists
 
       Map<String, AuthorizationHeader> auth_list =
-          getAuthorizations().get(myRegistrationId);
-      if (auth_list != null) {
+          authorizations.get(myRegistrationId);
+      if (auth_list == null) {
+        // create the auth list entry for this phone's registrations
+        enableAuthorization(myRegistrationId);
+      } else if (!preemptiveAuthorization) {
+        // else a fresh authorization is added when the request is sent
         List<AuthorizationHeader> auth_headers =
             new ArrayList<>(auth_list.values());
         Iterator<AuthorizationHeader> i = auth_headers.iterator();
@@ -310,9 +369,6 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
           AuthorizationHeader auth = i.next();
           msg.addHeader(auth);
         }
-      } else {
-        // create the auth list entry for this phone's registrations
-        enableAuthorization(myRegistrationId);
       }
 
       // send the REGISTRATION request and get the response
@@ -337,6 +393,7 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
           ContactHeader hdr = (ContactHeader) contacts.next();
           if (hdr.getAddress().getURI().toString().equals(contactInfo.getURI()) == true) {
             contactInfo.setContactHeader(hdr);
+            updateRoutes();
             break;
           }
         }
@@ -586,16 +643,12 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
     // find the list of cached AuthorizationHeaders for this call (Call-ID)
     String call_id = ((CallIdHeader) req_msg.getHeader(CallIdHeader.NAME)).getCallId();
     Map<String, AuthorizationHeader> authorization_list =
-        getAuthorizations().get(call_id);
+        authorizations.get(call_id);
 
     if (authorization_list == null) {
-      // it should have been created already when sent or received 1st
-      // request for the
-      // call ID
-      setReturnCode(ERROR_OF_UNKNOWN_ORIGIN);
-      setErrorMessage(
-          "Invalid Call-ID header in request or the call's authorization list wasn't created");
-      return null;
+      // created when the 1st request for the Call-ID was sent or received, but it may have been
+      // evicted from the cache since - start over with this challenge
+      authorization_list = authorizations.enable(call_id);
     }
 
     Request msg;
@@ -614,9 +667,9 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
     if (req_msg.getContentLength() != null) {
       content_length = req_msg.getContentLength().getContentLength();
     }
-    String req_body = null;
+    byte[] req_body = null;
     if (content_length > 0) {
-      req_body = new String(req_msg.getRawContent());
+      req_body = req_msg.getRawContent();
     }
 
     // loop through the challenges received and create an
@@ -651,8 +704,17 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
         // save the auth header for use later, overwriting old one if
         // there
 
+        // only credentials held by this phone are reused - not ones given for this request only
         if (credential != null) {
           authorization_list.put(realm, authorization);
+
+          // remember the challenge for pre-emptive authorization of later requests to the same
+          // target
+          String target = challengeTarget(req_msg,
+              authenticate_header instanceof ProxyAuthenticateHeader);
+          RealmChallenge realm_challenge =
+              new RealmChallenge(target, realm, authenticate_header, uname, passwd);
+          realmChallenges.put(challengeKey(realm_challenge), realm_challenge);
         }
 
         // Add/replace this authorization header in the message
@@ -708,6 +770,176 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
     return processAuthChallenge(response, req_msg, null, null);
   }
 
+  /*
+   * @see org.cafesip.sipunit.SipSession#authorizeRequest(javax.sip.message.Response,
+   * javax.sip.message.Request)
+   */
+  protected Request authorizeRequest(Response challenge, Request request) {
+    String call_id = ((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId();
+    if (authorizations.get(call_id) == null) {
+      enableAuthorization(call_id);
+      asyncAuthorizations.add(call_id);
+    }
+
+    Request msg = processAuthChallenge(challenge, request);
+    if (msg == null) {
+      return null;
+    }
+
+    try {
+      // bump up the cseq number
+      CSeqHeader cseq = (CSeqHeader) msg.getHeader(CSeqHeader.NAME);
+      cseq.setSeqNumber(cseq.getSeqNumber() + 1);
+    } catch (Exception ex) {
+      setReturnCode(EXCEPTION_ENCOUNTERED);
+      setException(ex);
+      setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
+      return null;
+    }
+
+    return msg;
+  }
+
+  /*
+   * @see org.cafesip.sipunit.SipSession#releaseAuthorization(javax.sip.message.Request)
+   */
+  protected void releaseAuthorization(Request request) {
+    // only the cache entries authorizeRequest() created, those of calls and subscriptions stay
+    String call_id = ((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId();
+    if (asyncAuthorizations.remove(call_id)) {
+      clearAuthorizations(call_id);
+    }
+  }
+
+  /**
+   * Turns pre-emptive authorization on or off for this SipPhone. It is off by default, in which
+   * case a request is sent without credentials and authorized only once it has been challenged
+   * (and subsequent requests with the same Call-ID reuse that authorization).
+   *
+   * <p>
+   * When on, the last challenge received from each realm is remembered along with who issued it:
+   * the next hop (the top Route, else the Request-URI host and port) for a 407 Proxy-Authenticate
+   * challenge, the Request-URI host for a 401 WWW-Authenticate one. Every new request sent by this
+   * SipPhone (other than ACK and CANCEL) going to that same target and not already carrying an
+   * authorization for the realm is authorized up front, reusing the challenge's nonce with an
+   * incremented nonce-count. Requests going elsewhere are sent without these credentials. A server
+   * that accepts nonce reuse then doesn't need to challenge the request at all. If it does
+   * challenge (stale nonce, etc.), the challenge is handled as usual and its nonce is used from
+   * then on.
+   *
+   * @param preemptiveAuthorization true to turn pre-emptive authorization on.
+   */
+  public void setPreemptiveAuthorization(boolean preemptiveAuthorization) {
+    this.preemptiveAuthorization = preemptiveAuthorization;
+  }
+
+  /**
+   * Indicates if pre-emptive authorization is on for this SipPhone.
+   *
+   * @return true if on, false if not.
+   * @see #setPreemptiveAuthorization(boolean)
+   */
+  public boolean isPreemptiveAuthorization() {
+    return preemptiveAuthorization;
+  }
+
+  /**
+   * Sets the history policy given to SipCalls and subscriptions created by this SipPhone from now
+   * on. The policy determines how many received messages each call or subscription keeps for
+   * getAllReceivedRequests(), getAllReceivedResponses() and the like. A long running test can
+   * choose HistoryPolicy.lastN() or HistoryPolicy.NONE to bound the memory retained per call or
+   * subscription; the last received request and response remain available under any policy. An
+   * individual SipCall's policy can be changed with SipCall.setHistoryPolicy().
+   *
+   * @param policy The history policy, HistoryPolicy.FULL by default.
+   */
+  public void setHistoryPolicy(HistoryPolicy policy) {
+    if (policy == null) {
+      throw new IllegalArgumentException("policy must not be null");
+    }
+
+    historyPolicy = policy;
+  }
+
+  /**
+   * Gets the history policy given to new SipCalls and subscriptions.
+   *
+   * @return The history policy.
+   * @see #setHistoryPolicy(HistoryPolicy)
+   */
+  public HistoryPolicy getHistoryPolicy() {
+    return historyPolicy;
+  }
+
+  /*
+   * @see org.cafesip.sipunit.SipSession#addPreemptiveAuthorization(javax.sip.message.Request)
+   */
+  protected void addPreemptiveAuthorization(Request request) {
+    if (!preemptiveAuthorization) {
+      return;
+    }
+
+    String proxy_target = challengeTarget(request, true);
+    String server_target = challengeTarget(request, false);
+
+    for (RealmChallenge realmChallenge : realmChallenges.values()) {
+      String target = realmChallenge.isProxyChallenge() ? proxy_target : server_target;
+      if (!realmChallenge.target.equals(target) || hasAuthorization(request,
+          realmChallenge.getAuthorizationHeaderName(), realmChallenge.realm)) {
+        continue;
+      }
+
+      try {
+        request.addHeader(getAuthorization(request.getMethod(),
+            request.getRequestURI().toString(), request.getRawContent(),
+            realmChallenge.challenge, realmChallenge.user, realmChallenge.password,
+            realmChallenge.nonceCount.incrementAndGet()));
+      } catch (SecurityException ex) {
+        LOG.warn("Couldn't pre-emptively authorize the request for realm {}: {}",
+            realmChallenge.realm, ex.getMessage());
+      }
+    }
+  }
+
+  /*
+   * Who a request's challenge came from: a proxy challenge (407) is issued by the next hop, that is
+   * the top Route if there is one and the Request-URI otherwise, a server challenge (401) by the
+   * Request-URI's host.
+   */
+  private static String challengeTarget(Request request, boolean proxy) {
+    URI uri = request.getRequestURI();
+    if (proxy) {
+      RouteHeader route = (RouteHeader) request.getHeader(RouteHeader.NAME);
+      if (route != null) {
+        uri = route.getAddress().getURI();
+      }
+    }
+
+    if (!uri.isSipURI()) {
+      return uri.toString();
+    }
+
+    SipURI sip_uri = (SipURI) uri;
+    String host = sip_uri.getHost().toLowerCase();
+    return proxy ? host + ':' + sip_uri.getPort() : host;
+  }
+
+  private static String challengeKey(RealmChallenge realmChallenge) {
+    return (realmChallenge.isProxyChallenge() ? Response.PROXY_AUTHENTICATION_REQUIRED
+        : Response.UNAUTHORIZED) + " " + realmChallenge.target + " " + realmChallenge.realm;
+  }
+
+  private static boolean hasAuthorization(Request request, String headerName, String realm) {
+    ListIterator<?> headers = request.getHeaders(headerName);
+    while (headers != null && headers.hasNext()) {
+      if (realm.equals(((AuthorizationHeader) headers.next()).getRealm())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
   /**
    * This method is used to create a SipCall object for handling one leg of a call. That is, it
    * represents an outgoing call leg or an incoming call leg. In a telephone call, there are two
@@ -715,10 +947,11 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
    * telephone network. The incoming call leg is a connection from the telephone network to the
    * phone being called. For a SIP call, the outbound leg is the user agent originating the call and
    * the inbound leg is the user agent receiving the call. The test program can use this method to
-   * create a SipCall object for handling an incoming call leg or an outgoing call leg. Currently,
-   * only one SipCall object is supported per SipPhone. In future, when more than one SipCall per
-   * SipPhone is supported, this method can be called multiple times to create multiple call legs on
-   * the same SipPhone object.
+   * create a SipCall object for handling an incoming call leg or an outgoing call leg. This method
+   * can be called multiple times to create multiple call legs on the same SipPhone object. The
+   * SipCalls of a SipPhone can wait for requests at the same time: each waitForXxx() method only
+   * takes the requests of its own call (or, for waitForIncomingCall(), a new INVITE), so the calls
+   * don't take each other's requests.
    *
    * @return A SipCall object unless an error is encountered.
    */
@@ -733,7 +966,10 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
   }
 
   protected void dropCall(SipCall call) {
-    callList.remove(call);
+    // with its last call gone nobody waits on the request queue any more, stop filling it
+    if (callList.remove(call) && callList.isEmpty()) {
+      unlistenRequestMessage();
+    }
   }
 
   /**
@@ -1078,6 +1314,8 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
     unregister(contactInfo.getContactHeader().getAddress().getURI().clone().toString(), 15000);
 
     super.dispose();
+
+    authorizations.clear();
   }
 
   protected AddressFactory getAddressFactory() {
@@ -1138,6 +1376,7 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
       contactInfo = new SipContact();
       contactInfo.setContactHeader(hdr);
     }
+    updateRoutes();
   }
 
   /**
@@ -1160,22 +1399,38 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
   }
 
   /**
+   * Gets the cache of authorizations this SipPhone has created in response to authentication
+   * challenges, which are reused for subsequent requests with the same Call-ID. The cache can be
+   * resized and its eviction statistics checked through the returned object.
+   *
+   * @return the authorization cache of this SipPhone.
+   */
+  public AuthorizationCache getAuthorizationCache() {
+    return authorizations;
+  }
+
+  /**
+   * Gets the authorizations this SipPhone has cached, keyed by Call-ID then realm. The returned map
+   * is a snapshot: Call-IDs added to or removed from it don't affect the cache.
+   *
    * @return Returns the authorizations.
+   * @deprecated Use getAuthorizationCache(), which bounds the cache and reports its statistics.
    */
+  @Deprecated
   protected Map<String, LinkedHashMap<String, AuthorizationHeader>> getAuthorizations() {
-    return authorizations;
+    return authorizations.asMap();
   }
 
   protected void enableAuthorization(String call_id) {
-    getAuthorizations().put(call_id, new LinkedHashMap<String, AuthorizationHeader>());
+    authorizations.enable(call_id);
   }
 
   protected void clearAuthorizations(String call_id) {
-    getAuthorizations().remove(call_id);
+    authorizations.remove(call_id);
   }
 
   protected void addAuthorizations(String call_id, Request msg) {
-    Map<String, AuthorizationHeader> auth_list = getAuthorizations().get(call_id);
+    Map<String, AuthorizationHeader> auth_list = authorizations.get(call_id);
     if (auth_list != null) {
       List<AuthorizationHeader> auth_headers =
           new ArrayList<>(auth_list.values());
@@ -1422,8 +1677,12 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
       setErrorMessage("Exception: " + e.getClass().getName() + ": " + e.getMessage());
     }
 
+    PresenceSubscriber sub;
     synchronized (buddyList) {
-      buddyList.remove(uri);
+      sub = buddyList.remove(uri);
+    }
+    if (sub != null) {
+      sub.dispose();
     }
     return null;
   }
@@ -1619,6 +1878,30 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
     }
   }
 
+  /**
+   * Selects the parser used to process the PIDF body of NOTIFY messages received for the presence
+   * subscriptions (buddies) of this SipPhone. The default is a JaxbPidfParser. A StaxPidfParser is
+   * considerably faster but doesn't return extension elements.
+   *
+   * @param pidfParser the parser to use from now on.
+   */
+  public void setPidfParser(PidfParser pidfParser) {
+    if (pidfParser == null) {
+      throw new IllegalArgumentException("pidfParser must not be null");
+    }
+    this.pidfParser = pidfParser;
+  }
+
+  /**
+   * Gets the parser used to process the PIDF body of NOTIFY messages received for the presence
+   * subscriptions of this SipPhone.
+   *
+   * @return the current PidfParser.
+   */
+  public PidfParser getPidfParser() {
+    return pidfParser;
+  }
+
   /**
    * Returns a copy of the current buddy list on this SipPhone. These are the buddies that have been
    * added to the buddy list by the test program during the lifetime of this SipPhone object, that
@@ -1938,9 +2221,7 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
     }
 
     if (sub != null) {
-      synchronized (refererList) {
-        refererList.remove(sub);
-      }
+      sub.dispose();
     }
 
     return null;
@@ -2109,9 +2390,7 @@ public class SipPhone extends SipSession implements SipActionObject, RequestList
     }
 
     if (sub != null) {
-      synchronized (refererList) {
-        refererList.remove(sub);
-      }
+      sub.dispose();
     }
 
     return null;
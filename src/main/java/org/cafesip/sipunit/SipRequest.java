@@ -93,7 +93,7 @@ public class SipRequest extends SipMessage {
    * @param event
    */
   public SipRequest(RequestEvent event) {
-    super(event.getRequest());
+    super(event.getRequest(), receivedTimeOf(event));
     this.requestEvent = event;
   }
 
@@ -260,7 +260,7 @@ public class SipResponse extends SipMessage {
    * @param event
    */
   public SipResponse(ResponseEvent event) {
-    super(event.getResponse());
+    super(event.getResponse(), receivedTimeOf(event));
     this.responseEvent = event;
   }
 
@@ -26,9 +26,11 @@ import javax.sip.Dialog;
 import javax.sip.DialogTerminatedEvent;
 import javax.sip.IOExceptionEvent;
 import javax.sip.InvalidArgumentException;
+import javax.sip.ListeningPoint;
 import javax.sip.RequestEvent;
 import javax.sip.ResponseEvent;
 import javax.sip.ServerTransaction;
+import javax.sip.SipException;
 import javax.sip.SipListener;
 import javax.sip.TimeoutEvent;
 import javax.sip.TransactionAlreadyExistsException;
@@ -39,6 +41,7 @@ import javax.sip.address.AddressFactory;
 import javax.sip.address.SipURI;
 import javax.sip.address.URI;
 import javax.sip.header.AuthorizationHeader;
+import javax.sip.header.CSeqHeader;
 import javax.sip.header.ContactHeader;
 import javax.sip.header.ContentTypeHeader;
 import javax.sip.header.ExpiresHeader;
@@ -50,15 +53,27 @@ import javax.sip.header.WWWAuthenticateHeader;
 import javax.sip.message.Message;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Methods of this class provide the test program with low-level access to a SIP session. Instead of
@@ -144,6 +159,15 @@ public class SipSession implements SipListener, SipActionObject {
 
   public static final int MAX_FORWARDS_DEFAULT = 70;
 
+  /**
+   * The default maximum number of received requests held for the wait methods, see
+   * setMaxPendingRequests().
+   */
+  public static final int DEFAULT_MAX_PENDING_REQUESTS = 1000;
+
+  // consecutive authentication challenges answered by sendRequestAsync() before giving up
+  private static final int MAX_ASYNC_CHALLENGES = 3;
+
   // Class attributes
 
   private int returnCode = -1;
@@ -176,19 +200,40 @@ public class SipSession implements SipListener, SipActionObject {
 
   private ArrayList<ViaHeader> viaHeaders;
 
-  private HashMap<ClientTransaction, SipTransaction> respTransactions = new HashMap<>();
+  private final Map<ClientTransaction, SipTransaction> respTransactions = new ConcurrentHashMap<>();
 
-  private LinkedList<RequestEvent> reqEvents = new LinkedList<>();
+  // received requests waiting to be picked up by waitRequest() and the SipCall waitForXxx() methods,
+  // open while listenRequestMessage() is in effect
+  private final RequestMailbox requestMailbox =
+      new RequestMailbox(DEFAULT_MAX_PENDING_REQUESTS);
 
-  private boolean rcvRequests = false;
+  // woken on each event delivered to this session, its calls and its subscriptions
+  private final StateMonitor stateMonitor = new StateMonitor();
 
-  private BlockObject reqBlock = new BlockObject();
+  private final LatencyStats latencyStats = new LatencyStats();
 
-  private BlockObject respBlock = new BlockObject();
+  // key = String request method, value = immutable List of RequestListener, replaced as a whole
+  // on every add/remove so that request dispatch can iterate it without locking
+  private final Map<String, List<RequestListener>> requestListeners = new ConcurrentHashMap<>();
 
-  private Map<String, ArrayList<RequestListener>> requestListeners = new HashMap<>();
+  // requests a request listener has taken for itself, kept out of the request mailbox
+  private final Set<RequestEvent> consumedRequests = ConcurrentHashMap.newKeySet();
+
+  private static final int HA1_CACHE_SIZE = 32;
+
+  // value = hex HA1, see getHA1(); least recently used first
+  private final Map<Ha1Key, String> ha1Cache =
+      Collections.synchronizedMap(new LinkedHashMap<Ha1Key, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Ha1Key, String> eldest) {
+          return size() > HA1_CACHE_SIZE;
+        }
+      });
 
-  // key = String request method, value = ArrayList of RequestListener
+  private volatile MessageJournal messageJournal;
+
+  // null when events are delivered directly on the JAIN-SIP threads
+  private final SessionMailbox mailbox;
 
   private boolean loopback;
 
@@ -207,6 +252,8 @@ public class SipSession implements SipListener, SipActionObject {
    */
   private boolean acceptTrafficOnEphemeralPorts;
 
+  // transport of the stack listening point this session's Contact and Via headers are built from
+  private final String transport;
 
   protected SipSession(SipStack stack, String proxyHost, String proxyProto, int proxyPort,
                        String me) throws InvalidArgumentException, ParseException {
@@ -215,6 +262,23 @@ public class SipSession implements SipListener, SipActionObject {
 
   protected SipSession(SipStack stack, String proxyHost, String proxyProto, int proxyPort,
       String me, boolean acceptTrafficOnEphemeralPorts) throws InvalidArgumentException, ParseException {
+    this(stack, proxyHost, proxyProto, proxyPort, me, acceptTrafficOnEphemeralPorts, null);
+  }
+
+  /**
+   * @param transport The transport of the stack listening point to use, see
+   *        SipStack.addListeningPoint(), or null for the one the stack was created with.
+   */
+  protected SipSession(SipStack stack, String proxyHost, String proxyProto, int proxyPort,
+      String me, boolean acceptTrafficOnEphemeralPorts, String transport)
+      throws InvalidArgumentException, ParseException {
+    ListeningPoint lp = transport == null ? stack.getDefaultListeningPoint()
+        : stack.getListeningPoint(transport);
+    if (lp == null) {
+      throw new InvalidArgumentException("The SipStack isn't listening on transport " + transport);
+    }
+    this.transport = lp.getTransport().toLowerCase(Locale.ENGLISH);
+
     this.parent = stack;
     this.proxyHost = proxyHost;
     this.proxyProto = proxyProto;
@@ -222,7 +286,10 @@ public class SipSession implements SipListener, SipActionObject {
     this.me = me;
     this.acceptTrafficOnEphemeralPorts = acceptTrafficOnEphemeralPorts;
 
-    this.myhost = parent.getSipProvider().getListeningPoints()[0].getIPAddress();
+    Executor dispatchExecutor = stack.getDispatchExecutor();
+    this.mailbox = dispatchExecutor == null ? null : new SessionMailbox(dispatchExecutor);
+
+    this.myhost = lp.getIPAddress();
 
     // validate given URI and generate unique ID
     StringTokenizer tokens = new StringTokenizer(me, "@");
@@ -246,8 +313,8 @@ public class SipSession implements SipListener, SipActionObject {
     // (use user@hostname)
     SipURI contact_uri = addr_factory.createSipURI(((SipURI) my_uri).getUser(), this.myhost);
 
-    contact_uri.setPort(parent.getSipProvider().getListeningPoints()[0].getPort());
-    contact_uri.setTransportParam(parent.getSipProvider().getListeningPoints()[0].getTransport());
+    contact_uri.setPort(lp.getPort());
+    contact_uri.setTransportParam(lp.getTransport());
     contact_uri.setSecure(((SipURI) my_uri).isSecure());
     contact_uri.setLrParam();
 
@@ -259,15 +326,29 @@ public class SipSession implements SipListener, SipActionObject {
     contactInfo.setContactHeader(hdr);
 
     // determine and store my via header(s)
-    ViaHeader via_header = parent.getHeaderFactory().createViaHeader(this.myhost,
-        parent.getSipProvider().getListeningPoints()[0].getPort(),
-        parent.getSipProvider().getListeningPoints()[0].getTransport(), "somebranchvalue");
+    ViaHeader via_header = parent.getHeaderFactory().createViaHeader(this.myhost, lp.getPort(),
+        lp.getTransport(), "somebranchvalue");
 
     viaHeaders = new ArrayList<>(1);
     viaHeaders.add(via_header);
 
     // finally, register with the sip stack
     parent.registerListener(this);
+    updateRoutes();
+  }
+
+  /**
+   * Refreshes this session's entries in the parent stack's request routing index. Must be called
+   * whenever the contact address, the loopback setting or the acceptTrafficOnEphemeralPorts setting
+   * changes.
+   */
+  protected void updateRoutes() {
+    SipURI contactUri;
+    synchronized (contactLock) {
+      contactUri = (SipURI) contactInfo.getContactHeader().getAddress().getURI();
+    }
+
+    parent.updateRoutes(this, contactUri, loopback ? me : null, acceptTrafficOnEphemeralPorts);
   }
 
   private void generateMyId(String host) {
@@ -338,6 +419,7 @@ public class SipSession implements SipListener, SipActionObject {
 
   public void setAcceptTrafficOnEphemeralPorts (boolean acceptTrafficOnEphemeralPorts) {
     this.acceptTrafficOnEphemeralPorts = acceptTrafficOnEphemeralPorts;
+    updateRoutes();
   }
 
   public Request getLastReceivedOptionsRequest () {
@@ -355,6 +437,10 @@ public class SipSession implements SipListener, SipActionObject {
    */
   public void dispose() {
     parent.unregisterListener(this);
+
+    for (ClientTransaction trans : respTransactions.keySet()) {
+      removeTransaction(trans);
+    }
   }
 
   /**
@@ -376,6 +462,73 @@ public class SipSession implements SipListener, SipActionObject {
     this.parent = parent;
   }
 
+  /**
+   * Returns the transport this Sip agent's contact address and via header are set up for, that
+   * is, the transport of the SipStack listening point it was created on.
+   *
+   * @return "udp", "tcp", "tls" or "ws".
+   */
+  public String getTransport() {
+    return transport;
+  }
+
+  ListeningPoint getListeningPoint() {
+    return parent.getListeningPoint(transport);
+  }
+
+  /*
+   * Returns the given transport if this session's requests and responses can be switched to it -
+   * the stack listens on it and it isn't this session's own - or null to stay on this session's
+   * own transport.
+   */
+  String selectTransport(String wanted) {
+    if (wanted == null || wanted.equalsIgnoreCase(transport)
+        || parent.getListeningPoint(wanted) == null) {
+      return null;
+    }
+    return wanted.toLowerCase(Locale.ENGLISH);
+  }
+
+  /*
+   * Returns this session's via header(s), switched to the given transport's listening point
+   * unless it's null (see selectTransport()).
+   */
+  List<ViaHeader> getViaHeaders(String otherTransport)
+      throws ParseException, InvalidArgumentException {
+    if (otherTransport == null) {
+      return getViaHeaders();
+    }
+
+    ListeningPoint lp = parent.getListeningPoint(otherTransport);
+    List<ViaHeader> vias = new ArrayList<>(viaHeaders.size());
+    for (ViaHeader via : viaHeaders) {
+      vias.add((ViaHeader) via.clone());
+    }
+    vias.get(0).setTransport(lp.getTransport());
+    vias.get(0).setPort(lp.getPort());
+    return vias;
+  }
+
+  /*
+   * Returns a copy of this session's contact header, switched to the given transport's listening
+   * point unless it's null (see selectTransport()).
+   */
+  ContactHeader getContactHeader(String otherTransport) {
+    ContactHeader contact = (ContactHeader) contactInfo.getContactHeader().clone();
+    if (otherTransport != null) {
+      ListeningPoint lp = parent.getListeningPoint(otherTransport);
+      SipURI uri = (SipURI) contact.getAddress().getURI();
+      uri.setPort(lp.getPort());
+      try {
+        uri.setTransportParam(lp.getTransport());
+      } catch (ParseException e) {
+        // a listening point's transport is always a valid transport parameter
+        throw new IllegalStateException(e);
+      }
+    }
+    return contact;
+  }
+
   /**
    * Gets the IP address and port currently being used in this Sip agent's contact
    * address, via, and listening point 'sentby' components. Example: 66.32.44.114:5066
@@ -383,7 +536,7 @@ public class SipSession implements SipListener, SipActionObject {
    * @return A String containing address + ':' + port.
    */
   public String getPublicAddress() {
-    return parent.getSipProvider().getListeningPoints()[0].getSentBy();
+    return getListeningPoint().getSentBy();
   }
 
   /**
@@ -404,7 +557,7 @@ public class SipSession implements SipListener, SipActionObject {
   public boolean setPublicAddress(String host, int port) {
     try {
       // set 'sentBy' in the listening point for outbound messages
-      parent.getSipProvider().getListeningPoints()[0].setSentBy(host + ":" + port);
+      getListeningPoint().setSentBy(host + ":" + port);
 
       // update my contact info
       SipURI my_uri = (SipURI) contactInfo.getContactHeader().getAddress().getURI();
@@ -418,6 +571,8 @@ public class SipSession implements SipListener, SipActionObject {
 
       // update my host
       myhost = host;
+
+      updateRoutes();
     } catch (Exception ex) {
       setException(ex);
       setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
@@ -437,6 +592,16 @@ public class SipSession implements SipListener, SipActionObject {
    * FOR INTERNAL USE ONLY. Not to be used by a test program.
    */
   public void processRequest(RequestEvent request) {
+    handleRequest(request);
+  }
+
+  /**
+   * Processes the given incoming request if it is addressed to this session.
+   *
+   * @param request the incoming request event.
+   * @return false if the request isn't addressed to this session and was ignored, true otherwise.
+   */
+  boolean handleRequest(RequestEvent request) {
     Request req_msg = request.getRequest();
     ToHeader to = (ToHeader) req_msg.getHeader(ToHeader.NAME);
     SipContact my_contact_info = new SipContact();
@@ -460,14 +625,14 @@ public class SipSession implements SipListener, SipActionObject {
     if (req_msg.getMethod().equalsIgnoreCase(SipRequest.REGISTER)) {
       if (!isPassThroughRegisterRequests()) {
         if (!isSupportRegisterRequests()) {
-          return;
+          return false;
         } else {
           ExpiresHeader expires = req_msg.getExpires();
           if (expires.getExpires() == 0) {
             try {
               Response response = getParent().getMessageFactory().createResponse(Response.OK, request.getRequest());
               sendReply(request, response);
-              return;
+              return true;
             } catch (Exception e) {
               LOG.error("Exception while trying to respond to REGISTER with Expires header 0 request");
             }
@@ -476,20 +641,32 @@ public class SipSession implements SipListener, SipActionObject {
       }
     } else if (!acceptTrafficOnEphemeralPorts) {
       //Check if destination match
-      if (destMatch((SipURI) my_contact_info.getContactHeader().getAddress().getURI(),
+      if (contactMatch((SipURI) my_contact_info.getContactHeader().getAddress().getURI(),
               (SipURI) req_msg.getRequestURI()) == false) {
         if (!loopback) {
           LOG.trace("     skipping 'To' check, we're not loopback (see setLoopback())");
-          return;
+          return false;
         }
 
         // check 'To' for a match
         if (to.getAddress().getURI().toString().equals(me) == false) {
-          return;
+          return false;
         }
       }
     }
 
+    MessageJournal journal = messageJournal;
+    if (journal != null) {
+      journal.recordRequest(req_msg);
+    }
+
+    dispatch(() -> deliverRequest(request));
+    return true;
+  }
+
+  private void deliverRequest(RequestEvent request) {
+    Request req_msg = request.getRequest();
+
     if (req_msg.getMethod().equalsIgnoreCase(Request.OPTIONS)) {
       int responseCode = Response.OK;
       if (!isAutoResponseOptionsRequests()) {
@@ -509,27 +686,19 @@ public class SipSession implements SipListener, SipActionObject {
     }
 
     // check for listener handling
-    synchronized (requestListeners) {
-      List<RequestListener> listeners = requestListeners.get(req_msg.getMethod());
-      if (listeners != null) {
-        Iterator<RequestListener> i = listeners.iterator();
-        while (i.hasNext()) {
-          RequestListener listener = (RequestListener) i.next();
-          listener.processEvent(request);
-        }
+    List<RequestListener> listeners = requestListeners.get(req_msg.getMethod());
+    if (listeners != null) {
+      for (RequestListener listener : listeners) {
+        listener.processEvent(request);
       }
     }
 
-    synchronized (reqBlock) {
-      if (rcvRequests == false) {
-        LOG.trace("not interested in blocking requests");
-        return;
-      }
-
-      reqEvents.addLast(request);
-
-      LOG.trace("notifying block object");
-      reqBlock.notifyEvent();
+    if (consumedRequests.remove(request)) {
+      LOG.trace("request consumed by a request listener");
+    } else if (requestMailbox.add(request)) {
+      LOG.trace("handed off request to the request mailbox");
+    } else {
+      LOG.trace("not interested in blocking requests");
     }
   }
 
@@ -542,34 +711,26 @@ public class SipSession implements SipListener, SipActionObject {
       return;
     }
 
-    SipTransaction sip_trans = null;
-
-    synchronized (respTransactions) {
-      sip_trans = (SipTransaction) respTransactions.get(trans);
-    }
+    SipTransaction sip_trans = respTransactions.get(trans);
 
     if (sip_trans == null) {
       return;
     }
 
-    if (response.getResponse().getStatusCode() > 199) {
-      synchronized (respTransactions) {
-        respTransactions.remove(trans);
-      }
-    }
+    long received = SipMessage.receivedTimeOrNow(response);
+    sip_trans.responseReceived(response.getResponse().getStatusCode(), received);
+    recordLatency(sip_trans, response.getResponse(), received);
 
-    // check for listener handling
-    MessageListener listener = sip_trans.getClientListener();
-    if (listener != null) {
-      listener.processEvent(response);
-      return;
+    MessageJournal journal = messageJournal;
+    if (journal != null) {
+      journal.recordResponse(response.getResponse());
     }
 
-    // if no listener, use the default blocking mechanism
-    synchronized (sip_trans.getBlock()) {
-      sip_trans.getEvents().addLast(response);
-      sip_trans.getBlock().notifyEvent();
+    if (response.getResponse().getStatusCode() > 199) {
+      removeTransaction(trans);
     }
+
+    dispatch(() -> deliverEvent(sip_trans, response));
   }
 
   /**
@@ -581,33 +742,136 @@ public class SipSession implements SipListener, SipActionObject {
       return;
     }
 
-    SipTransaction sip_trans = null;
-    synchronized (respTransactions) {
-      sip_trans = (SipTransaction) respTransactions.get(trans);
-    }
+    SipTransaction sip_trans = respTransactions.get(trans);
 
     if (sip_trans == null) {
       return;
     }
 
+    sip_trans.timedOut(System.nanoTime());
+
     if (trans.getState().getValue() == TransactionState._TERMINATED) {
-      synchronized (respTransactions) {
-        respTransactions.remove(trans);
-      }
+      removeTransaction(trans);
     }
 
+    dispatch(() -> deliverEvent(sip_trans, timeout));
+  }
+
+  private void deliverEvent(SipTransaction sip_trans, EventObject event) {
     // check for listener handling
     MessageListener listener = sip_trans.getClientListener();
     if (listener != null) {
-      listener.processEvent(timeout);
+      listener.processEvent(event);
       return;
     }
 
     // if no listener, use the default blocking mechanism
-    synchronized (sip_trans.getBlock()) {
-      sip_trans.getEvents().addLast(timeout);
-      sip_trans.getBlock().notifyEvent();
+    sip_trans.getBlock().addEvent(event);
+  }
+
+  /*
+   * Delivers an incoming event to this session's listeners and blocked waiters: directly on the
+   * calling (JAIN-SIP) thread, or through this session's mailbox if the stack has a dispatch
+   * executor, see SipStack.setDispatchExecutor().
+   */
+  private void dispatch(Runnable delivery) {
+    Runnable signalled = () -> {
+      try {
+        delivery.run();
+      } finally {
+        stateMonitor.changed();
+      }
+    };
+
+    if (mailbox == null) {
+      signalled.run();
+    } else {
+      mailbox.execute(signalled);
+    }
+  }
+
+  StateMonitor getStateMonitor() {
+    return stateMonitor;
+  }
+
+  private void recordLatency(SipTransaction sipTrans, Response response, long received) {
+    long sent = sipTrans.getSentTime();
+    CSeqHeader cseq = (CSeqHeader) response.getHeader(CSeqHeader.NAME);
+    if (sent == 0 || cseq == null) {
+      return;
     }
+
+    LatencyMetric metric = LatencyMetric.forResponse(cseq.getMethod(), response.getStatusCode());
+    if (metric != null && sipTrans.markRecorded(metric)) {
+      recordLatency(metric, received - sent);
+    }
+  }
+
+  void recordLatency(LatencyMetric metric, long nanos) {
+    latencyStats.record(metric, nanos);
+    parent.getLatencyStats().record(metric, nanos);
+  }
+
+  /**
+   * Returns the latencies of the transactions and call phases of this Sip agent: REGISTER, INVITE
+   * to 100/180/200, BYE, SUBSCRIBE to first NOTIFY and MESSAGE, see LatencyMetric. The same
+   * latencies are also recorded in the SipStack's LatencyStats, across all its sessions.
+   *
+   * @return This session's latency histograms.
+   */
+  public LatencyStats getLatencyStats() {
+    return latencyStats;
+  }
+
+  /*
+   * Tells whether a request of the given method has been received and not yet picked up by a wait
+   * method.
+   */
+  boolean isRequestPending(String method) {
+    return requestMailbox.contains(method);
+  }
+
+  /**
+   * Returns the number of received events waiting to be delivered to this session's listeners.
+   * Always 0 unless the stack has a dispatch executor, see SipStack.setDispatchExecutor().
+   *
+   * @return The current mailbox depth.
+   */
+  public int getMailboxDepth() {
+    return mailbox == null ? 0 : mailbox.getDepth();
+  }
+
+  /**
+   * Returns the highest number of received events that have been waiting at once to be delivered
+   * to this session's listeners.
+   *
+   * @return The maximum mailbox depth seen so far.
+   * @see #getMailboxDepth()
+   */
+  public int getMaxMailboxDepth() {
+    return mailbox == null ? 0 : mailbox.getMaxDepth();
+  }
+
+  /*
+   * A call that uses another transport than this session's own advertises its contact with the
+   * port of the stack's listening point for that transport (see getContactHeader(String)), so
+   * in-dialog requests sent there are addressed to this session as well.
+   */
+  private boolean contactMatch(SipURI contact, SipURI requestUri) {
+    if (destMatch(contact, requestUri)) {
+      return true;
+    }
+
+    for (ListeningPoint lp : parent.getSipProvider().getListeningPoints()) {
+      if (lp.getPort() != contact.getPort()) {
+        SipURI other = (SipURI) contact.clone();
+        other.setPort(lp.getPort());
+        if (destMatch(other, requestUri)) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
   protected static boolean destMatch(SipURI uri1, SipURI uri2) {
@@ -1044,6 +1308,19 @@ public class SipSession implements SipListener, SipActionObject {
   protected SipTransaction sendRequestWithTransaction(Request request, boolean viaProxy,
       Dialog dialog, MessageListener respListener, ArrayList<Header> additionalHeaders,
       ArrayList<Header> replaceHeaders, String body) {
+    return sendRequestWithTransaction(request, viaProxy, dialog, respListener, additionalHeaders,
+        replaceHeaders, body, null);
+  }
+
+  /**
+   * This method is the same as the previous one except that the given callback, if not null, is
+   * handed the new SipTransaction after it has been created but before the request goes out. A
+   * caller whose response listener needs to see the transaction uses this to publish it before any
+   * response can possibly be delivered.
+   */
+  protected SipTransaction sendRequestWithTransaction(Request request, boolean viaProxy,
+      Dialog dialog, MessageListener respListener, ArrayList<Header> additionalHeaders,
+      ArrayList<Header> replaceHeaders, String body, Consumer<SipTransaction> beforeSend) {
     initErrorInfo();
 
     if (viaProxy == true) {
@@ -1053,52 +1330,238 @@ public class SipSession implements SipListener, SipActionObject {
     }
 
     try {
-      // clear out branch (client transaction) value, if by some chance we
-      // repeat it, the stack will fail the 'getNewClientTransaction()'
-      // call below
-      // Addition of a "if" condition) to check if the new Request
-      // is a CANCEL. In this case, the branch-ID is the same.
-      if (request.getMethod() != Request.CANCEL) {
-        ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
-        if (via != null) {
-          via.removeParameter(ParameterNames.BRANCH);
-        }
+      return sendTransactional(request, dialog, respListener, additionalHeaders, replaceHeaders,
+          body, beforeSend);
+    } catch (Exception ex) {
+      setException(ex);
+      setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
+      setReturnCode(EXCEPTION_ENCOUNTERED);
+      return null;
+    }
+  }
+
+  // the sending part of sendRequestWithTransaction(), reporting failure by throwing rather than via
+  // this session's error information
+  private SipTransaction sendTransactional(Request request, Dialog dialog,
+      MessageListener respListener, ArrayList<Header> additionalHeaders,
+      ArrayList<Header> replaceHeaders, String body, Consumer<SipTransaction> beforeSend)
+      throws Exception {
+    // clear out branch (client transaction) value, if by some chance we
+    // repeat it, the stack will fail the 'getNewClientTransaction()'
+    // call below
+    // Addition of a "if" condition) to check if the new Request
+    // is a CANCEL. In this case, the branch-ID is the same.
+    if (request.getMethod() != Request.CANCEL) {
+      ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
+      if (via != null) {
+        via.removeParameter(ParameterNames.BRANCH);
       }
+    }
 
-      putElements(request, additionalHeaders, replaceHeaders, body);
+    putElements(request, additionalHeaders, replaceHeaders, body);
 
-      ClientTransaction trans = parent.getSipProvider().getNewClientTransaction(request);
-      SipTransaction sip_trans = new SipTransaction();
-      sip_trans.setClientTransaction(trans);
-      sip_trans.setBlock(respBlock);
-      sip_trans.setClientListener(respListener);
+    if (!request.getMethod().equals(Request.ACK)
+        && !request.getMethod().equals(Request.CANCEL)) {
+      addPreemptiveAuthorization(request);
+    }
 
-      synchronized (respTransactions) {
-        respTransactions.put(trans, sip_trans);
-      }
+    ClientTransaction trans = parent.getSipProvider().getNewClientTransaction(request);
+    SipTransaction sip_trans = new SipTransaction();
+    sip_trans.setClientTransaction(trans);
+    sip_trans.setClientListener(respListener);
 
-      try {
-        if (dialog == null) {
-          trans.sendRequest();
+    addTransaction(trans, sip_trans);
+
+    if (beforeSend != null) {
+      beforeSend.accept(sip_trans);
+    }
+
+    try {
+      sip_trans.setSentTime(System.nanoTime());
+      if (dialog == null) {
+        trans.sendRequest();
+      } else {
+        if (request.getMethod().equals(Request.ACK)) {
+          dialog.sendAck(request);
         } else {
-          if (request.getMethod().equals(Request.ACK)) {
-            dialog.sendAck(request);
-          } else {
-            dialog.sendRequest(trans);
-          }
-        }
-      } catch (Exception e) {
-        synchronized (respTransactions) {
-          respTransactions.remove(trans);
+          dialog.sendRequest(trans);
         }
-        throw e;
       }
+    } catch (Exception e) {
+      removeTransaction(trans);
+      throw e;
+    }
+
+    return sip_trans;
+  }
 
-      return sip_trans;
+  /**
+   * This method is the asynchronous counterpart of sendRequestWithTransaction(Request,...) followed
+   * by waitResponse(). Instead of parking the calling thread until the response arrives, it returns
+   * a future that is completed from the SIP stack's event delivery thread. Provisional responses
+   * are skipped and authentication challenges are answered, if credentials are available (see
+   * SipPhone.addUpdateCredential()), before the future completes.
+   *
+   * @param request The request to be sent out.
+   * @param viaProxy If true, send the message to the proxy. In this case a Route header is added by
+   *        this method. Else send the message as is.
+   * @param dialog If not null, send the request via the given dialog. Else send it outside of any
+   *        dialog.
+   * @return A future completed with the final response. It is completed exceptionally with a
+   *         java.util.concurrent.TimeoutException if the stack gives up on the transaction, or with
+   *         a javax.sip.SipException if the request couldn't be sent.
+   */
+  public CompletableFuture<ResponseEvent> sendRequestAsync(Request request, boolean viaProxy,
+      Dialog dialog) {
+    return sendRequestAsync(request, viaProxy, dialog, true, true);
+  }
+
+  /**
+   * This method is the same as the basic sendRequestAsync() method except that it allows the caller
+   * to control provisional response and authentication challenge handling.
+   *
+   * The extra parameters supported by this method are:
+   *
+   * @param awaitFinalResponse If true, the future is completed with the first final response.
+   *        Else it is completed with the first response received, provisional or not.
+   * @param handleChallenges If true, a 401/407 response is answered by resending the request with
+   *        authorization, and the future is completed with the response to that. Else the
+   *        challenge response completes the future.
+   */
+  public CompletableFuture<ResponseEvent> sendRequestAsync(Request request, boolean viaProxy,
+      Dialog dialog, boolean awaitFinalResponse, boolean handleChallenges) {
+    initErrorInfo();
+
+    if (viaProxy && !addProxy(request)) {
+      return CompletableFuture.failedFuture(new SipException(getErrorMessage()));
+    }
+
+    AsyncResponseListener listener =
+        new AsyncResponseListener(dialog, awaitFinalResponse, handleChallenges);
+
+    try {
+      sendTransactional(request, dialog, listener, null, null, null, null);
     } catch (Exception ex) {
       setException(ex);
       setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
       setReturnCode(EXCEPTION_ENCOUNTERED);
+      return CompletableFuture.failedFuture(listener.failure(ex));
+    }
+
+    return listener.future;
+  }
+
+  /**
+   * Builds the request to resend in answer to the given authentication challenge. Used by
+   * sendRequestAsync(). A plain SipSession has no credentials, so this implementation returns null
+   * (the challenge is passed on to the caller). SipPhone overrides it.
+   *
+   * @param challenge the 401/407 response received.
+   * @param request the request that was challenged.
+   * @return the request to resend, or null if the challenge can't be answered.
+   */
+  protected Request authorizeRequest(Response challenge, Request request) {
+    return null;
+  }
+
+  /**
+   * Called by sendRequestAsync() once a request that got challenged (see authorizeRequest()) is
+   * done with, successfully or not, for any authorization cached for it to be dropped. A plain
+   * SipSession keeps no authorizations, so this implementation does nothing. SipPhone overrides it.
+   *
+   * @param request the request that was challenged.
+   */
+  protected void releaseAuthorization(Request request) {}
+
+  /*
+   * Response listener backing sendRequestAsync(). It is invoked from the SIP stack's event thread
+   * and never blocks.
+   */
+  private class AsyncResponseListener implements MessageListener {
+
+    private final CompletableFuture<ResponseEvent> future = new CompletableFuture<>();
+
+    private final Dialog dialog;
+
+    private final boolean awaitFinalResponse;
+
+    private final boolean handleChallenges;
+
+    private int challenges;
+
+    // the last request challenged, if any - authorizeRequest() may have cached authorizations for it
+    private volatile Request challenged;
+
+    private AsyncResponseListener(Dialog dialog, boolean awaitFinalResponse,
+        boolean handleChallenges) {
+      this.dialog = dialog;
+      this.awaitFinalResponse = awaitFinalResponse;
+      this.handleChallenges = handleChallenges;
+
+      future.whenComplete((response, ex) -> {
+        Request request = challenged;
+        if (request != null) {
+          releaseAuthorization(request);
+        }
+      });
+    }
+
+    private SipException failure(Exception ex) {
+      return new SipException("Exception: " + ex.getClass().getName() + ": " + ex.getMessage(),
+          ex);
+    }
+
+    public void processEvent(EventObject event) {
+      if (event instanceof TimeoutEvent) {
+        TimeoutEvent timeout = (TimeoutEvent) event;
+        future.completeExceptionally(new TimeoutException("No response received for "
+            + timeout.getClientTransaction().getRequest().getMethod() + " request"));
+        return;
+      }
+
+      if (!(event instanceof ResponseEvent)) {
+        return;
+      }
+
+      ResponseEvent responseEvent = (ResponseEvent) event;
+      Response response = responseEvent.getResponse();
+      int status = response.getStatusCode();
+
+      if (status < Response.OK && awaitFinalResponse) {
+        return;
+      }
+
+      if ((status == Response.UNAUTHORIZED || status == Response.PROXY_AUTHENTICATION_REQUIRED)
+          && handleChallenges && challenges < MAX_ASYNC_CHALLENGES) {
+        challenges++;
+        challenged = responseEvent.getClientTransaction().getRequest();
+        Request resend = authorizeRequest(response, challenged);
+        if (resend != null) {
+          try {
+            sendTransactional(resend, dialog, this, null, null, null, null);
+          } catch (Exception ex) {
+            future.completeExceptionally(failure(ex));
+          }
+          return;
+        }
+      }
+
+      future.complete(responseEvent);
+    }
+
+    public ArrayList<SipResponse> getAllReceivedResponses() {
+      return new ArrayList<>();
+    }
+
+    public ArrayList<SipRequest> getAllReceivedRequests() {
+      return new ArrayList<>();
+    }
+
+    public SipRequest getLastReceivedRequest() {
+      return null;
+    }
+
+    public SipResponse getLastReceivedResponse() {
       return null;
     }
   }
@@ -1127,27 +1590,24 @@ public class SipSession implements SipListener, SipActionObject {
 
     initErrorInfo();
 
-    synchronized (trans.getBlock()) {
-      LinkedList<EventObject> events = trans.getEvents();
-      if (events.isEmpty()) {
-        try {
-          trans.getBlock().waitForEvent(timeout);
-        } catch (Exception ex) {
-          setException(ex);
-          setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
-          setReturnCode(EXCEPTION_ENCOUNTERED);
-          return null;
-        }
-      }
-
-      if (events.isEmpty()) {
-        setReturnCode(TIMEOUT_OCCURRED);
-        setErrorMessage("The maximum amount of time to wait for a response message has elapsed.");
-        return null;
-      }
+    EventObject event;
+    try {
+      event = trans.getBlock().takeEvent(timeout);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      setException(ex);
+      setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
+      setReturnCode(EXCEPTION_ENCOUNTERED);
+      return null;
+    }
 
-      return (EventObject) events.removeFirst();
+    if (event == null) {
+      setReturnCode(TIMEOUT_OCCURRED);
+      setErrorMessage("The maximum amount of time to wait for a response message has elapsed.");
+      return null;
     }
+
+    return event;
   }
 
   /**
@@ -1158,10 +1618,7 @@ public class SipSession implements SipListener, SipActionObject {
    * @return true unless an error is encountered, in which case false is returned.
    */
   public boolean listenRequestMessage() {
-    synchronized (reqBlock) {
-      rcvRequests = true;
-    }
-
+    requestMailbox.open();
     return true;
   }
 
@@ -1175,14 +1632,45 @@ public class SipSession implements SipListener, SipActionObject {
    * @return true unless an error is encountered, in which case false is returned.
    */
   public boolean unlistenRequestMessage() {
-    synchronized (reqBlock) {
-      rcvRequests = false;
-      reqEvents.clear();
-    }
-
+    requestMailbox.close();
     return true;
   }
 
+  /**
+   * Sets the maximum number of received requests this SipSession holds for waitRequest() and the
+   * SipCall waitForXxx() methods. Requests nobody waits for (an ACK nobody calls waitForAck() for,
+   * etc.) stay pending while request listening is on, so a long running test bounds them with
+   * this: when a request is received with the maximum already pending, the oldest pending request
+   * is dropped. See getDroppedRequestCount().
+   *
+   * @param maxPendingRequests the maximum, DEFAULT_MAX_PENDING_REQUESTS by default.
+   * @throws IllegalArgumentException if maxPendingRequests isn't greater than 0.
+   */
+  public void setMaxPendingRequests(int maxPendingRequests) {
+    requestMailbox.setCapacity(maxPendingRequests);
+  }
+
+  /**
+   * Gets the maximum number of received requests held for the wait methods.
+   *
+   * @return the maximum number of pending requests.
+   * @see #setMaxPendingRequests(int)
+   */
+  public int getMaxPendingRequests() {
+    return requestMailbox.getCapacity();
+  }
+
+  /**
+   * Gets the number of received requests dropped without being picked up because the maximum
+   * number of pending requests had been reached.
+   *
+   * @return the number of dropped requests since this SipSession was created.
+   * @see #setMaxPendingRequests(int)
+   */
+  public long getDroppedRequestCount() {
+    return requestMailbox.getDropped();
+  }
+
   /**
    * The waitRequest() method waits for a request addressed to this SipSession's URI to be received
    * from the network. Call this method after calling the listenRequestMessage() method.
@@ -1199,31 +1687,127 @@ public class SipSession implements SipListener, SipActionObject {
    *         diagnostics.
    */
   public RequestEvent waitRequest(long timeout) {
-    initErrorInfo();
+    return unwrap(waitRequest(RequestMailbox.Query.any(), null, timeout));
+  }
 
-    synchronized (reqBlock) {
-      if (reqEvents.isEmpty()) {
-        try {
-          LOG.trace("about to block, waiting");
-          reqBlock.waitForEvent(timeout);
-          LOG.trace("we've come out of the block");
-        } catch (Exception ex) {
-          setException(ex);
-          setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
-          setReturnCode(EXCEPTION_ENCOUNTERED);
-          return null;
-        }
-      }
+  /**
+   * The waitFor() method waits for a request addressed to this SipSession's URI that satisfies the
+   * given predicate, leaving any other requests received in the meantime for other waiters or for
+   * a later wait. Call this method after calling the listenRequestMessage() method.
+   *
+   * The timeout is converted to a single deadline when this method is called, so the total time
+   * spent waiting doesn't grow with the number of unrelated requests received meanwhile. The
+   * predicate is evaluated while the received requests are locked and must not block.
+   *
+   * @param filter Selects the request of interest, ie {@code r -> r.isInvite()}. If several received
+   *        requests satisfy it, the oldest is returned.
+   * @param timeout The maximum amount of time to wait. Use Duration.ZERO to wait indefinitely.
+   * @return The matching SipRequest (use getRequestEvent() on it for the server transaction, etc.)
+   *         or null in the case of wait timeout or error. If null, call getReturnCode() and/or
+   *         getErrorMessage() and, if applicable, getException() for further diagnostics.
+   * @throws IllegalArgumentException if the timeout is negative.
+   */
+  public SipRequest waitFor(Predicate<SipRequest> filter, Duration timeout) {
+    return waitRequest(RequestMailbox.Query.any(), filter, toMillis(timeout));
+  }
 
-      LOG.trace("either we got the request, or timed out");
-      if (reqEvents.isEmpty()) {
-        setReturnCode(TIMEOUT_OCCURRED);
-        setErrorMessage("The maximum amount of time to wait for a request message has elapsed.");
-        return null;
-      }
+  // Duration.ZERO keeps the "0 means forever" convention of the long timeouts, so a positive
+  // timeout under a millisecond mustn't round down to it
+  static long toMillis(Duration timeout) {
+    if (timeout.isNegative()) {
+      throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+    }
+
+    return timeout.isZero() ? 0 : Math.max(1, timeout.toMillis());
+  }
 
-      return (RequestEvent) reqEvents.removeFirst();
+  /**
+   * This waitRequest() method waits for a request of the given method and Call-ID to be received,
+   * leaving any other requests received in the meantime for other waiters. Call this method after
+   * calling the listenRequestMessage() method. Several threads may wait for different requests at
+   * the same time; each received request is returned to exactly one of them.
+   *
+   * @param callId The Call-ID of the request to wait for, or null for any Call-ID.
+   * @param method The request method, ie Request.BYE. An INVITE without a To tag (that is, a new
+   *        call) is only returned by waitIncomingCall(), not by this method.
+   * @param timeout The maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
+   *        indefinitely.
+   * @return A RequestEvent or null in the case of wait timeout or error. If null, call
+   *         getReturnCode() and/or getErrorMessage() and, if applicable, getException() for further
+   *         diagnostics.
+   */
+  public RequestEvent waitRequest(String callId, String method, long timeout) {
+    return unwrap(waitRequest(RequestMailbox.Query.of(callId, method), null, timeout));
+  }
+
+  /**
+   * The waitIncomingCall() method waits for an INVITE request that doesn't belong to an existing
+   * dialog (it has no To tag), leaving any other requests received in the meantime for other
+   * waiters. Call this method after calling the listenRequestMessage() method.
+   *
+   * @param timeout The maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
+   *        indefinitely.
+   * @return A RequestEvent or null in the case of wait timeout or error. If null, call
+   *         getReturnCode() and/or getErrorMessage() and, if applicable, getException() for further
+   *         diagnostics.
+   */
+  public RequestEvent waitIncomingCall(long timeout) {
+    return unwrap(waitRequest(RequestMailbox.Query.newCall(), null, timeout));
+  }
+
+  private static RequestEvent unwrap(SipRequest request) {
+    return request == null ? null : request.getRequestEvent();
+  }
+
+  /**
+   * Waits for a request matching the query and, if given, the filter. This is what all the other
+   * request wait methods, including the SipCall ones, come down to.
+   */
+  SipRequest waitRequest(RequestMailbox.Query query, Predicate<? super SipRequest> filter,
+      long timeout) {
+    return waitRequest(query, filter, timeout, null);
+  }
+
+  /**
+   * Same as the other waitRequest(Query, ...) method and then, if an observer is given, hands it the
+   * request taken and the requests passed over that it hasn't been given yet (see
+   * RequestMailbox.take()).
+   */
+  SipRequest waitRequest(RequestMailbox.Query query, Predicate<? super SipRequest> filter,
+      long timeout, RequestMailbox.Observer observer) {
+    initErrorInfo();
+
+    SipRequest request;
+    try {
+      LOG.trace("about to block, waiting");
+      request = requestMailbox.take(query, filter, timeout, observer);
+      LOG.trace("we've come out of the block");
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      setException(ex);
+      setErrorMessage("Exception: " + ex.getClass().getName() + ": " + ex.getMessage());
+      setReturnCode(EXCEPTION_ENCOUNTERED);
+      return null;
+    }
+
+    LOG.trace("either we got the request, or timed out");
+    if (request == null) {
+      setReturnCode(TIMEOUT_OCCURRED);
+      setErrorMessage("The maximum amount of time to wait for a request message has elapsed.");
+      return null;
     }
+
+    return request;
+  }
+
+  /**
+   * Discards the received requests with the given Call-ID that haven't been picked up by a wait
+   * method yet.
+   *
+   * @param callId The Call-ID.
+   */
+  protected void discardRequests(String callId) {
+    requestMailbox.clear(callId);
   }
 
   /**
@@ -1789,6 +2373,38 @@ public class SipSession implements SipListener, SipActionObject {
 
   public AuthorizationHeader getAuthorization(String method, String uri, String requestBody,
       WWWAuthenticateHeader authHeader, String username, String password) throws SecurityException {
+    return getAuthorization(method, uri,
+        requestBody == null ? null : requestBody.getBytes(StandardCharsets.UTF_8), authHeader,
+        username, password);
+  }
+
+  /**
+   * Same as the other getAuthorization() method except that the request body is given as the raw
+   * message content (ie, request.getRawContent()), so that it can be digested without converting it
+   * to a String first.
+   *
+   * @param method method of the request being authenticated.
+   * @param uri digest-uri. This is the request uri of the request.
+   * @param requestBody the raw body of the request message being authenticated, or null.
+   * @param authHeader the challenge that we are responding to.
+   * @param username the name of the user to send to the challenging server
+   * @param password the user's password
+   * @return The AuthorizationHeader to use for this challenge.
+   * @throws SecurityException
+   */
+  public AuthorizationHeader getAuthorization(String method, String uri, byte[] requestBody,
+      WWWAuthenticateHeader authHeader, String username, String password) throws SecurityException {
+    return getAuthorization(method, uri, requestBody, authHeader, username, password, 1);
+  }
+
+  /**
+   * Same as getAuthorization() except that the nonce count to use is given. A nonce count greater
+   * than 1 is used when a nonce received in an earlier challenge is reused (see
+   * SipPhone.setPreemptiveAuthorization()).
+   */
+  protected AuthorizationHeader getAuthorization(String method, String uri, byte[] requestBody,
+      WWWAuthenticateHeader authHeader, String username, String password, int nonceCount)
+      throws SecurityException {
     String response = null;
     String cnonce = "";
     String nc_value = "";
@@ -1799,14 +2415,15 @@ public class SipSession implements SipListener, SipActionObject {
       qop = authHeader.getQop();
       if(qop!=null && !qop.isEmpty()){
           cnonce = getCNonce();
-          nc_value = "00000001";
+          nc_value = String.format("%08x", nonceCount);
       }
-      response = MessageDigestAlgorithm.calculateResponse(authHeader.getAlgorithm(), username,
-          authHeader.getRealm(), new String(password), authHeader.getNonce(),
+      response = MessageDigestAlgorithm.calculateResponseFromHA1(authHeader.getAlgorithm(),
+          getHA1(authHeader.getAlgorithm(), username, authHeader.getRealm(), password),
+          authHeader.getNonce(),
           nc_value,
           cnonce,
           method, uri, requestBody, qop);
-    } catch (NullPointerException exc) {
+    } catch (NullPointerException | IllegalArgumentException exc) {
       throw new SecurityException(
           "The received authenticate header was malformatted: " + exc.getMessage());
     }
@@ -1828,7 +2445,7 @@ public class SipSession implements SipListener, SipActionObject {
       if(cnonce!=null && !cnonce.isEmpty())
           authorization.setCNonce(cnonce);
       if(nc_value!=null && !nc_value.isEmpty())
-          authorization.setNonceCount(Integer.parseInt(nc_value));
+          authorization.setNonceCount(nonceCount);
       if(qop!=null && !qop.isEmpty())
           authorization.setQop(qop);
 
@@ -1846,6 +2463,62 @@ public class SipSession implements SipListener, SipActionObject {
     return authorization;
   }
 
+  /**
+   * Called for every request about to be sent in a new client transaction, other than ACK and
+   * CANCEL, to give a subclass the chance to authorize it before it has been challenged. This
+   * implementation does nothing, see SipPhone.setPreemptiveAuthorization().
+   *
+   * @param request the request about to be sent.
+   */
+  protected void addPreemptiveAuthorization(Request request) {}
+
+  private static final class Ha1Key {
+
+    private final String algorithm;
+
+    private final String username;
+
+    private final String realm;
+
+    private final String password;
+
+    Ha1Key(String algorithm, String username, String realm, String password) {
+      this.algorithm = algorithm == null ? "" : algorithm.trim().toUpperCase(Locale.ROOT);
+      this.username = username;
+      this.realm = realm;
+      this.password = password;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Ha1Key)) {
+        return false;
+      }
+
+      Ha1Key other = (Ha1Key) obj;
+      return password.equals(other.password) && algorithm.equals(other.algorithm)
+          && username.equals(other.username) && realm.equals(other.realm);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(algorithm, username, realm, password);
+    }
+  }
+
+  /*
+   * H(username:realm:password) only depends on the credentials, so it's calculated once per
+   * credential and algorithm rather than on every challenge.
+   */
+  private String getHA1(String algorithm, String username, String realm, String password) {
+    if (username == null || realm == null || password == null) {
+      throw new NullPointerException("Null credential parameter");
+    }
+
+    return ha1Cache.computeIfAbsent(new Ha1Key(algorithm, username, realm, password),
+        k -> MessageDigestAlgorithm.calculateHA1(algorithm, username, realm, password));
+  }
+
   /**
    * This method returns the Via Header currently in effect for this user agent, needed for sending
    * requests such as INVITE. By default, it is set to the IP address and port used by this user
@@ -1923,9 +2596,17 @@ public class SipSession implements SipListener, SipActionObject {
   }
 
   protected void clearTransaction(SipTransaction sip_trans) {
-    synchronized (respTransactions) {
-      respTransactions.remove(sip_trans.getClientTransaction());
-    }
+    removeTransaction(sip_trans.getClientTransaction());
+  }
+
+  private void addTransaction(ClientTransaction trans, SipTransaction sip_trans) {
+    respTransactions.put(trans, sip_trans);
+    parent.addResponseRoute(trans, this);
+  }
+
+  private void removeTransaction(ClientTransaction trans) {
+    respTransactions.remove(trans);
+    parent.removeResponseRoute(trans);
   }
 
   /**
@@ -1958,29 +2639,30 @@ public class SipSession implements SipListener, SipActionObject {
   protected void addRequestListener(String requestMethod, RequestListener listener) {
     // multiple listeners per method
 
-    synchronized (requestListeners) {
-      ArrayList<RequestListener> listeners = requestListeners.get(requestMethod);
-      if (listeners == null) {
-        listeners = new ArrayList<>();
-        requestListeners.put(requestMethod, listeners);
-      }
-
-      listeners.add(listener);
-    }
+    requestListeners.compute(requestMethod, (method, listeners) -> {
+      List<RequestListener> updated =
+          listeners == null ? new ArrayList<>(1) : new ArrayList<>(listeners);
+      updated.add(listener);
+      return Collections.unmodifiableList(updated);
+    });
   }
 
   protected void removeRequestListener(String requestMethod, RequestListener listener) {
     // multiple listeners per method
 
-    synchronized (requestListeners) {
-      List<RequestListener> listeners = requestListeners.get(requestMethod);
-      if (listeners != null) {
-        listeners.remove(listener);
-        if (listeners.isEmpty()) {
-          requestListeners.remove(requestMethod);
-        }
-      }
-    }
+    requestListeners.computeIfPresent(requestMethod, (method, listeners) -> {
+      List<RequestListener> updated = new ArrayList<>(listeners);
+      updated.remove(listener);
+      return updated.isEmpty() ? null : Collections.unmodifiableList(updated);
+    });
+  }
+
+  /**
+   * Called by a request listener, from its processEvent(), to take the request for itself: the
+   * request isn't then queued for waitRequest() and the SipCall waitForXxx() methods.
+   */
+  protected void consumeRequest(RequestEvent request) {
+    consumedRequests.add(request);
   }
 
   /**
@@ -2012,6 +2694,30 @@ public class SipSession implements SipListener, SipActionObject {
    */
   public void setLoopback(boolean loopback) {
     this.loopback = loopback;
+    updateRoutes();
+  }
+
+  /**
+   * Sets a journal in which this session records the raw bytes of every request addressed to it
+   * and every response to a request it sent, as they are received. Several sessions may share the
+   * same journal. The journal is kept off the Java heap and the messages are only parsed again when
+   * accessed; see MessageJournal. Use it together with SipPhone.setHistoryPolicy() to keep the
+   * complete message record of a long running test without holding on to the parsed messages.
+   *
+   * @param messageJournal The journal, or null to stop recording (the default).
+   */
+  public void setMessageJournal(MessageJournal messageJournal) {
+    this.messageJournal = messageJournal;
+  }
+
+  /**
+   * Gets the journal this session records received messages in.
+   *
+   * @return The journal, or null if none has been set.
+   * @see #setMessageJournal(MessageJournal)
+   */
+  public MessageJournal getMessageJournal() {
+    return messageJournal;
   }
 
   public void processIOException(IOExceptionEvent arg0) {
@@ -2019,9 +2725,11 @@ public class SipSession implements SipListener, SipActionObject {
 
   }
 
+  /**
+   * FOR INTERNAL USE ONLY. Not to be used by a test program.
+   */
   public void processTransactionTerminated(TransactionTerminatedEvent arg0) {
-    // TODO Auto-generated method stub
-
+    respTransactions.remove(arg0.getClientTransaction());
   }
 
   public void processDialogTerminated(DialogTerminatedEvent arg0) {
@@ -20,16 +20,31 @@ import lombok.extern.slf4j.Slf4j;
 
 import gov.nist.javax.sip.ResponseEventExt;
 
+import java.io.IOException;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.UnknownHostException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.sip.ClientTransaction;
 import javax.sip.DialogTerminatedEvent;
 import javax.sip.IOExceptionEvent;
 import javax.sip.InvalidArgumentException;
@@ -42,10 +57,14 @@ import javax.sip.SipProvider;
 import javax.sip.TimeoutEvent;
 import javax.sip.TransactionTerminatedEvent;
 import javax.sip.address.AddressFactory;
+import javax.sip.address.SipURI;
+import javax.sip.address.URI;
 import javax.sip.header.HeaderFactory;
 import javax.sip.header.RecordRouteHeader;
 import javax.sip.header.RouteHeader;
+import javax.sip.header.ToHeader;
 import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
 
 /**
  * This class is the starting point for a SipUnit test. Before establishing any
@@ -80,12 +99,76 @@ public class SipStack implements SipListener {
     @Getter
     private SipProvider sipProvider;
 
-    private final LinkedList<SipListener> listeners = new LinkedList<>();
+    /*
+     * The JAIN-SIP stack name, unique among the live SipStacks of this JVM. The SipFactory hands
+     * back the existing JAIN-SIP stack when asked for one with a name already in use, so two
+     * SipStacks with the same name would silently share one.
+     */
+    @Getter
+    private String stackName;
+
+    /*
+     * The port actually listened on, which is an ephemeral one if the stack was created with port 0.
+     */
+    @Getter
+    private int port;
+
+    // the address all of this stack's listening points are bound to
+    private String listenAddress;
+
+    // the listening point for the transport given to the constructor, see addListeningPoint()
+    private ListeningPoint defaultListeningPoint;
+
+    /*
+     * The latencies recorded by all the sessions (SipPhones) created on this stack, see
+     * SipSession.getLatencyStats().
+     */
+    @Getter
+    private final LatencyStats latencyStats = new LatencyStats();
+
+    private static final Set<String> stackNamesInUse = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicInteger stackNameSuffix = new AtomicInteger();
+
+    // attempts at binding an ephemeral port that someone else may grab between lookup and bind
+    private static final int EPHEMERAL_PORT_ATTEMPTS = 5;
+
+    // read on every incoming message, written only when sessions come and go
+    private final List<SipListener> listeners = new CopyOnWriteArrayList<>();
+
+    /*
+     * Request routing index. Incoming requests are dispatched straight to the session(s) whose
+     * contact address matches the Request-URI (or whose address of record matches the 'To' header,
+     * for loopback sessions) instead of being offered to every registered listener. Key = route key
+     * (see contactRouteKey(), loopbackRouteKey()), value = immutable list of sessions.
+     */
+    private final Map<String, List<SipSession>> requestRoutes = new ConcurrentHashMap<>();
+
+    // key = session, value = route keys currently held by that session in requestRoutes
+    private final Map<SipSession, List<String>> sessionRoutes = new ConcurrentHashMap<>();
+
+    // sessions that accept traffic regardless of the Request-URI (see acceptTrafficOnEphemeralPorts)
+    private final Set<SipSession> promiscuousSessions = ConcurrentHashMap.newKeySet();
+
+    /*
+     * Response routing table. key = outstanding client transaction, value = the session that sent
+     * the request, so that a response or timeout goes straight to its owner.
+     */
+    private final Map<ClientTransaction, SipSession> responseRoutes = new ConcurrentHashMap<>();
 
     @Getter
     private Random random = new Random((new Date()).getTime());
 
-    private int retransmissions;
+    private final AtomicInteger retransmissions = new AtomicInteger();
+
+    /*
+     * When set, each session created on this stack delivers its incoming events through its own
+     * mailbox drained by this executor instead of on the JAIN-SIP threads.
+     */
+    @Getter
+    private volatile Executor dispatchExecutor;
+
+    private volatile boolean disposed;
 
     private static final Properties defaultProperties = new Properties();
 
@@ -141,25 +224,34 @@ public class SipStack implements SipListener {
      * A constructor for this class. Before establishing any SIP sessions,
      * instantiate this class. You may provide the parameters for SIP protocol
      * binding on a specific TCP/UDP port, which will be used to communicate
-     * with external SIP agents (a SIP proxy server, for example). (TODO -
-     * update to take advantage of JAIN-SIP 1.2 architecture, multiple listening
-     * points per provider - multiple protocols.)
+     * with external SIP agents (a SIP proxy server, for example). Listening
+     * points for other transports can be added with addListeningPoint().
      *
      * <p>
      * A test program may contain one or more SipStack objects, each of which
      * may have one or more SipPhones.
      *
+     * <p>
+     * To run tests in parallel, pass port 0: the stack then listens on a free
+     * ephemeral port, available from getPort() and used in the Contact and Via
+     * headers of the SipPhones created on this stack. The JAIN-SIP stack name
+     * (javax.sip.STACK_NAME) is made unique among the live SipStacks of the JVM
+     * by appending a suffix to it if needed, see getStackName().
+     *
      * @param proto SIP transport protocol, "tcp" or "udp" (default is "udp").
      * @param port port on which this stack listens for messages (default is
-     * 5060).
+     * 5060), or 0 for any free port.
      * @param props properties of the SIP stack. These properties are the same
      * as that defined for JAIN-SIP SipStack. If this parameter has a null
-     * value, we pick default values for you.
+     * value, we pick default values for you. The given properties are copied,
+     * not modified.
      * @throws Exception
      */
     public SipStack(String proto, int port, Properties props) throws Exception {
-        if (props == null) {
-            props = defaultProperties;
+        Properties given = props == null ? defaultProperties : props;
+        props = new Properties();
+        for (String name : given.stringPropertyNames()) {
+            props.setProperty(name, given.getProperty(name));
         }
 
         if (sipFactory == null) {
@@ -174,9 +266,8 @@ public class SipStack implements SipListener {
         log.info("Using path name:" + pathName);
         sipFactory.setPathName(pathName);
 
-        if (props.getProperty("javax.sip.STACK_NAME") == null) {
-            props.setProperty("javax.sip.STACK_NAME", "SipUnitTestAgent");
-        }
+        stackName = reserveStackName(props.getProperty("javax.sip.STACK_NAME", "SipUnitTestAgent"));
+        props.setProperty("javax.sip.STACK_NAME", stackName);
 
         /*
      * The user can specify an IP address for the stack but we use it as an IP address for the
@@ -196,33 +287,139 @@ public class SipStack implements SipListener {
             props.setProperty("gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY", "gov.nist.javax.sip.stack.NioMessageProcessorFactory");
         }
 
-        sipStack = sipFactory.createSipStack(props);
+        try {
+            sipStack = sipFactory.createSipStack(props);
+
+            headerFactory = sipFactory.createHeaderFactory();
+            addressFactory = sipFactory.createAddressFactory();
+            messageFactory = sipFactory.createMessageFactory();
 
-        headerFactory = sipFactory.createHeaderFactory();
-        addressFactory = sipFactory.createAddressFactory();
-        messageFactory = sipFactory.createMessageFactory();
+            if (port < 0) {
+                port = DEFAULT_PORT;
+            }
 
-        if (port < 0) {
-            port = DEFAULT_PORT;
+            if (listenAddr == null) {
+                listenAddr = InetAddress.getLocalHost().getHostAddress();
+            }
+            /*
+         * The above makes use of the fact that with JAIN-SIP 1.2, if you don't provide IP_ADDRESS in
+         * the properties when you create a stack, it goes by STACK_NAME only and you can create as many
+         * stacks as you want as long as the name is different (and IP_ADDRESS property is null). Thanks
+         * to Venkita S. for contributing the changes to SipSession and SipStack needed to make this
+         * work.
+             */
+
+            ListeningPoint lp = createListeningPoint(listenAddr, port, proto);
+            this.port = lp.getPort();
+            this.listenAddress = listenAddr;
+            this.defaultListeningPoint = lp;
+
+            sipProvider = sipStack.createSipProvider(lp);
+            sipProvider.addSipListener(this);
+
+            sipStack.start();
+        } catch (Exception e) {
+            stackNamesInUse.remove(stackName);
+            throw e;
         }
+    }
 
-        if (listenAddr == null) {
-            listenAddr = InetAddress.getLocalHost().getHostAddress();
+    /**
+     * Makes this stack listen on another transport as well, on the same address and sharing the
+     * same JAIN-SIP stack, thread pools and SipProvider as the transport given to the constructor.
+     * Create a SipPhone with createSipPhone(proxyHost, proxyProto, proxyPort, me, transport) to
+     * have it use the new transport for its Contact and Via headers. A SipCall also switches to the
+     * transport of its next hop (as given by its viaNonProxyRoute, or the phone's proxy transport)
+     * for its own requests and responses if this stack listens on it.
+     *
+     * <p>
+     * Only one listening point per transport is possible. The WS transport requires the stack to
+     * have been created with the NIO message processor factory
+     * (gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY property, set automatically when the
+     * constructor's transport is WS) and TLS requires the JAIN-SIP TLS key and trust store
+     * properties.
+     *
+     * @param proto SIP transport protocol: "udp", "tcp", "tls" or "ws".
+     * @param port port to listen on for this transport, or 0 for any free port.
+     * @return The port actually listened on.
+     * @throws Exception if the listening point can't be created or added to the provider, ie
+     * because this stack already listens on the given transport.
+     */
+    public int addListeningPoint(String proto, int port) throws Exception {
+        ListeningPoint lp = createListeningPoint(listenAddress, port < 0 ? DEFAULT_PORT : port,
+                proto);
+        try {
+            sipProvider.addListeningPoint(lp);
+        } catch (Exception e) {
+            sipStack.deleteListeningPoint(lp);
+            throw e;
         }
-        /*
-     * The above makes use of the fact that with JAIN-SIP 1.2, if you don't provide IP_ADDRESS in
-     * the properties when you create a stack, it goes by STACK_NAME only and you can create as many
-     * stacks as you want as long as the name is different (and IP_ADDRESS property is null). Thanks
-     * to Venkita S. for contributing the changes to SipSession and SipStack needed to make this
-     * work.
-         */
 
-        ListeningPoint lp = sipStack.createListeningPoint(listenAddr, port, proto);
+        return lp.getPort();
+    }
+
+    /**
+     * Returns this stack's listening point for the given transport.
+     *
+     * @param transport "udp", "tcp", "tls" or "ws", case-insensitive.
+     * @return The listening point, or null if this stack doesn't listen on that transport.
+     */
+    public ListeningPoint getListeningPoint(String transport) {
+        for (ListeningPoint lp : sipProvider.getListeningPoints()) {
+            if (lp.getTransport().equalsIgnoreCase(transport)) {
+                return lp;
+            }
+        }
+        return null;
+    }
+
+    ListeningPoint getDefaultListeningPoint() {
+        return defaultListeningPoint;
+    }
+
+    private static String reserveStackName(String name) {
+        String candidate = name;
+        while (!stackNamesInUse.add(candidate)) {
+            candidate = name + '-' + stackNameSuffix.incrementAndGet();
+        }
+        return candidate;
+    }
+
+    private ListeningPoint createListeningPoint(String listenAddr, int port, String proto)
+            throws Exception {
+        if (port != 0) {
+            return sipStack.createListeningPoint(listenAddr, port, proto);
+        }
+
+        InvalidArgumentException lastFailure = null;
+        for (int i = 0; i < EPHEMERAL_PORT_ATTEMPTS; i++) {
+            try {
+                return sipStack.createListeningPoint(listenAddr, findFreePort(listenAddr, proto),
+                        proto);
+            } catch (InvalidArgumentException e) {
+                // most likely taken in the meantime, try another one
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
 
-        sipProvider = sipStack.createSipProvider(lp);
-        sipProvider.addSipListener(this);
+    /*
+     * Rather than relying on how the JAIN-SIP implementation handles port 0, a free port is looked
+     * up here and bound explicitly, so the listening point - and the Contact and Via headers built
+     * from it - carry the real port.
+     */
+    private static int findFreePort(String listenAddr, String proto) throws IOException {
+        InetAddress address = InetAddress.getByName(listenAddr);
+        if (PROTOCOL_UDP.equalsIgnoreCase(proto)) {
+            try (DatagramSocket socket = new DatagramSocket(0, address)) {
+                return socket.getLocalPort();
+            }
+        }
 
-        sipStack.start();
+        try (ServerSocket socket = new ServerSocket(0, 1, address)) {
+            return socket.getLocalPort();
+        }
     }
 
     /**
@@ -288,6 +485,28 @@ public class SipStack implements SipListener {
         return new SipPhone(this, proxyHost, proxyProto, proxyPort, me, acceptTrafficOnEphemeralPorts);
     }
 
+    /**
+     * This method is the equivalent to the other createSipPhone() methods but
+     * with a choice of transport, for a stack listening on several (see
+     * addListeningPoint()). The phone's contact address and via header are
+     * set up for the given transport.
+     *
+     * @param proxyHost
+     * @param proxyProto
+     * @param proxyPort
+     * @param me
+     * @param transport "udp", "tcp", "tls" or "ws" - one of the transports this
+     * stack listens on - or null for the one given to the constructor.
+     * @return A new SipPhone object.
+     * @throws InvalidArgumentException if this stack doesn't listen on the
+     * given transport.
+     * @throws ParseException
+     */
+    public SipPhone createSipPhone(String proxyHost, String proxyProto, int proxyPort, String me,
+            String transport) throws InvalidArgumentException, ParseException {
+        return new SipPhone(this, proxyHost, proxyProto, proxyPort, me, false, transport);
+    }
+
     /**
      * This method is the equivalent to the other createSipPhone() methods but
      * without a proxy server.
@@ -335,41 +554,254 @@ public class SipStack implements SipListener {
      */
     public void dispose() {
         try {
-            if (sipProvider.getListeningPoints().length > 0) {
-                sipStack.deleteListeningPoint(sipProvider.getListeningPoints()[0]);
+            for (ListeningPoint lp : sipProvider.getListeningPoints()) {
+                sipStack.deleteListeningPoint(lp);
             }
             sipProvider.removeSipListener(this);
             sipStack.deleteSipProvider(sipProvider);
             sipFactory.resetFactory();
+            stackNamesInUse.remove(stackName);
+            disposed = true;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Indicates whether dispose() has completed on this SipStack.
+     *
+     * @return true if this stack has been disposed of and can no longer be used.
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Returns the number of sessions (SipPhones) created on this stack that haven't been disposed
+     * of yet.
+     *
+     * @return The live session count.
+     */
+    public int getSessionCount() {
+        int count = 0;
+        for (SipListener listener : listeners) {
+            if (listener instanceof SipSession) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns this stack to the state it was in right after construction, so it can be reused by
+     * another test without the cost of creating a new JAIN-SIP stack (see SipStackPool): the
+     * routing tables, the retransmission counter and the latency statistics are cleared and the
+     * dispatch executor is unset. The JAIN-SIP stack, provider and listening point are kept,
+     * listening points added with addListeningPoint() are removed. All the SipPhones created on
+     * this stack must have been disposed of first.
+     *
+     * @throws IllegalStateException if this stack has been disposed of or still has live sessions.
+     */
+    public synchronized void reset() {
+        if (disposed) {
+            throw new IllegalStateException("SipStack has been disposed of");
+        }
+
+        int sessions = getSessionCount();
+        if (sessions > 0) {
+            throw new IllegalStateException(sessions + " SipPhone(s) not disposed of");
+        }
+
+        listeners.clear();
+        requestRoutes.clear();
+        sessionRoutes.clear();
+        promiscuousSessions.clear();
+        responseRoutes.clear();
+        retransmissions.set(0);
+        latencyStats.reset();
+        dispatchExecutor = null;
+
+        for (ListeningPoint lp : sipProvider.getListeningPoints()) {
+            if (lp != defaultListeningPoint) {
+                try {
+                    sipProvider.removeListeningPoint(lp);
+                    sipStack.deleteListeningPoint(lp);
+                } catch (Exception e) {
+                    log.warn("Exception removing listening point " + lp.getTransport(), e);
+                }
+            }
+        }
+    }
+
     /**
      * FOR INTERNAL USE ONLY. Not to be used by a test program.
      */
     public void processRequest(RequestEvent arg0) {
         log.trace("request received !");
-        synchronized (listeners) {
+        Request request = arg0.getRequest();
+        SipMessage.markReceived(arg0);
+
+        if (request.getMethod().equalsIgnoreCase(Request.REGISTER)) {
+            // REGISTER handling is decided by each session's register settings, not by the
+            // Request-URI, so it is always offered to everyone
             for (SipListener listener : listeners) {
                 log.trace("calling listener");
                 listener.processRequest(arg0);
             }
+            return;
+        }
+
+        Set<SipSession> targets = findRoutes(request);
+        boolean handled = false;
+        for (SipSession session : targets) {
+            log.trace("calling routed session");
+            handled |= session.handleRequest(arg0);
+        }
+
+        if (handled) {
+            return;
+        }
+
+        // nobody in the index claimed it - fall back to offering it to everyone else
+        for (SipListener listener : listeners) {
+            if (!targets.contains(listener)) {
+                log.trace("calling listener");
+                listener.processRequest(arg0);
+            }
+        }
+    }
+
+    private Set<SipSession> findRoutes(Request request) {
+        Set<SipSession> targets = new LinkedHashSet<>(promiscuousSessions);
+
+        URI requestUri = request.getRequestURI();
+        if (requestUri != null && requestUri.isSipURI()) {
+            List<SipSession> sessions = requestRoutes.get(contactRouteKey((SipURI) requestUri));
+            if (sessions != null) {
+                targets.addAll(sessions);
+            }
+        }
+
+        ToHeader to = (ToHeader) request.getHeader(ToHeader.NAME);
+        if (to != null) {
+            List<SipSession> sessions =
+                    requestRoutes.get(loopbackRouteKey(to.getAddress().getURI().toString()));
+            if (sessions != null) {
+                targets.addAll(sessions);
+            }
         }
+
+        return targets;
     }
 
     /**
-     * FOR INTERNAL USE ONLY. Not to be used by a test program.
+     * Replaces the routes held by the given session in this stack's request routing index.
+     *
+     * @param session the session whose routes are being (re)computed.
+     * @param contactUri the session's current contact URI, may be null.
+     * @param loopbackAddress the session's address of record if it accepts requests by 'To' header
+     * match (see SipSession.setLoopback()), null otherwise.
+     * @param promiscuous true if the session accepts requests regardless of the Request-URI.
      */
-    public void processResponse(ResponseEvent arg0) {
-        synchronized (listeners) {
-            if (((ResponseEventExt) arg0).isRetransmission()) {
-                retransmissions++;
+    protected synchronized void updateRoutes(SipSession session, SipURI contactUri,
+            String loopbackAddress, boolean promiscuous) {
+        removeRoutes(session);
+
+        List<String> keys = new ArrayList<>();
+        if (contactUri != null) {
+            keys.add(contactRouteKey(contactUri));
+
+            // a call on another transport advertises the contact with that listening point's port
+            for (ListeningPoint lp : sipProvider.getListeningPoints()) {
+                if (lp.getPort() != contactUri.getPort()) {
+                    SipURI otherUri = (SipURI) contactUri.clone();
+                    otherUri.setPort(lp.getPort());
+                    keys.add(contactRouteKey(otherUri));
+                }
             }
-            for (SipListener listener : listeners) {
-                listener.processResponse(arg0);
+        }
+        if (loopbackAddress != null) {
+            keys.add(loopbackRouteKey(loopbackAddress));
+        }
+
+        for (String key : keys) {
+            requestRoutes.compute(key, (k, sessions) -> {
+                List<SipSession> updated =
+                        sessions == null ? new ArrayList<>(1) : new ArrayList<>(sessions);
+                updated.add(session);
+                return Collections.unmodifiableList(updated);
+            });
+        }
+
+        sessionRoutes.put(session, keys);
+        if (promiscuous) {
+            promiscuousSessions.add(session);
+        }
+    }
+
+    /**
+     * Removes the given session from this stack's request routing index.
+     *
+     * @param session the session to remove.
+     */
+    protected synchronized void removeRoutes(SipSession session) {
+        promiscuousSessions.remove(session);
+
+        Collection<String> keys = sessionRoutes.remove(session);
+        if (keys == null) {
+            return;
+        }
+
+        for (String key : keys) {
+            requestRoutes.computeIfPresent(key, (k, sessions) -> {
+                List<SipSession> updated = new ArrayList<>(sessions);
+                updated.remove(session);
+                return updated.isEmpty() ? null : Collections.unmodifiableList(updated);
+            });
+        }
+    }
+
+    /*
+     * Two URIs yield the same key exactly when SipSession.destMatch() considers them equal: scheme
+     * and host are case-insensitive, user and password are not, and an absent port only matches an
+     * absent port.
+     */
+    static String contactRouteKey(SipURI uri) {
+        StringBuilder key = new StringBuilder("ruri:");
+        key.append(uri.getScheme().toLowerCase(Locale.ENGLISH)).append(':');
+        if (uri.getUser() != null) {
+            key.append(uri.getUser());
+            if (uri.getUserPassword() != null) {
+                key.append(':').append(uri.getUserPassword());
             }
+            key.append('@');
+        }
+        key.append(uri.getHost().toLowerCase(Locale.ENGLISH));
+        key.append(':').append(uri.getPort());
+        return key.toString();
+    }
+
+    static String loopbackRouteKey(String addressOfRecord) {
+        return "to:" + addressOfRecord;
+    }
+
+    /**
+     * FOR INTERNAL USE ONLY. Not to be used by a test program.
+     */
+    public void processResponse(ResponseEvent arg0) {
+        SipMessage.markReceived(arg0);
+        if (((ResponseEventExt) arg0).isRetransmission()) {
+            retransmissions.incrementAndGet();
+        }
+
+        ClientTransaction trans = arg0.getClientTransaction();
+        if (trans == null) {
+            return;
+        }
+
+        SipSession session = responseRoutes.get(trans);
+        if (session != null) {
+            session.processResponse(arg0);
         }
     }
 
@@ -377,22 +809,46 @@ public class SipStack implements SipListener {
      * FOR INTERNAL USE ONLY. Not to be used by a test program.
      */
     public void processTimeout(TimeoutEvent arg0) {
-        synchronized (listeners) {
-            for (SipListener listener : listeners) {
-                listener.processTimeout(arg0);
-            }
+        ClientTransaction trans = arg0.getClientTransaction();
+        if (trans == null) {
+            return;
+        }
+
+        SipSession session = responseRoutes.get(trans);
+        if (session != null) {
+            session.processTimeout(arg0);
         }
     }
 
+    /**
+     * Records the given session as the owner of the given client transaction so that responses and
+     * timeouts for it are delivered to that session only.
+     *
+     * @param trans the client transaction created for an outbound request.
+     * @param session the session that sent the request.
+     */
+    protected void addResponseRoute(ClientTransaction trans, SipSession session) {
+        responseRoutes.put(trans, session);
+    }
+
+    /**
+     * Forgets the owner of the given client transaction.
+     *
+     * @param trans the client transaction no longer expecting responses.
+     */
+    protected void removeResponseRoute(ClientTransaction trans) {
+        responseRoutes.remove(trans);
+    }
+
     protected void registerListener(SipListener listener) {
-        synchronized (listeners) {
-            listeners.addLast(listener);
-        }
+        listeners.add(listener);
     }
 
     protected void unregisterListener(SipListener listener) {
-        synchronized (listeners) {
-            listeners.remove(listener);
+        listeners.remove(listener);
+
+        if (listener instanceof SipSession) {
+            removeRoutes((SipSession) listener);
         }
     }
 
@@ -446,7 +902,14 @@ public class SipStack implements SipListener {
     }
 
     public void processTransactionTerminated(TransactionTerminatedEvent arg0) {
-        // TODO Auto-generated method stub
+        if (arg0.isServerTransaction()) {
+            return;
+        }
+
+        SipSession session = responseRoutes.remove(arg0.getClientTransaction());
+        if (session != null) {
+            session.processTransactionTerminated(arg0);
+        }
     }
 
     public void processDialogTerminated(DialogTerminatedEvent arg0) {
@@ -454,6 +917,42 @@ public class SipStack implements SipListener {
     }
 
     public int getRetransmissions() {
-        return retransmissions;
+        return retransmissions.get();
+    }
+
+    /**
+     * Makes the sessions (SipPhones) created on this stack from now on deliver incoming requests,
+     * responses and timeouts to their listeners - SipCall, the subscriptions, RequestListeners and
+     * the blocking waitXxx() methods - through a per-session mailbox drained by the given executor,
+     * instead of on the JAIN-SIP transport threads. Each session's events are still delivered one
+     * at a time in the order received, but a slow listener only holds up its own session; other
+     * sessions and the reception of messages carry on. The mailbox depth of each session is
+     * available via SipSession.getMailboxDepth(), and the total via getMailboxDepth().
+     *
+     * <p>
+     * By default (null) events are delivered directly on the JAIN-SIP threads. Call this before
+     * creating any SipPhone; sessions that already exist keep their current mode. The executor is
+     * not shut down by this stack.
+     *
+     * @param dispatchExecutor A shared executor such as Executors.newFixedThreadPool(), or null.
+     */
+    public void setDispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+    }
+
+    /**
+     * Returns the total number of received events waiting to be delivered to the sessions on this
+     * stack. Always 0 unless a dispatch executor has been set, see setDispatchExecutor().
+     *
+     * @return The sum of the sessions' mailbox depths.
+     */
+    public int getMailboxDepth() {
+        int depth = 0;
+        for (SipListener listener : listeners) {
+            if (listener instanceof SipSession) {
+                depth += ((SipSession) listener).getMailboxDepth();
+            }
+        }
+        return depth;
     }
 }
@@ -0,0 +1,241 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Keeps SipStacks alive between tests so that each test doesn't pay for creating and tearing down
+ * a JAIN-SIP stack, listening point and provider. A test leases a stack in its setup instead of
+ * constructing one, and releases it in its teardown instead of disposing of it:
+ *
+ * <pre>
+ * private static final SipStackPool pool = new SipStackPool();
+ *
+ * &#064;Before
+ * public void setUp() throws Exception {
+ *   sipStack = pool.lease(SipStack.PROTOCOL_UDP, 5060, properties);
+ *   ...
+ * }
+ *
+ * &#064;After
+ * public void tearDown() {
+ *   ua.dispose();
+ *   pool.release(sipStack);
+ * }
+ * </pre>
+ *
+ * <p>
+ * Stacks are pooled by protocol, port and properties: a lease only returns a released stack that
+ * was created with the same ones, otherwise a new stack is created. On release the stack is reset
+ * (see SipStack.reset()). A stack on which SipPhones are still alive is not reused - it is disposed
+ * of instead, so a test that leaks phones can't affect the next one.
+ *
+ * <p>
+ * Pooled stacks keep their port bound until close() is called, typically once after all the tests
+ * of a class have run.
+ */
+public class SipStackPool implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SipStackPool.class);
+
+  private static final class Key {
+
+    private final String protocol;
+
+    private final int port;
+
+    private final Properties properties;
+
+    Key(String protocol, int port, Properties properties) {
+      this.protocol = protocol == null ? SipStack.DEFAULT_PROTOCOL : protocol.toLowerCase();
+      this.port = port < 0 ? SipStack.DEFAULT_PORT : port;
+      this.properties = properties;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return port == other.port && protocol.equals(other.protocol)
+          && Objects.equals(properties, other.properties);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(protocol, port, properties);
+    }
+  }
+
+  // key = how the stacks were created, value = released stacks ready to be leased again
+  private final Map<Key, Deque<SipStack>> idle = new HashMap<>();
+
+  private final Map<SipStack, Key> leased = new IdentityHashMap<>();
+
+  private int created;
+
+  private int reused;
+
+  private boolean closed;
+
+  /**
+   * Returns a SipStack for the given protocol, port and properties, reusing a released one if
+   * there is one, otherwise creating one as with new SipStack(proto, port, props).
+   *
+   * @param proto SIP transport protocol, "tcp" or "udp" (default is "udp").
+   * @param port port on which the stack listens for messages (default is 5060). Stacks leased with
+   *        port 0 listen on an ephemeral port, see SipStack.getPort().
+   * @param props properties of the SIP stack, or null for the SipStack defaults. The properties
+   *        are copied; changing them afterwards has no effect on the pool.
+   * @return A SipStack with no sessions on it, to be handed back with release().
+   * @throws Exception if a new stack is needed and can't be created.
+   * @throws IllegalStateException if this pool has been closed.
+   */
+  public synchronized SipStack lease(String proto, int port, Properties props) throws Exception {
+    if (closed) {
+      throw new IllegalStateException("SipStackPool has been closed");
+    }
+
+    Key key = new Key(proto, port, copy(props));
+
+    Deque<SipStack> stacks = idle.get(key);
+    SipStack stack = stacks == null ? null : stacks.poll();
+    if (stack != null) {
+      reused++;
+    } else {
+      stack = new SipStack(proto, port, props);
+      created++;
+    }
+
+    leased.put(stack, key);
+    return stack;
+  }
+
+  private static Properties copy(Properties props) {
+    if (props == null) {
+      return null;
+    }
+
+    // including the defaults the given properties may have been created with
+    Properties copy = new Properties();
+    for (String name : props.stringPropertyNames()) {
+      copy.setProperty(name, props.getProperty(name));
+    }
+    return copy;
+  }
+
+  /**
+   * Hands a leased SipStack back to the pool. The stack is reset and kept for a later lease if all
+   * the SipPhones created on it have been disposed of. Otherwise the stack is disposed of and
+   * false is returned. The caller must not use the stack after this call either way.
+   *
+   * @param stack A stack obtained from lease().
+   * @return true if the stack was kept for reuse, false if it was disposed of.
+   * @throws IllegalArgumentException if the stack wasn't leased from this pool.
+   */
+  public synchronized boolean release(SipStack stack) {
+    Key key = leased.remove(stack);
+    if (key == null) {
+      throw new IllegalArgumentException("SipStack not leased from this pool");
+    }
+
+    if (stack.isDisposed()) {
+      return false;
+    }
+
+    int sessions = stack.getSessionCount();
+    if (closed || sessions > 0) {
+      if (sessions > 0) {
+        LOG.warn("Not reusing SipStack, {} SipPhone(s) on it weren't disposed of", sessions);
+      }
+      dispose(stack);
+      return false;
+    }
+
+    stack.reset();
+    idle.computeIfAbsent(key, k -> new ArrayDeque<>()).push(stack);
+    return true;
+  }
+
+  private static void dispose(SipStack stack) {
+    try {
+      stack.dispose();
+    } catch (RuntimeException e) {
+      LOG.error("Exception disposing of pooled SipStack", e);
+    }
+  }
+
+  /**
+   * Returns the number of stacks this pool has created.
+   *
+   * @return The number of leases that had to create a new SipStack.
+   */
+  public synchronized int getCreatedCount() {
+    return created;
+  }
+
+  /**
+   * Returns the number of leases satisfied with a previously released stack.
+   *
+   * @return The number of leases that reused a SipStack.
+   */
+  public synchronized int getReusedCount() {
+    return reused;
+  }
+
+  /**
+   * Returns the number of released stacks waiting to be leased again.
+   *
+   * @return The idle stack count.
+   */
+  public synchronized int getIdleCount() {
+    int count = 0;
+    for (Deque<SipStack> stacks : idle.values()) {
+      count += stacks.size();
+    }
+    return count;
+  }
+
+  /**
+   * Disposes of the idle stacks and stops pooling: stacks still leased are disposed of when they
+   * are released.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+
+    List<SipStack> stacks = new ArrayList<>();
+    idle.values().forEach(stacks::addAll);
+    idle.clear();
+
+    stacks.forEach(SipStackPool::dispose);
+  }
+}
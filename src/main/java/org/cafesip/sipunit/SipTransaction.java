@@ -22,6 +22,8 @@ import lombok.Setter;
 
 import java.util.EventObject;
 import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
 import javax.sip.ClientTransaction;
 import javax.sip.ServerTransaction;
 import javax.sip.message.Request;
@@ -48,14 +50,46 @@ public class SipTransaction {
 
   private ClientTransaction clientTransaction;
 
-  private BlockObject block;
+  // received responses/timeouts for this transaction, waiting to be picked up
+  @Setter(AccessLevel.NONE)
+  private volatile BlockObject block = new BlockObject();
 
   private MessageListener clientListener;
 
-  private LinkedList<EventObject> events = new LinkedList<>();
-
   private ServerTransaction serverTransaction;
 
+  /**
+   * System.nanoTime() when the request of this transaction was handed to the stack for sending, 0
+   * if it wasn't sent by this side (a server transaction).
+   */
+  @Setter(AccessLevel.PACKAGE)
+  private volatile long sentTime;
+
+  /**
+   * System.nanoTime() when the first provisional (1xx) response of this transaction was received,
+   * 0 if none has been. See SipMessage.getReceivedTime().
+   */
+  @Setter(AccessLevel.NONE)
+  private volatile long firstProvisionalTime;
+
+  /**
+   * System.nanoTime() when the final response of this transaction was received, 0 if none has
+   * been. See SipMessage.getReceivedTime().
+   */
+  @Setter(AccessLevel.NONE)
+  private volatile long finalResponseTime;
+
+  /**
+   * System.nanoTime() when the stack reported this transaction as timed out, 0 if it hasn't.
+   */
+  @Setter(AccessLevel.NONE)
+  private volatile long timeoutTime;
+
+  // LatencyMetric ordinals already recorded for this transaction, see markRecorded()
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private int recordedMetrics;
+
   /**
    * A constructor for this class.
    * 
@@ -84,4 +118,82 @@ public class SipTransaction {
 
     return null;
   }
+
+  /**
+   * Returns the received responses/timeouts of this transaction that haven't been picked up yet,
+   * oldest first. The list returned is a copy, changing it doesn't affect the transaction.
+   * 
+   * @return the events waiting to be picked up.
+   * @deprecated Events are picked up with SipSession.waitResponse() (or getBlock().takeEvent()).
+   */
+  @Deprecated
+  public LinkedList<EventObject> getEvents() {
+    return new LinkedList<>(block.pendingEvents());
+  }
+
+  /**
+   * Replaces the hand-off of this transaction's received responses/timeouts. Events not yet picked
+   * up from the previous one are carried over.
+   * 
+   * @param block the new hand-off.
+   * @deprecated Every transaction has its own hand-off from creation, there's no need to set one.
+   */
+  @Deprecated
+  protected void setBlock(BlockObject block) {
+    BlockObject previous = this.block;
+    this.block = block;
+    previous.pendingEvents().forEach(block::addEvent);
+  }
+
+  /*
+   * Records the receive time of a response to this transaction - only the first one of each kind
+   * counts, later ones being retransmissions or (for 2xx to INVITE) forked answers.
+   */
+  synchronized void responseReceived(int statusCode, long nanos) {
+    if (statusCode < 200) {
+      if (firstProvisionalTime == 0) {
+        firstProvisionalTime = nanos;
+      }
+    } else if (finalResponseTime == 0) {
+      finalResponseTime = nanos;
+      notifyAll();
+    }
+  }
+
+  synchronized void timedOut(long nanos) {
+    if (timeoutTime == 0) {
+      timeoutTime = nanos;
+      notifyAll();
+    }
+  }
+
+  /*
+   * Waits for a final response to this (client) transaction to have been received, or for the
+   * transaction to time out. The stack is done processing the response by the time it is recorded
+   * here, so the dialog has been updated with it. Returns false if neither happened in time.
+   */
+  synchronized boolean awaitFinalResponse(long timeout) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    while (finalResponseTime == 0 && timeoutTime == 0) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return finalResponseTime != 0;
+  }
+
+  /*
+   * Returns true the first time it's called for the given metric, so that a retransmitted
+   * response isn't recorded twice.
+   */
+  synchronized boolean markRecorded(LatencyMetric metric) {
+    int bit = 1 << metric.ordinal();
+    if ((recordedMetrics & bit) != 0) {
+      return false;
+    }
+    recordedMetrics |= bit;
+    return true;
+  }
 }
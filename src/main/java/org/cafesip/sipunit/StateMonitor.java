@@ -0,0 +1,114 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lets a thread wait for a condition on the state of a SipSession or one of its SipCalls and
+ * subscriptions, waking up as soon as that state changes instead of polling it. Whatever changes
+ * the state calls changed() afterwards; the waiting thread re-evaluates its condition on each
+ * change, until it holds or the timeout elapses. See the SipAssert methods taking a timeout.
+ */
+class StateMonitor {
+
+  /**
+   * For objects that don't report their state changes: the condition is re-evaluated every 50 ms.
+   */
+  static final StateMonitor UNMONITORED = new StateMonitor(50);
+
+  private final Object lock = new Object();
+
+  private final AtomicLong version = new AtomicLong();
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  // 0 = only re-evaluate on changed()
+  private final long recheckInterval;
+
+  StateMonitor() {
+    this(0);
+  }
+
+  private StateMonitor(long recheckInterval) {
+    this.recheckInterval = TimeUnit.MILLISECONDS.toNanos(recheckInterval);
+  }
+
+  /**
+   * Signals a state change to the waiting threads, if any.
+   */
+  void changed() {
+    version.incrementAndGet();
+    if (waiting.get() > 0) {
+      synchronized (lock) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits until the condition holds. The condition is evaluated on the calling thread, without any
+   * lock held.
+   *
+   * @param condition the condition to wait for.
+   * @param timeout the maximum amount of time to wait, in milliseconds. Use a value of 0 to wait
+   *        indefinitely.
+   * @return true if the condition holds, false if it still doesn't once the timeout has elapsed.
+   * @throws InterruptedException if the waiting thread is interrupted.
+   */
+  boolean await(BooleanSupplier condition, long timeout) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    // registered before the version is read so that changed() can't skip the notify
+    waiting.incrementAndGet();
+    try {
+      while (true) {
+        long seen = version.get();
+        if (condition.getAsBoolean()) {
+          return true;
+        }
+
+        synchronized (lock) {
+          while (version.get() == seen) {
+            long slice = timeout == 0 ? 0 : deadline - System.nanoTime();
+            if (timeout != 0 && slice <= 0) {
+              return condition.getAsBoolean();
+            }
+
+            if (recheckInterval > 0 && (slice == 0 || slice > recheckInterval)) {
+              slice = recheckInterval;
+            }
+
+            if (slice == 0) {
+              lock.wait();
+            } else {
+              TimeUnit.NANOSECONDS.timedWait(lock, slice);
+              if (recheckInterval > 0) {
+                break;
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      waiting.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A PidfParser that reads the PIDF body with a StAX stream reader and builds the SipUnit presence
+ * objects directly, without building an intermediate object graph. It is considerably cheaper than
+ * JaxbPidfParser when a test handles many NOTIFY messages.
+ * 
+ * <p>
+ * Extension elements (elements from namespaces other than the PIDF namespace) are skipped, so the
+ * extension lists of the resulting PresenceDeviceInfo objects and of the document are always
+ * empty. Use JaxbPidfParser if your test needs them.
+ * 
+ */
+public class StaxPidfParser implements PidfParser {
+
+  private static final String PIDF_NAMESPACE = "urn:ietf:params:xml:ns:pidf";
+
+  // thread safe once configured
+  private static final XMLInputFactory inputFactory = createInputFactory();
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+
+  @Override
+  public PidfDocument parse(byte[] body) throws XMLStreamException {
+    XMLStreamReader reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(body));
+    try {
+      reader.nextTag();
+      if (!isPidfElement(reader, "presence")) {
+        throw new XMLStreamException("expected a presence root element but got "
+            + reader.getName(), reader.getLocation());
+      }
+
+      PidfDocument doc = new PidfDocument();
+      doc.setEntity(reader.getAttributeValue(null, "entity"));
+
+      while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+        if (isPidfElement(reader, "tuple")) {
+          doc.getDevices().add(parseTuple(reader));
+        } else if (isPidfElement(reader, "note")) {
+          doc.getNotes().add(parseNote(reader));
+        } else {
+          skipElement(reader);
+        }
+      }
+
+      return doc;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private PresenceDeviceInfo parseTuple(XMLStreamReader reader) throws XMLStreamException {
+    PresenceDeviceInfo dev = new PresenceDeviceInfo();
+    dev.setId(reader.getAttributeValue(null, "id"));
+    dev.setDeviceExtensions(new ArrayList<>());
+    dev.setStatusExtensions(new ArrayList<>());
+
+    List<PresenceNote> notes = new ArrayList<>();
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (isPidfElement(reader, "status")) {
+        parseStatus(reader, dev);
+      } else if (isPidfElement(reader, "contact")) {
+        String priority = reader.getAttributeValue(null, "priority");
+        if (priority != null) {
+          dev.setContactPriority(Double.parseDouble(priority.trim()));
+        }
+        dev.setContactValue(reader.getElementText().trim());
+      } else if (isPidfElement(reader, "note")) {
+        notes.add(parseNote(reader));
+      } else if (isPidfElement(reader, "timestamp")) {
+        dev.setTimestamp(DatatypeConverter.parseDateTime(reader.getElementText().trim()));
+      } else {
+        skipElement(reader);
+      }
+    }
+    dev.setDeviceNotes(notes);
+
+    return dev;
+  }
+
+  private void parseStatus(XMLStreamReader reader, PresenceDeviceInfo dev)
+      throws XMLStreamException {
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (isPidfElement(reader, "basic")) {
+        dev.setBasicStatus(reader.getElementText().trim());
+      } else {
+        skipElement(reader);
+      }
+    }
+  }
+
+  private PresenceNote parseNote(XMLStreamReader reader) throws XMLStreamException {
+    String language = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+    return new PresenceNote(language, reader.getElementText());
+  }
+
+  private static boolean isPidfElement(XMLStreamReader reader, String localName) {
+    return PIDF_NAMESPACE.equals(reader.getNamespaceURI())
+        && localName.equals(reader.getLocalName());
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+}
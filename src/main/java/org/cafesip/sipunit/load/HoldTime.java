@@ -0,0 +1,75 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.load;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The distribution the hold time of the calls placed by a LoadRunner is drawn from: how long a call
+ * stays up between being answered and the caller hanging up.
+ */
+@FunctionalInterface
+public interface HoldTime {
+
+  /**
+   * Returns the hold time of the next call.
+   *
+   * @return A non-negative duration.
+   */
+  Duration next();
+
+  /**
+   * Every call is held for the same time.
+   *
+   * @param holdTime The hold time.
+   * @return A constant HoldTime.
+   */
+  static HoldTime fixed(Duration holdTime) {
+    return () -> holdTime;
+  }
+
+  /**
+   * Hold times are spread evenly between the given bounds.
+   *
+   * @param min The shortest hold time.
+   * @param max The longest hold time.
+   * @return A uniformly distributed HoldTime.
+   */
+  static HoldTime uniform(Duration min, Duration max) {
+    long minNanos = min.toNanos();
+    long maxNanos = max.toNanos();
+    if (maxNanos < minNanos) {
+      throw new IllegalArgumentException("max hold time is shorter than min");
+    }
+    return () -> Duration.ofNanos(
+        minNanos + (long) (ThreadLocalRandom.current().nextDouble() * (maxNanos - minNanos)));
+  }
+
+  /**
+   * Hold times follow an exponential distribution with the given mean, the usual model for
+   * telephony traffic.
+   *
+   * @param mean The mean hold time.
+   * @return An exponentially distributed HoldTime.
+   */
+  static HoldTime exponential(Duration mean) {
+    double meanNanos = mean.toNanos();
+    return () -> Duration.ofNanos(
+        (long) (-meanNanos * Math.log(1.0 - ThreadLocalRandom.current().nextDouble())));
+  }
+}
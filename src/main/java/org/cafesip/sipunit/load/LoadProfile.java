@@ -0,0 +1,106 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.load;
+
+import java.time.Duration;
+
+/**
+ * The rate at which call attempts (or any other requests) are to be started over the course of a
+ * run, as a function of the time elapsed since its start. Used by a Pacer to work out the intended
+ * send time of each attempt.
+ */
+@FunctionalInterface
+public interface LoadProfile {
+
+  /**
+   * Returns the target rate at the given point of the run.
+   *
+   * @param elapsedNanos Nanoseconds since the start of the run.
+   * @return The attempts per second to start at that point; 0 or less for none.
+   */
+  double rateAt(long elapsedNanos);
+
+  /**
+   * The same rate throughout.
+   *
+   * @param perSecond The attempts per second.
+   * @return A constant LoadProfile.
+   */
+  static LoadProfile constant(double perSecond) {
+    return elapsedNanos -> perSecond;
+  }
+
+  /**
+   * A rate going linearly from one value to another, then staying at the latter.
+   *
+   * @param fromPerSecond The rate at the start of the run.
+   * @param toPerSecond The rate at the end of the ramp and after.
+   * @param rampTime How long the ramp takes.
+   * @return A ramping LoadProfile.
+   */
+  static LoadProfile ramp(double fromPerSecond, double toPerSecond, Duration rampTime) {
+    long rampNanos = rampTime.toNanos();
+    return elapsedNanos -> elapsedNanos >= rampNanos ? toPerSecond
+        : fromPerSecond + (toPerSecond - fromPerSecond) * elapsedNanos / rampNanos;
+  }
+
+  /**
+   * A rate going up (or down) by the same amount at regular intervals, ie to find the rate at which
+   * the system under test starts failing.
+   *
+   * @param startPerSecond The rate of the first step.
+   * @param stepPerSecond The rate change from one step to the next.
+   * @param stepTime How long each step lasts.
+   * @return A stepping LoadProfile.
+   */
+  static LoadProfile step(double startPerSecond, double stepPerSecond, Duration stepTime) {
+    long stepNanos = stepTime.toNanos();
+    return elapsedNanos -> startPerSecond + stepPerSecond * (elapsedNanos / stepNanos);
+  }
+
+  /**
+   * A base rate with a burst at a higher rate at some point of the run.
+   *
+   * @param basePerSecond The rate outside of the spike.
+   * @param spikePerSecond The rate during the spike.
+   * @param spikeStart When the spike starts, from the start of the run.
+   * @param spikeTime How long the spike lasts.
+   * @return A spiking LoadProfile.
+   */
+  static LoadProfile spike(double basePerSecond, double spikePerSecond, Duration spikeStart,
+      Duration spikeTime) {
+    long startNanos = spikeStart.toNanos();
+    long endNanos = startNanos + spikeTime.toNanos();
+    return elapsedNanos -> elapsedNanos >= startNanos && elapsedNanos < endNanos ? spikePerSecond
+        : basePerSecond;
+  }
+
+  /**
+   * A rate oscillating around a mean, ie to mimic daily traffic patterns in a compressed time.
+   *
+   * @param meanPerSecond The mean rate, at the start of the run.
+   * @param amplitudePerSecond How far the rate goes above and below the mean. Where that's below
+   *        zero no attempts are started.
+   * @param period The time of one full oscillation.
+   * @return A sinusoidal LoadProfile.
+   */
+  static LoadProfile sine(double meanPerSecond, double amplitudePerSecond, Duration period) {
+    double periodNanos = period.toNanos();
+    return elapsedNanos -> meanPerSecond
+        + amplitudePerSecond * Math.sin(2 * Math.PI * elapsedNanos / periodNanos);
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The outcome of a LoadRunner run: how many calls were attempted, answered and failed, and how long
+ * call setup took. Obtained from LoadRunner.run().
+ */
+public class LoadReport {
+
+  private final long attempted;
+
+  private final long answered;
+
+  private final long failed;
+
+  private final long disconnectFailed;
+
+  private final long unfinished;
+
+  private final long skipped;
+
+  private final Duration elapsed;
+
+  private final Duration maxSendLag;
+
+  // nanoseconds, sorted
+  private final long[] setupLatencies;
+
+  LoadReport(long attempted, long answered, long failed, long disconnectFailed, long unfinished,
+      long skipped, Duration elapsed, Duration maxSendLag, long[] setupLatencies) {
+    this.attempted = attempted;
+    this.answered = answered;
+    this.failed = failed;
+    this.disconnectFailed = disconnectFailed;
+    this.unfinished = unfinished;
+    this.skipped = skipped;
+    this.elapsed = elapsed;
+    this.maxSendLag = maxSendLag;
+    this.setupLatencies = setupLatencies.clone();
+    Arrays.sort(this.setupLatencies);
+  }
+
+  /**
+   * Returns the number of calls for which an INVITE was sent or attempted.
+   *
+   * @return The attempted call count.
+   */
+  public long getAttempted() {
+    return attempted;
+  }
+
+  /**
+   * Returns the number of calls answered with an OK.
+   *
+   * @return The answered call count.
+   */
+  public long getAnswered() {
+    return answered;
+  }
+
+  /**
+   * Returns the number of calls that weren't answered: the INVITE couldn't be sent, was rejected
+   * or timed out, or the answer didn't come within the runner's answer timeout.
+   *
+   * @return The failed call count.
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * Returns the number of answered calls for which the BYE failed or got an error response.
+   *
+   * @return The failed disconnect count.
+   */
+  public long getDisconnectFailed() {
+    return disconnectFailed;
+  }
+
+  /**
+   * Returns the number of calls still in progress when the runner stopped waiting for them (see
+   * LoadRunner.setDrainTimeout()).
+   *
+   * @return The unfinished call count.
+   */
+  public long getUnfinished() {
+    return unfinished;
+  }
+
+  /**
+   * Returns the number of scheduled calls that weren't attempted because call generation fell
+   * further behind than the runner's max burst (see LoadRunner.setMaxBurst()).
+   *
+   * @return The skipped call count.
+   */
+  public long getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Returns the longest delay between the time a call was scheduled to start and the time its
+   * INVITE was actually sent. A large value means the load generator itself couldn't keep up.
+   *
+   * @return The maximum send lag.
+   */
+  public Duration getMaxSendLag() {
+    return maxSendLag;
+  }
+
+  /**
+   * Returns the time from the first call attempt until the last call ended or the drain timeout
+   * expired.
+   *
+   * @return The duration of the run.
+   */
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * Returns the rate calls were actually attempted at over the run.
+   *
+   * @return Attempted calls per second of elapsed time.
+   */
+  public double getCallsPerSecond() {
+    long nanos = elapsed.toNanos();
+    return nanos == 0 ? 0 : attempted * 1e9 / nanos;
+  }
+
+  /**
+   * Returns the given percentile of the call setup latency, from the time the call was scheduled
+   * to start to receiving the OK, over the answered calls. Any delay in sending the INVITE (see
+   * getMaxSendLag()) is included, so the latency is the one a caller would have seen.
+   *
+   * @param percentile A percentile between 0 and 100, ie 50 for the median or 99.9.
+   * @return The setup latency at the percentile, or Duration.ZERO if no call was answered.
+   */
+  public Duration getSetupLatency(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+    }
+    if (setupLatencies.length == 0) {
+      return Duration.ZERO;
+    }
+
+    int index = (int) Math.ceil(percentile / 100 * setupLatencies.length) - 1;
+    return Duration.ofNanos(setupLatencies[Math.max(index, 0)]);
+  }
+
+  /**
+   * Returns the mean call setup latency over the answered calls.
+   *
+   * @return The mean setup latency, or Duration.ZERO if no call was answered.
+   */
+  public Duration getMeanSetupLatency() {
+    if (setupLatencies.length == 0) {
+      return Duration.ZERO;
+    }
+
+    double sum = 0;
+    for (long latency : setupLatencies) {
+      sum += latency;
+    }
+    return Duration.ofNanos((long) (sum / setupLatencies.length));
+  }
+
+  /**
+   * Returns the longest call setup latency over the answered calls.
+   *
+   * @return The maximum setup latency, or Duration.ZERO if no call was answered.
+   */
+  public Duration getMaxSetupLatency() {
+    return getSetupLatency(100);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "attempted=%d answered=%d failed=%d disconnectFailed=%d unfinished=%d skipped=%d"
+            + " elapsed=%dms cps=%.1f setup(ms) mean=%.3f p50=%.3f p99=%.3f max=%.3f",
+        attempted, answered, failed, disconnectFailed, unfinished, skipped, elapsed.toMillis(),
+        getCallsPerSecond(), millis(getMeanSetupLatency()), millis(getSetupLatency(50)),
+        millis(getSetupLatency(99)), millis(getMaxSetupLatency()));
+  }
+
+  private static double millis(Duration duration) {
+    return duration.toNanos() / 1e6;
+  }
+}
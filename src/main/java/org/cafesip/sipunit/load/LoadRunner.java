@@ -0,0 +1,426 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.load;
+
+import org.cafesip.sipunit.SipCall;
+import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Places calls from a pool of caller SipPhones to a pool of callee SipPhones at a target rate for
+ * a given time, and reports how many were attempted, answered and failed and how long call setup
+ * took. Each call is held for a time drawn from a HoldTime distribution and then hung up by the
+ * caller. The callees answer every call automatically and respond to the BYE.
+ *
+ * <pre>
+ * LoadRunner runner = new LoadRunner(callers, callees);
+ * runner.setViaNonProxyRoute(&quot;127.0.0.1:5060;lr/udp&quot;);
+ * runner.setCallsPerSecond(50);
+ * runner.setHoldTime(HoldTime.exponential(Duration.ofSeconds(2)));
+ * runner.setDuration(Duration.ofSeconds(30));
+ * LoadReport report = runner.run();
+ * </pre>
+ *
+ * <p>
+ * Calls are generated open-loop by a Pacer, following a LoadProfile (a constant rate by default):
+ * calls are started at their scheduled time whether or not the previous ones have been answered,
+ * so a slow system under test doesn't lower the offered load, and setup latency is measured from
+ * the time a call was meant to be started so that it includes any delay in starting it. No thread
+ * is held per call - calls are driven by the non-blocking SipCall methods
+ * (initiateOutgoingCallAsync(), disconnectAsync(), answerAsync(), respondToDisconnectAsync()) and
+ * one scheduler thread starts calls and hangs them up. Setting a dispatch executor on the
+ * SipStack(s) (SipStack.setDispatchExecutor()) before creating the phones keeps the JAIN-SIP
+ * threads free under load.
+ *
+ * <p>
+ * Each callee must be reachable at its address of record from the callers, ie through a proxy it
+ * has registered with, or on a loopback stack via setViaNonProxyRoute() and SipPhone.setLoopback().
+ * A LoadRunner can be run more than once, but not concurrently.
+ */
+public class LoadRunner {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadRunner.class);
+
+  private final List<SipPhone> callers;
+
+  private final List<SipPhone> callees;
+
+  private String viaNonProxyRoute;
+
+  private LoadProfile loadProfile = LoadProfile.constant(10);
+
+  private int maxBurst;
+
+  private HoldTime holdTime = HoldTime.fixed(Duration.ofSeconds(1));
+
+  private Duration duration = Duration.ofSeconds(10);
+
+  private Duration answerTimeout = Duration.ofSeconds(32);
+
+  private Duration drainTimeout = Duration.ofSeconds(60);
+
+  private volatile Run current;
+
+  /**
+   * A constructor for this class.
+   *
+   * @param callers The phones to place calls from, in turn.
+   * @param callees The phones to call, in turn. They must not be used for anything else during a
+   *        run.
+   */
+  public LoadRunner(List<SipPhone> callers, List<SipPhone> callees) {
+    if (callers.isEmpty() || callees.isEmpty()) {
+      throw new IllegalArgumentException("At least one caller and one callee are needed");
+    }
+    this.callers = new ArrayList<>(callers);
+    this.callees = new ArrayList<>(callees);
+  }
+
+  /**
+   * Sets the route of the calls' INVITEs, as for SipCall.initiateOutgoingCall().
+   *
+   * @param viaNonProxyRoute The node to send the INVITEs to, as "hostaddress:port;parms/transport"
+   *        i.e. 129.1.22.333:5060;lr/UDP, or null (the default) for the callers' proxy.
+   */
+  public void setViaNonProxyRoute(String viaNonProxyRoute) {
+    this.viaNonProxyRoute = viaNonProxyRoute;
+  }
+
+  /**
+   * Sets the rate at which new calls are started.
+   *
+   * @param callsPerSecond The target calls per second (default 10).
+   */
+  public void setCallsPerSecond(double callsPerSecond) {
+    if (!(callsPerSecond > 0)) {
+      throw new IllegalArgumentException("calls per second must be positive: " + callsPerSecond);
+    }
+    this.loadProfile = LoadProfile.constant(callsPerSecond);
+  }
+
+  /**
+   * Sets how the rate at which new calls are started varies over the run, instead of a constant
+   * rate.
+   *
+   * @param loadProfile The calls per second over time, ie LoadProfile.ramp().
+   */
+  public void setLoadProfile(LoadProfile loadProfile) {
+    this.loadProfile = loadProfile;
+  }
+
+  /**
+   * Limits how many calls are started back to back when call generation has fallen behind, see
+   * Pacer.setMaxBurst(). The calls skipped are reported by LoadReport.getSkipped().
+   *
+   * @param maxBurst The most calls due at once, or 0 (the default) for no limit.
+   */
+  public void setMaxBurst(int maxBurst) {
+    this.maxBurst = maxBurst;
+  }
+
+  /**
+   * Sets the distribution of the time calls are held between being answered and hung up.
+   *
+   * @param holdTime The hold time distribution (default a fixed second).
+   */
+  public void setHoldTime(HoldTime holdTime) {
+    this.holdTime = holdTime;
+  }
+
+  /**
+   * Sets for how long new calls are started.
+   *
+   * @param duration The call generation time (default 10 seconds).
+   */
+  public void setDuration(Duration duration) {
+    this.duration = duration;
+  }
+
+  /**
+   * Sets how long a call may take to be answered before it is counted as failed.
+   *
+   * @param answerTimeout The call setup time limit (default 32 seconds, the INVITE transaction
+   *        timeout).
+   */
+  public void setAnswerTimeout(Duration answerTimeout) {
+    this.answerTimeout = answerTimeout;
+  }
+
+  /**
+   * Sets how long run() waits, once call generation is over, for the calls in progress to end.
+   * Those that haven't by then are counted as unfinished and disposed of.
+   *
+   * @param drainTimeout The wait for calls in progress (default 60 seconds).
+   */
+  public void setDrainTimeout(Duration drainTimeout) {
+    this.drainTimeout = drainTimeout;
+  }
+
+  /**
+   * Generates calls for the configured duration, then waits for the calls in progress to end.
+   *
+   * @return The report of the run.
+   * @throws InterruptedException if interrupted while waiting for the run to end. The run is
+   *         stopped and its calls disposed of.
+   * @throws IllegalStateException if this runner is already running.
+   */
+  public LoadReport run() throws InterruptedException {
+    Run run;
+    synchronized (this) {
+      if (current != null) {
+        throw new IllegalStateException("LoadRunner already running");
+      }
+      run = new Run();
+      current = run;
+    }
+
+    try {
+      return run.execute();
+    } catch (InterruptedException e) {
+      run.dispose();
+      throw e;
+    } finally {
+      current = null;
+    }
+  }
+
+  /**
+   * Ends call generation of the current run early. The run still waits for the calls in progress
+   * to end, see setDrainTimeout().
+   */
+  public void stop() {
+    Run run = current;
+    if (run != null) {
+      run.stopGenerating();
+    }
+  }
+
+  private class Run {
+
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "sipunit-load");
+          thread.setDaemon(true);
+          return thread;
+        });
+
+    private final HoldTime holdTime = LoadRunner.this.holdTime;
+
+    private final String viaNonProxyRoute = LoadRunner.this.viaNonProxyRoute;
+
+    private final long answerTimeoutNanos = answerTimeout.toNanos();
+
+    private final Pacer pacer = new Pacer(loadProfile, duration);
+
+    private final AtomicLong maxSendLag = new AtomicLong();
+
+    private final AtomicLong attempted = new AtomicLong();
+
+    private final AtomicLong answered = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong disconnectFailed = new AtomicLong();
+
+    // caller calls not over yet
+    private final Set<SipCall> active = ConcurrentHashMap.newKeySet();
+
+    // callee side: the answer waiting for the next INVITE per callee, then the calls' BYE waits
+    private final Set<CompletableFuture<SipRequest>> calleeWaits = ConcurrentHashMap.newKeySet();
+
+    private final CountDownLatch generationOver = new CountDownLatch(1);
+
+    private volatile boolean generating = true;
+
+    private long[] setupLatencies = new long[1024];
+
+    private int setupLatencyCount;
+
+    private volatile ScheduledFuture<?> generator;
+
+    LoadReport execute() throws InterruptedException {
+      callees.forEach(this::arm);
+
+      if (maxBurst > 0) {
+        pacer.setMaxBurst(maxBurst);
+      }
+      pacer.start();
+      long start = pacer.getStartTime();
+      scheduler.execute(this::generate);
+
+      try {
+        generationOver.await();
+        long waitEnd = System.nanoTime() + drainTimeout.toNanos();
+        synchronized (this) {
+          while (!active.isEmpty() && System.nanoTime() < waitEnd) {
+            TimeUnit.NANOSECONDS.timedWait(this, waitEnd - System.nanoTime());
+          }
+        }
+      } finally {
+        stopGenerating();
+        scheduler.shutdownNow();
+      }
+
+      long elapsed = System.nanoTime() - start;
+      long unfinished = active.size();
+      dispose();
+
+      synchronized (this) {
+        return new LoadReport(attempted.get(), answered.get(), failed.get(), disconnectFailed.get(),
+            unfinished, pacer.getSkipped(), Duration.ofNanos(elapsed),
+            Duration.ofNanos(maxSendLag.get()), Arrays.copyOf(setupLatencies, setupLatencyCount));
+      }
+    }
+
+    void stopGenerating() {
+      generating = false;
+      ScheduledFuture<?> task = generator;
+      if (task != null) {
+        task.cancel(false);
+      }
+      generationOver.countDown();
+    }
+
+    // hangs up the calls still in progress and stops answering
+    void dispose() {
+      for (SipCall call : new ArrayList<>(active)) {
+        call.dispose();
+      }
+      for (CompletableFuture<SipRequest> wait : new ArrayList<>(calleeWaits)) {
+        wait.cancel(false);
+      }
+    }
+
+    // starts the calls that are due, then sleeps until the next one is
+    private void generate() {
+      while (generating) {
+        if (!pacer.hasNext()) {
+          stopGenerating();
+          return;
+        }
+
+        long delay = pacer.peek() - System.nanoTime();
+        if (delay > 0) {
+          generator = scheduler.schedule(this::generate, delay, TimeUnit.NANOSECONDS);
+          return;
+        }
+
+        startCall(pacer.next());
+      }
+    }
+
+    private void startCall(long intended) {
+      long n = attempted.getAndIncrement();
+      SipPhone caller = callers.get((int) (n % callers.size()));
+      SipPhone callee = callees.get((int) (n % callees.size()));
+
+      SipCall call = caller.createSipCall();
+      active.add(call);
+
+      long lag = System.nanoTime() - intended;
+      maxSendLag.accumulateAndGet(lag, Math::max);
+      call.initiateOutgoingCallAsync(callee.getAddress().getURI().toString(), viaNonProxyRoute)
+          .orTimeout(answerTimeoutNanos, TimeUnit.NANOSECONDS).whenComplete((answeredCall, ex) -> {
+            if (ex != null) {
+              LOG.debug("Call {} failed: {}", n, ex.toString());
+              failed.incrementAndGet();
+              end(call);
+              return;
+            }
+
+            recordSetupLatency(System.nanoTime() - intended);
+            answered.incrementAndGet();
+            try {
+              scheduler.schedule(() -> hangUp(call), holdTime.next().toNanos(),
+                  TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+              // the run is over, the call is disposed of as unfinished
+            }
+          });
+    }
+
+    private void hangUp(SipCall call) {
+      call.disconnectAsync().whenComplete((response, ex) -> {
+        if (ex != null || response.getStatusCode() / 100 != 2) {
+          disconnectFailed.incrementAndGet();
+        }
+        end(call);
+      });
+    }
+
+    private void end(SipCall call) {
+      call.dispose();
+      active.remove(call);
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+
+    private void arm(SipPhone callee) {
+      SipCall call = callee.createSipCall();
+      CompletableFuture<SipRequest> answer = call.answerAsync();
+      calleeWaits.add(answer);
+
+      // completes on the callee's dispatch, before its next INVITE is delivered
+      answer.whenComplete((invite, ex) -> {
+        calleeWaits.remove(answer);
+        if (answer.isCancelled()) {
+          call.dispose();
+          return;
+        }
+
+        arm(callee);
+        if (ex != null) {
+          LOG.debug("Callee {} couldn't answer: {}", callee.getAddress(), ex.toString());
+          call.dispose();
+          return;
+        }
+
+        CompletableFuture<SipRequest> bye = call.respondToDisconnectAsync();
+        calleeWaits.add(bye);
+        bye.whenComplete((request, e) -> {
+          calleeWaits.remove(bye);
+          call.dispose();
+        });
+      });
+    }
+
+    private synchronized void recordSetupLatency(long nanos) {
+      if (setupLatencyCount == setupLatencies.length) {
+        setupLatencies = Arrays.copyOf(setupLatencies, setupLatencyCount * 2);
+      }
+      setupLatencies[setupLatencyCount++] = nanos;
+    }
+  }
+}
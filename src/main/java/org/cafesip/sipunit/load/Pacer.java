@@ -0,0 +1,269 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.load;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Works out when each attempt of an open-loop load run is meant to be sent, following a
+ * LoadProfile for a given duration. The schedule doesn't depend on how fast the system under test
+ * responds: a driver that falls behind gets the attempts it missed straight away, each with its
+ * original intended send time. Latencies measured from the intended send time (rather than from
+ * when the driver actually got round to sending) thus include the queueing delay a slow system
+ * causes, instead of hiding it - the "coordinated omission" of closed-loop load loops.
+ *
+ * <p>
+ * A driver loops on awaitNext(), or on hasNext()/peek()/next() when it schedules its own wake-ups:
+ *
+ * <pre>
+ * Pacer pacer = new Pacer(LoadProfile.ramp(1, 50, Duration.ofSeconds(20)), Duration.ofMinutes(1));
+ * pacer.start();
+ * while (pacer.hasNext()) {
+ *   long intended = pacer.awaitNext();
+ *   SipCall call = phone.createSipCall();
+ *   call.initiateOutgoingCallAsync(to, route).thenRun(
+ *       () -&gt; record(System.nanoTime() - intended));
+ * }
+ * </pre>
+ *
+ * <p>
+ * Pacing works like a token bucket filled at the profile's rate, one token per attempt. By default
+ * the bucket is unbounded, which gives a strict interval schedule with full catch-up. With
+ * setMaxBurst(), a driver that falls further behind than that many attempts loses the oldest ones
+ * instead (counted by getSkipped()), to protect the system under test from a burst once the driver
+ * recovers.
+ *
+ * <p>
+ * Times are System.nanoTime() values. A Pacer may be shared by several driver threads.
+ */
+public class Pacer {
+
+  // resolution of the rate integration, a rate is assumed constant over that time
+  private static final long STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final LoadProfile profile;
+
+  private final long durationNanos;
+
+  private int maxBurst = Integer.MAX_VALUE;
+
+  private boolean started;
+
+  private long startTime;
+
+  // elapsed nanos of the next attempt's intended send time, durationNanos or more when done
+  private long nextElapsed;
+
+  private long scheduled;
+
+  private long skipped;
+
+  /**
+   * A constructor for this class.
+   *
+   * @param profile The rate to pace attempts at over time.
+   * @param duration How long attempts are paced for, from start().
+   */
+  public Pacer(LoadProfile profile, Duration duration) {
+    this.profile = profile;
+    this.durationNanos = duration.toNanos();
+  }
+
+  /**
+   * Limits how many missed attempts a driver that has fallen behind gets at once. The older ones
+   * are skipped. Call this before start().
+   *
+   * @param maxBurst The most attempts due at any time, at least 1 (default unlimited).
+   */
+  public synchronized void setMaxBurst(int maxBurst) {
+    if (maxBurst < 1) {
+      throw new IllegalArgumentException("max burst must be at least 1: " + maxBurst);
+    }
+    this.maxBurst = maxBurst;
+  }
+
+  /**
+   * Starts the schedule now. Called by the other methods if not called beforehand.
+   */
+  public synchronized void start() {
+    start(System.nanoTime());
+  }
+
+  /**
+   * Starts the schedule at the given time.
+   *
+   * @param startTime The start of the run, a System.nanoTime() value.
+   * @throws IllegalStateException if the schedule has already started.
+   */
+  public synchronized void start(long startTime) {
+    if (started) {
+      throw new IllegalStateException("Pacer already started");
+    }
+    started = true;
+    this.startTime = startTime;
+    nextElapsed = first();
+  }
+
+  /**
+   * Returns when the schedule started.
+   *
+   * @return The start time, a System.nanoTime() value.
+   */
+  public synchronized long getStartTime() {
+    ensureStarted();
+    return startTime;
+  }
+
+  /**
+   * Tells whether there are attempts left to send.
+   *
+   * @return false once the duration has been covered.
+   */
+  public synchronized boolean hasNext() {
+    ensureStarted();
+    return nextElapsed < durationNanos;
+  }
+
+  /**
+   * Returns the intended send time of the next attempt without taking it. It may be in the past if
+   * the driver is behind.
+   *
+   * @return The intended send time, a System.nanoTime() value.
+   * @throws NoSuchElementException if there are no attempts left.
+   */
+  public synchronized long peek() {
+    if (!hasNext()) {
+      throw new NoSuchElementException("Pacer schedule is over");
+    }
+    return startTime + nextElapsed;
+  }
+
+  /**
+   * Takes the next attempt, whether or not its intended send time has come. Attempts beyond the
+   * max burst are skipped first.
+   *
+   * @return The intended send time of the attempt, a System.nanoTime() value. Latencies are to be
+   *         measured from it.
+   * @throws NoSuchElementException if there are no attempts left.
+   */
+  public synchronized long next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException("Pacer schedule is over");
+    }
+
+    if (maxBurst != Integer.MAX_VALUE) {
+      skipOverflow(System.nanoTime() - startTime);
+    }
+
+    long intended = nextElapsed;
+    nextElapsed = after(nextElapsed);
+    scheduled++;
+    return startTime + intended;
+  }
+
+  /**
+   * Waits for the intended send time of the next attempt, if it hasn't come yet, and takes it.
+   *
+   * @return The intended send time of the attempt, a System.nanoTime() value.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws NoSuchElementException if there are no attempts left.
+   */
+  public long awaitNext() throws InterruptedException {
+    long intended = next();
+
+    long wait;
+    while ((wait = intended - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(this, wait);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    return intended;
+  }
+
+  /**
+   * Returns the number of attempts taken so far.
+   *
+   * @return The count of next()/awaitNext() calls that returned.
+   */
+  public synchronized long getScheduled() {
+    return scheduled;
+  }
+
+  /**
+   * Returns the number of attempts skipped because the driver fell more than the max burst behind.
+   *
+   * @return The skipped attempt count, always 0 without setMaxBurst().
+   */
+  public synchronized long getSkipped() {
+    return skipped;
+  }
+
+  private void ensureStarted() {
+    if (!started) {
+      start();
+    }
+  }
+
+  // drops the oldest due attempts until no more than maxBurst are due
+  private void skipOverflow(long nowElapsed) {
+    while (nextElapsed <= nowElapsed) {
+      long last = nextElapsed;
+      for (int i = 0; i < maxBurst && last <= nowElapsed && last < durationNanos; i++) {
+        last = after(last);
+      }
+      if (last > nowElapsed || last >= durationNanos) {
+        return;
+      }
+
+      nextElapsed = after(nextElapsed);
+      skipped++;
+    }
+  }
+
+  // elapsed time of the first attempt: as soon as the rate is positive
+  private long first() {
+    for (long t = 0; t < durationNanos; t += STEP_NANOS) {
+      if (profile.rateAt(t) > 0) {
+        return t;
+      }
+    }
+    return durationNanos;
+  }
+
+  /*
+   * Returns the elapsed time of the attempt following the one at the given elapsed time: the
+   * time by which the profile's rate, integrated from there, adds up to one more attempt.
+   */
+  private long after(long elapsed) {
+    double credit = 0;
+    for (long t = elapsed; t < durationNanos; t += STEP_NANOS) {
+      double rate = profile.rateAt(t);
+      if (rate > 0) {
+        double remaining = (1 - credit) / rate * TimeUnit.SECONDS.toNanos(1);
+        if (remaining <= STEP_NANOS) {
+          return t + (long) remaining;
+        }
+        credit += rate * STEP_NANOS / TimeUnit.SECONDS.toNanos(1);
+      }
+    }
+    return durationNanos;
+  }
+}
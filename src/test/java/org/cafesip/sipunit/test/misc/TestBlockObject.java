@@ -0,0 +1,140 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.cafesip.sipunit.BlockObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EventObject;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the hand-off of events through a BlockObject.
+ */
+public class TestBlockObject {
+
+  private static EventObject event(int n) {
+    return new EventObject(n);
+  }
+
+  @Test
+  public void testEventsKeptUntilTaken() throws Exception {
+    BlockObject block = new BlockObject();
+    EventObject first = event(1);
+    EventObject second = event(2);
+    block.addEvent(first);
+    block.addEvent(second);
+
+    assertSame(first, block.takeEvent(100));
+    assertSame(second, block.takeEvent(100));
+    assertTrue(block.isEmpty());
+  }
+
+  @Test
+  public void testWaiterWokenByEvent() throws Exception {
+    BlockObject block = new BlockObject();
+    EventObject event = event(1);
+    CompletableFuture.runAsync(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      block.addEvent(event);
+    });
+
+    // woken by the event rather than by the timeout
+    long start = System.nanoTime();
+    assertSame(event, block.takeEvent(5000));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    BlockObject block = new BlockObject();
+
+    long start = System.nanoTime();
+    assertNull(block.takeEvent(200));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 190);
+  }
+
+  @Test
+  public void testEachEventTakenOnce() throws Exception {
+    BlockObject block = new BlockObject();
+    List<CompletableFuture<EventObject>> takers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      takers.add(CompletableFuture.supplyAsync(() -> {
+        try {
+          return block.takeEvent(5000);
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }));
+    }
+
+    for (int i = 0; i < 4; i++) {
+      block.addEvent(event(i));
+    }
+
+    Set<Object> taken = new HashSet<>();
+    for (CompletableFuture<EventObject> taker : takers) {
+      taken.add(taker.get(5, TimeUnit.SECONDS).getSource());
+    }
+    assertEquals(4, taken.size());
+    assertTrue(block.isEmpty());
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    BlockObject block = new BlockObject();
+    block.addEvent(event(1));
+    block.clear();
+    assertNull(block.takeEvent(50));
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testWaitForEventWokenByAddEvent() throws Exception {
+    BlockObject block = new BlockObject();
+    EventObject event = event(1);
+    CompletableFuture.runAsync(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      block.addEvent(event);
+    });
+
+    long start = System.nanoTime();
+    block.waitForEvent(5000);
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+
+    // the event is left to be taken
+    assertSame(event, block.takeEvent(0));
+  }
+}
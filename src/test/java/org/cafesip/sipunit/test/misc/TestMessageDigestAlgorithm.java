@@ -0,0 +1,101 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.misc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.cafesip.sipunit.MessageDigestAlgorithm;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks the digest responses computed by MessageDigestAlgorithm against the examples given in
+ * rfc2617 and rfc7616.
+ */
+public class TestMessageDigestAlgorithm {
+
+  private static final String RFC7616_NONCE = "7ypf/xlj9XXwfDPEoM4URrv/xwf94BcCAzFZH4GiTo0v";
+
+  private static final String RFC7616_CNONCE = "f2/wE4q74E6zIJEtWaHKaf5wv/H5QzzpXusqGemxURZJ";
+
+  private static String rfc7616Response(String algorithm) {
+    return MessageDigestAlgorithm.calculateResponse(algorithm, "Mufasa", "http-auth@example.org",
+        "Circle of Life", RFC7616_NONCE, "00000001", RFC7616_CNONCE, "GET", "/dir/index.html",
+        (String) null, "auth");
+  }
+
+  @Test
+  public void testRfc2617Md5() {
+    assertEquals("6629fae49393a05397450978507c4ef1",
+        MessageDigestAlgorithm.calculateResponse("MD5", "Mufasa", "testrealm@host.com",
+            "Circle Of Life", "dcd98b7102dd2f0e8b11d0f600bfb0c093", "00000001", "0a4f113b", "GET",
+            "/dir/index.html", (String) null, "auth"));
+  }
+
+  @Test
+  public void testRfc7616Md5() {
+    assertEquals("8ca523f5e9506fed4657c9700eebdbec", rfc7616Response("MD5"));
+    assertEquals("8ca523f5e9506fed4657c9700eebdbec", rfc7616Response(null));
+  }
+
+  @Test
+  public void testRfc7616Sha256() {
+    assertEquals("753927fa0e85d155564e2e272a28d1802ca10daf4496794697cf8db5856cb6c1",
+        rfc7616Response("SHA-256"));
+  }
+
+  @Test
+  public void testSha256Sess() {
+    assertEquals("2fd51b3a77ad75bad6afad6003e818d767133c46d9e2749e7f5232ae1ea3efd7",
+        rfc7616Response("SHA-256-sess"));
+  }
+
+  @Test
+  public void testSha512256() {
+    assertEquals("430d05014cecc49cab6fbe03176d41a1da86cbfe24a16580e22aaad928d960d0",
+        rfc7616Response("SHA-512-256"));
+    assertEquals("3f2a34f923c38b0fb26dce2fdfc2ce326c23cecf86fbb1444f3e51fbbc2cb92e",
+        rfc7616Response("SHA-512-256-sess"));
+  }
+
+  @Test
+  public void testNoQop() {
+    assertEquals("bf57e4e0d0bffc0fbaedce64d59add5e",
+        MessageDigestAlgorithm.calculateResponse("MD5", "bob", "biloxi.com", "zanzibar",
+            "dcd98b7102dd2f0e8b11d0f600bfb0c093", "", "", "INVITE", "sip:bob@biloxi.com",
+            (String) null, ""));
+  }
+
+  @Test
+  public void testAuthIntBody() {
+    String body = "v=0\r\n";
+    String expected = "77226bb823dc077c1ad3537415667bae";
+
+    assertEquals(expected, MessageDigestAlgorithm.calculateResponse("MD5", "bob", "biloxi.com",
+        "zanzibar", "dcd98b7102dd2f0e8b11d0f600bfb0c093", "00000001", "0a4f113b", "INVITE",
+        "sip:bob@biloxi.com", body, "auth-int"));
+    assertEquals(expected, MessageDigestAlgorithm.calculateResponse("MD5", "bob", "biloxi.com",
+        "zanzibar", "dcd98b7102dd2f0e8b11d0f600bfb0c093", "00000001", "0a4f113b", "INVITE",
+        "sip:bob@biloxi.com", body.getBytes(StandardCharsets.UTF_8), "auth-int"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedAlgorithm() {
+    rfc7616Response("SHA-1");
+  }
+}
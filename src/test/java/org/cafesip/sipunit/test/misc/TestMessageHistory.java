@@ -0,0 +1,90 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.cafesip.sipunit.HistoryPolicy;
+import org.cafesip.sipunit.MessageHistory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Checks what MessageHistory retains under each HistoryPolicy.
+ */
+public class TestMessageHistory {
+
+  private static MessageHistory<String> history(HistoryPolicy policy, String... items) {
+    MessageHistory<String> history = new MessageHistory<String>(policy) {
+    };
+    history.addAll(Arrays.asList(items));
+    return history;
+  }
+
+  @Test
+  public void testFull() {
+    MessageHistory<String> history = history(HistoryPolicy.FULL, "a", "b", "c", "d", "e");
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), new ArrayList<>(history));
+    assertEquals("e", history.getLast());
+    assertEquals(0, history.getDiscardCount());
+  }
+
+  @Test
+  public void testLastN() {
+    MessageHistory<String> history = history(HistoryPolicy.lastN(3), "a", "b", "c", "d", "e");
+    assertEquals(Arrays.asList("c", "d", "e"), new ArrayList<>(history));
+    assertEquals("c", history.get(0));
+    assertEquals("e", history.get(2));
+    assertEquals("e", history.getLast());
+    assertEquals(2, history.getDiscardCount());
+
+    history.add("f");
+    assertEquals(Arrays.asList("d", "e", "f"), new ArrayList<>(history));
+  }
+
+  @Test
+  public void testNone() {
+    MessageHistory<String> history = history(HistoryPolicy.NONE, "a", "b");
+    assertTrue(history.isEmpty());
+    assertEquals("b", history.getLast());
+    assertEquals(2, history.getDiscardCount());
+
+    history.clear();
+    assertNull(history.getLast());
+  }
+
+  @Test
+  public void testSetPolicy() {
+    MessageHistory<String> history = history(HistoryPolicy.lastN(3), "a", "b", "c", "d");
+    history.setPolicy(HistoryPolicy.lastN(2));
+    assertEquals(Arrays.asList("c", "d"), new ArrayList<>(history));
+
+    history.setPolicy(HistoryPolicy.FULL);
+    history.add("e");
+    assertEquals(Arrays.asList("c", "d", "e"), new ArrayList<>(history));
+    assertEquals(2, history.getDiscardCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLastNRequiresPositiveCount() {
+    HistoryPolicy.lastN(0);
+  }
+}
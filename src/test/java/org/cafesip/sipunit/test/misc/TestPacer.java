@@ -0,0 +1,124 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.cafesip.sipunit.load.LoadProfile;
+import org.cafesip.sipunit.load.Pacer;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the intended send times a Pacer hands out for various load profiles.
+ */
+public class TestPacer {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static long count(Pacer pacer) {
+    long count = 0;
+    while (pacer.hasNext()) {
+      pacer.next();
+      count++;
+    }
+    return count;
+  }
+
+  @Test
+  public void testConstantRateIsEvenlySpaced() {
+    Pacer pacer = new Pacer(LoadProfile.constant(100), Duration.ofSeconds(1));
+    pacer.start(0);
+
+    long previous = pacer.next();
+    assertEquals(0, previous);
+    while (pacer.hasNext()) {
+      long intended = pacer.next();
+      assertEquals(10 * MS, intended - previous, MS / 100);
+      previous = intended;
+    }
+    assertEquals(100, pacer.getScheduled(), 1);
+  }
+
+  @Test
+  public void testScheduleIgnoresTheDriver() {
+    // started a second ago: the driver is behind, all the missed attempts are due right away
+    // with their original times
+    Pacer pacer = new Pacer(LoadProfile.constant(50), Duration.ofSeconds(2));
+    long start = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+    pacer.start(start);
+
+    assertEquals(start, pacer.next());
+    assertEquals(start + 20 * MS, pacer.next(), MS / 100);
+    assertEquals(0, pacer.getSkipped());
+  }
+
+  @Test
+  public void testMaxBurstSkipsTheOldest() {
+    Pacer pacer = new Pacer(LoadProfile.constant(100), Duration.ofSeconds(10));
+    pacer.setMaxBurst(5);
+    long start = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+    pacer.start(start);
+
+    long intended = pacer.next();
+    assertTrue(pacer.getSkipped() >= 95);
+    assertTrue(intended - start >= 950 * MS);
+  }
+
+  @Test
+  public void testRampAddsUp() {
+    // 0 to 100 per second over 10 seconds: 500 attempts
+    Pacer pacer = new Pacer(LoadProfile.ramp(0, 100, Duration.ofSeconds(10)),
+        Duration.ofSeconds(10));
+    pacer.start(0);
+    assertEquals(500, count(pacer), 5);
+  }
+
+  @Test
+  public void testStepAndSpike() {
+    Pacer step = new Pacer(LoadProfile.step(10, 10, Duration.ofSeconds(1)), Duration.ofSeconds(3));
+    step.start(0);
+    assertEquals(10 + 20 + 30, count(step), 2);
+
+    Pacer spike = new Pacer(
+        LoadProfile.spike(10, 100, Duration.ofSeconds(1), Duration.ofMillis(500)),
+        Duration.ofSeconds(2));
+    spike.start(0);
+    assertEquals(15 + 50, count(spike), 2);
+  }
+
+  @Test
+  public void testSineSkipsNegativeRates() {
+    // mean 0: half of each period has no attempts at all
+    Pacer pacer = new Pacer(LoadProfile.sine(0, 100, Duration.ofSeconds(2)),
+        Duration.ofSeconds(2));
+    pacer.start(0);
+
+    long count = 0;
+    while (pacer.hasNext()) {
+      assertTrue(pacer.next() < TimeUnit.SECONDS.toNanos(1));
+      count++;
+    }
+    // integral of 100 sin over a half period of 1 second: 200 / pi
+    assertEquals(64, count, 2);
+    assertFalse(pacer.hasNext());
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.misc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.cafesip.sipunit.PidfDocument;
+import org.cafesip.sipunit.PidfParser;
+import org.cafesip.sipunit.PresenceDeviceInfo;
+import org.cafesip.sipunit.PresenceNote;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Checks that a PidfParser can be implemented outside of the SipUnit package.
+ */
+public class TestPidfParserExtension {
+
+  // a stand-in for a real parser: the body is the device's basic status
+  private static final PidfParser PARSER = body -> {
+    PresenceDeviceInfo device = new PresenceDeviceInfo();
+    device.setId("1");
+    device.setBasicStatus(new String(body, StandardCharsets.UTF_8));
+    device.setContactValue("sip:becky@nist.gov");
+    device.setContactPriority(0.5);
+    device.setDeviceNotes(Collections.singletonList(new PresenceNote("en", "device note")));
+
+    PidfDocument doc = new PidfDocument();
+    doc.setEntity("sip:becky@nist.gov");
+    doc.getDevices().add(device);
+    doc.getNotes().add(new PresenceNote(null, "note"));
+    return doc;
+  };
+
+  @Test
+  public void testDocumentBuilt() throws Exception {
+    PidfDocument doc = PARSER.parse("open".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("sip:becky@nist.gov", doc.getEntity());
+    assertEquals(1, doc.getDevices().size());
+    PresenceDeviceInfo device = doc.getDevices().get(0);
+    assertEquals("1", device.getId());
+    assertEquals("open", device.getBasicStatus());
+    assertEquals("sip:becky@nist.gov", device.getContactURI());
+    assertEquals(0.5, device.getContactPriority(), 0.0);
+    assertEquals("device note", device.getDeviceNotes().get(0).getValue());
+    assertEquals("note", doc.getNotes().get(0).getValue());
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.noproxy;
+
+import static org.cafesip.sipunit.SipAssert.assertAnswered;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.cafesip.sipunit.SipCall;
+import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipRequest;
+import org.cafesip.sipunit.SipResponse;
+import org.cafesip.sipunit.SipStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sip.ClientTransaction;
+import javax.sip.SipException;
+import javax.sip.Timeout;
+import javax.sip.TimeoutEvent;
+import javax.sip.message.Response;
+
+/**
+ * Tests the asynchronous call methods of SipCall: answerAsync(), initiateOutgoingCallAsync() and
+ * disconnectAsync().
+ * 
+ * <p>
+ * Transaction timeouts take the stack half a minute or more, the timeout tests hand the SipCall the
+ * TimeoutEvent the stack would.
+ */
+public class TestAsyncCall {
+
+  private SipStack sipStack;
+
+  private SipPhone ua;
+
+  private SipPhone ub;
+
+  private String route;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("javax.sip.STACK_NAME", "testAsyncCall");
+    properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+    properties.setProperty("gov.nist.javax.sip.READ_TIMEOUT", "1000");
+    properties.setProperty("gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS", "false");
+
+    sipStack = new SipStack(SipStack.PROTOCOL_UDP, 0, properties);
+    ua = sipStack.createSipPhone("sip:amit@nist.gov");
+    ua.setLoopback(true);
+    ub = sipStack.createSipPhone("sip:becky@nist.gov");
+    ub.setLoopback(true);
+    route = ua.getStackAddress() + ':' + sipStack.getPort() + "/udp";
+  }
+
+  @After
+  public void tearDown() {
+    ua.dispose();
+    ub.dispose();
+    sipStack.dispose();
+  }
+
+  private static Throwable failure(Future<?> future) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+
+    fail("future completed normally");
+    return null;
+  }
+
+  private void timeOut(SipCall call) {
+    ClientTransaction ct = call.getLastTransaction().getClientTransaction();
+    call.processEvent(new TimeoutEvent(ua.getParent().getSipProvider(), ct, Timeout.TRANSACTION));
+  }
+
+  // sets up a call from callA to callB
+  private void connect(SipCall callA, SipCall callB) throws Exception {
+    CompletableFuture<SipRequest> invite = callB.answerAsync();
+    CompletableFuture<SipCall> answered = callA.initiateOutgoingCallAsync("sip:becky@nist.gov",
+        route);
+    assertSame(callA, answered.get(5, TimeUnit.SECONDS));
+    assertTrue(invite.get(5, TimeUnit.SECONDS).isInvite());
+    assertTrue(callB.waitForAck(5000));
+  }
+
+  @Test
+  public void testAnswerAndDisconnect() throws Exception {
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForDisconnect());
+
+    connect(callA, callB);
+    assertAnswered(callA, 1000);
+    assertTrue(callB.onAnswered().isDone());
+
+    // the INVITE answered was taken, not left for a blocking wait as well
+    SipCall other = ub.createSipCall();
+    assertFalse(other.waitForIncomingCall(200));
+
+    CompletableFuture<SipResponse> bye = callA.disconnectAsync();
+    assertTrue(callB.waitForDisconnect(5000));
+    assertFalse(bye.isDone());
+    assertTrue(callB.respondToDisconnect());
+    assertEquals(Response.OK, bye.get(5, TimeUnit.SECONDS).getStatusCode());
+  }
+
+  @Test
+  public void testCallRejected() throws Exception {
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+
+    CompletableFuture<SipRequest> invite = callB.answerAsync(Response.BUSY_HERE, "Busy", -1);
+    CompletableFuture<SipCall> answered = callA.initiateOutgoingCallAsync("sip:becky@nist.gov",
+        route);
+
+    assertTrue(invite.get(5, TimeUnit.SECONDS).isInvite());
+    assertTrue(failure(answered) instanceof SipException);
+    assertEquals(Response.BUSY_HERE, callA.getLastReceivedResponse().getStatusCode());
+    assertFalse(callB.onAnswered().isDone());
+  }
+
+  @Test
+  public void testCallTimesOut() throws Exception {
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+
+    CompletableFuture<SipCall> answered = callA.initiateOutgoingCallAsync("sip:becky@nist.gov",
+        route);
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertFalse(answered.isDone());
+
+    timeOut(callA);
+    assertTrue(failure(answered) instanceof TimeoutException);
+  }
+
+  @Test
+  public void testAnswerCancelled() throws Exception {
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    SipCall other = ub.createSipCall();
+    assertTrue(other.listenForIncomingCall());
+
+    // nothing to answer within the time given, stop listening
+    CompletableFuture<SipRequest> invite = callB.answerAsync();
+    try {
+      invite.get(200, TimeUnit.MILLISECONDS);
+      fail("no INVITE was sent");
+    } catch (TimeoutException e) {
+      assertTrue(invite.cancel(false));
+    }
+
+    // so the next INVITE is left for the blocking wait
+    CompletableFuture<SipCall> answered = callA.initiateOutgoingCallAsync("sip:becky@nist.gov",
+        route);
+    assertTrue(other.waitForIncomingCall(5000));
+    assertTrue(other.sendIncomingCallResponse(Response.DECLINE, "Decline", -1));
+    assertTrue(failure(answered) instanceof SipException);
+  }
+
+  @Test
+  public void testDisconnectErrorResponse() throws Exception {
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForDisconnect());
+    connect(callA, callB);
+
+    // an error response completes the future all the same, the caller checks the status code
+    CompletableFuture<SipResponse> bye = callA.disconnectAsync();
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect(Response.SERVER_INTERNAL_ERROR, "Oops"));
+    assertEquals(Response.SERVER_INTERNAL_ERROR,
+        bye.get(5, TimeUnit.SECONDS).getStatusCode());
+  }
+
+  @Test
+  public void testDisconnectWithoutDialog() throws Exception {
+    SipCall callA = ua.createSipCall();
+    assertTrue(failure(callA.disconnectAsync()) instanceof SipException);
+  }
+
+  @Test
+  public void testDisconnectTimesOut() throws Exception {
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForDisconnect());
+    connect(callA, callB);
+
+    CompletableFuture<SipResponse> bye = callA.disconnectAsync();
+    assertTrue(callB.waitForDisconnect(5000));
+
+    timeOut(callA);
+    assertTrue(failure(bye) instanceof TimeoutException);
+  }
+}
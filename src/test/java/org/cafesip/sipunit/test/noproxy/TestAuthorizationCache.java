@@ -0,0 +1,147 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.noproxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.cafesip.sipunit.AuthorizationCache;
+import org.cafesip.sipunit.SipCall;
+import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import javax.sip.header.AuthorizationHeader;
+import javax.sip.header.WWWAuthenticateHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+/**
+ * Tests the bounds and statistics of a SipPhone's AuthorizationCache.
+ */
+public class TestAuthorizationCache {
+
+  private SipStack sipStack;
+
+  private SipPhone ua;
+
+  private AuthorizationCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("javax.sip.STACK_NAME", "testAuthorizationCache");
+    properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+    properties.setProperty("gov.nist.javax.sip.READ_TIMEOUT", "1000");
+    properties.setProperty("gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS", "false");
+
+    sipStack = new SipStack(SipStack.PROTOCOL_UDP, 0, properties);
+    ua = sipStack.createSipPhone("sip:amit@nist.gov");
+    cache = ua.getAuthorizationCache();
+  }
+
+  @After
+  public void tearDown() {
+    ua.dispose();
+    sipStack.dispose();
+  }
+
+  // sends a MESSAGE with a new Call-ID, which gets an entry in the cache
+  private Request sendMessage() {
+    SipCall call = ua.createSipCall();
+    assertTrue(call.format(), call.initiateOutgoingMessage("sip:becky@nist.gov",
+        ua.getStackAddress() + ':' + sipStack.getPort() + "/udp"));
+    return call.getLastTransaction().getRequest();
+  }
+
+  private Request challenge(Request request) throws Exception {
+    Response response =
+        ua.getParent().getMessageFactory().createResponse(Response.UNAUTHORIZED, request);
+    WWWAuthenticateHeader authenticate =
+        ua.getParent().getHeaderFactory().createWWWAuthenticateHeader("Digest");
+    authenticate.setRealm("nist.gov");
+    authenticate.setNonce("dcd98b7102dd2f0e8b11d0f600bfb0c093");
+    authenticate.setAlgorithm("MD5");
+    response.addHeader(authenticate);
+
+    Request authorized = ua.processAuthChallenge(response, request, "amit", "a1b2c3d4");
+    assertNotNull(ua.format(), authorized);
+    assertNotNull(authorized.getHeader(AuthorizationHeader.NAME));
+    return authorized;
+  }
+
+  @Test
+  public void testLeastRecentlyUsedCallIdIsEvicted() throws Exception {
+    cache.setMaxEntries(2);
+
+    Request first = sendMessage();
+    Request second = sendMessage();
+    assertEquals(2, cache.size());
+    assertEquals(0, cache.getEvictionCount());
+
+    // using the first Call-ID leaves the second one as the least recently used
+    long hits = cache.getHitCount();
+    challenge(first);
+    assertEquals(hits + 1, cache.getHitCount());
+
+    sendMessage();
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+
+    // the evicted Call-ID is authorized again, and evicts the next least recently used one
+    long misses = cache.getMissCount();
+    hits = cache.getHitCount();
+    challenge(second);
+    assertEquals(misses + 1, cache.getMissCount());
+    assertEquals(hits, cache.getHitCount());
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testIdleCallIdExpires() throws Exception {
+    cache.setTimeToLive(100);
+
+    Request request = sendMessage();
+    assertEquals(1, cache.size());
+    Thread.sleep(300);
+
+    long misses = cache.getMissCount();
+    challenge(request);
+    assertEquals(misses + 1, cache.getMissCount());
+    assertEquals(1, cache.getExpirationCount());
+    assertEquals(1, cache.size());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testDisposedCallIsRemoved() throws Exception {
+    SipCall call = ua.createSipCall();
+    assertTrue(call.initiateOutgoingMessage("sip:becky@nist.gov",
+        ua.getStackAddress() + ':' + sipStack.getPort() + "/udp"));
+    assertEquals(1, cache.size());
+
+    call.dispose();
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getRemovalCount());
+  }
+}
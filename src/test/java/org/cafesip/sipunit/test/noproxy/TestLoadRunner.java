@@ -0,0 +1,99 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.noproxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipStack;
+import org.cafesip.sipunit.load.HoldTime;
+import org.cafesip.sipunit.load.LoadReport;
+import org.cafesip.sipunit.load.LoadRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests generating calls with LoadRunner on a loopback stack.
+ */
+public class TestLoadRunner {
+
+  private SipStack sipStack;
+
+  private ExecutorService dispatchExecutor;
+
+  private SipPhone ua;
+
+  private SipPhone ub;
+
+  private SipPhone uc;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("javax.sip.STACK_NAME", "testLoad");
+    properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+    properties.setProperty("gov.nist.javax.sip.READ_TIMEOUT", "1000");
+    properties.setProperty("gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS", "false");
+
+    sipStack = new SipStack(SipStack.PROTOCOL_UDP, 0, properties);
+    dispatchExecutor = Executors.newFixedThreadPool(2);
+    sipStack.setDispatchExecutor(dispatchExecutor);
+
+    ua = sipStack.createSipPhone("sip:amit@nist.gov");
+    ub = sipStack.createSipPhone("sip:becky@nist.gov");
+    uc = sipStack.createSipPhone("sip:carol@nist.gov");
+    ub.setLoopback(true);
+    uc.setLoopback(true);
+  }
+
+  @After
+  public void tearDown() {
+    ua.dispose();
+    ub.dispose();
+    uc.dispose();
+    sipStack.dispose();
+    dispatchExecutor.shutdown();
+  }
+
+  @Test
+  public void testCallsAtTargetRate() throws Exception {
+    LoadRunner runner = new LoadRunner(Collections.singletonList(ua), Arrays.asList(ub, uc));
+    runner.setViaNonProxyRoute(ua.getStackAddress() + ':' + sipStack.getPort() + ";lr/udp");
+    runner.setCallsPerSecond(20);
+    runner.setHoldTime(HoldTime.fixed(Duration.ofMillis(200)));
+    runner.setDuration(Duration.ofSeconds(2));
+    runner.setDrainTimeout(Duration.ofSeconds(5));
+
+    LoadReport report = runner.run();
+
+    assertTrue(report.toString(), report.getAttempted() >= 30);
+    assertEquals(report.toString(), report.getAttempted(), report.getAnswered());
+    assertEquals(report.toString(), 0, report.getFailed());
+    assertEquals(report.toString(), 0, report.getDisconnectFailed());
+    assertEquals(report.toString(), 0, report.getUnfinished());
+    assertTrue(report.getSetupLatency(50).compareTo(report.getMaxSetupLatency()) <= 0);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.noproxy;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.cafesip.sipunit.SipAssert.awaitStackDispose;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.cafesip.sipunit.SipCall;
+import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.RequestEvent;
+import javax.sip.header.CSeqHeader;
+import javax.sip.message.Response;
+
+/**
+ * Tests delivery of incoming events through per-session mailboxes (SipStack.setDispatchExecutor()).
+ */
+public class TestMailboxDispatch {
+
+  private SipStack sipStack;
+
+  private ExecutorService executor;
+
+  private SipPhone ua;
+
+  private SipPhone ub;
+
+  private SipPhone uc;
+
+  private int myPort = 5061;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("javax.sip.STACK_NAME", "testAgent");
+    properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+    properties.setProperty("gov.nist.javax.sip.READ_TIMEOUT", "1000");
+    properties.setProperty("gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS", "false");
+
+    sipStack = new SipStack(SipStack.PROTOCOL_UDP, myPort, properties);
+
+    executor = Executors.newFixedThreadPool(4);
+    sipStack.setDispatchExecutor(executor);
+
+    ua = sipStack.createSipPhone("sip:amit@nist.gov");
+    ub = sipStack.createSipPhone("sip:becky@nist.gov");
+    uc = sipStack.createSipPhone("sip:doodah@nist.gov");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ua.dispose();
+    ub.dispose();
+    uc.dispose();
+    awaitStackDispose(sipStack);
+    executor.shutdownNow();
+  }
+
+  private String message(String user, int cseq) {
+    String host = ua.getStackAddress();
+    return "MESSAGE sip:" + user + "@" + host + ":" + myPort + " SIP/2.0\r\n"
+        + "Via: SIP/2.0/UDP " + host + ":" + myPort + ";branch=z9hG4bKmailbox" + user + cseq
+        + "\r\n"
+        + "Max-Forwards: 70\r\n"
+        + "From: <sip:becky@nist.gov>;tag=1234\r\n"
+        + "To: <sip:" + user + "@nist.gov>\r\n"
+        + "Call-ID: mailbox-" + user + "@" + host + "\r\n"
+        + "CSeq: " + cseq + " MESSAGE\r\n"
+        + "Content-Length: 0\r\n\r\n";
+  }
+
+  @Test
+  public void testSlowListenerOnlyDelaysItsOwnSession() throws Exception {
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+
+    // ua's answer callback runs in ua's mailbox and gets stuck there until released
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<SipCall> answered = callA.initiateOutgoingCallAsync("sip:becky@nist.gov",
+        ua.getStackAddress() + ':' + myPort + "/udp");
+    answered.thenRun(() -> {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "OK", 0));
+    await().until(() -> ua.getMailboxDepth(), greaterThanOrEqualTo(1));
+
+    assertTrue(ua.listenRequestMessage());
+    assertTrue(uc.listenRequestMessage());
+
+    // uc isn't held up by ua
+    assertTrue(ub.sendUnidirectionalRequest(message("doodah", 1), false));
+    assertNotNull(uc.waitRequest(5000));
+
+    // ua's requests wait behind the stuck callback
+    assertTrue(ub.sendUnidirectionalRequest(message("amit", 1), false));
+    assertTrue(ub.sendUnidirectionalRequest(message("amit", 2), false));
+    await().until(() -> ua.getMailboxDepth(), greaterThanOrEqualTo(3));
+    assertNull(ua.waitRequest(200));
+    assertTrue(sipStack.getMailboxDepth() >= 3);
+
+    release.countDown();
+
+    // and are delivered in order once it returns
+    for (int cseq = 1; cseq <= 2; cseq++) {
+      RequestEvent event = ua.waitRequest(5000);
+      assertNotNull(event);
+      assertEquals(cseq,
+          ((CSeqHeader) event.getRequest().getHeader(CSeqHeader.NAME)).getSeqNumber());
+    }
+
+    await().until(() -> ua.getMailboxDepth(), is(0));
+    assertTrue(ua.getMaxMailboxDepth() >= 3);
+
+    assertTrue(callA.sendInviteOkAck());
+    assertTrue(callB.waitForAck(5000));
+  }
+}
@@ -44,6 +44,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.cafesip.sipunit.Credential;
+import org.cafesip.sipunit.HistoryPolicy;
+import org.cafesip.sipunit.LatencyMetric;
+import org.cafesip.sipunit.LatencyStats;
+import org.cafesip.sipunit.MessageJournal;
 import org.cafesip.sipunit.SipCall;
 import org.cafesip.sipunit.SipMessage;
 import org.cafesip.sipunit.SipPhone;
@@ -53,6 +57,9 @@ import org.cafesip.sipunit.SipSession;
 import org.cafesip.sipunit.SipStack;
 import org.cafesip.sipunit.SipTransaction;
 import org.cafesip.sipunit.test.util.AuthUtil;
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -60,11 +67,16 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EventObject;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import javax.sip.ClientTransaction;
 import javax.sip.Dialog;
@@ -569,6 +581,60 @@ public class TestNoProxy {
     ub.dispose();
   }
 
+  @Test
+  public void testAckLatency() throws Exception {
+    // the ACK must go out as soon as the OK has been received, not after a fixed delay
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+
+    callB.listenForIncomingCall();
+
+    callA.initiateOutgoingCall(getSipUserB(), ua.getStackAddress() + ':' + myPort + '/'
+        + testProtocol);
+    assertLastOperationSuccess("a initiate call - " + callA.format(), callA);
+
+    callB.waitForIncomingCall(10000);
+    assertLastOperationSuccess("b wait incoming call - " + callB.format(), callB);
+
+    callB.sendIncomingCallResponse(Response.OK, "Answer - Hello world", 0);
+    assertLastOperationSuccess("b send OK - " + callB.format(), callB);
+
+    callA.waitOutgoingCallResponse(10000);
+    assertLastOperationSuccess("a wait response - " + callA.format(), callA);
+    assertEquals("Unexpected response received", Response.OK, callA.getReturnCode());
+
+    SipResponse ok = callA.getLastReceivedResponse();
+    assertTrue(ok.getReceivedTime() != 0);
+
+    long start = System.nanoTime();
+    assertTrue(callA.sendInviteOkAck());
+    long elapsedMicros = (System.nanoTime() - start) / 1000;
+    assertLastOperationSuccess("Failure sending ACK - " + callA.format(), callA);
+
+    assertTrue(callB.waitForAck(5000));
+
+    // from the stack's receive stamps, unaffected by when the test got to the messages
+    long okToAckMicros = (callB.getLastReceivedRequest().getReceivedTime() - ok.getReceivedTime())
+        / 1000;
+    LOG.info("ACK sent in {} us, received {} us after the OK was", elapsedMicros, okToAckMicros);
+    assertTrue(okToAckMicros > 0);
+    // a single fixed delay before the ACK, like the 100 ms sleep there used to be, would show
+    assertTrue("ACK took " + elapsedMicros + " us to go out", elapsedMicros < 20000);
+
+    callA.listenForDisconnect();
+    callB.disconnect();
+    assertLastOperationSuccess("b disc - " + callB.format(), callB);
+
+    callA.waitForDisconnect(5000);
+    assertLastOperationSuccess("a wait disc - " + callA.format(), callA);
+    callA.respondToDisconnect();
+
+    ub.dispose();
+  }
+
   @Test
   public void testSipTestCaseMisc() throws Exception {
     // in this test, user a is handled at the SipCall level and user b at the
@@ -3215,6 +3281,50 @@ public class TestNoProxy {
     ub.dispose();
   }
 
+  @Test
+  public void testPreemptiveAuthorization() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    ua.addUpdateCredential(new Credential("nist.gov", "amit", "a1b2c3d4"));
+    ua.setPreemptiveAuthorization(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+
+    callB.listenForIncomingCall();
+
+    // the first call gets challenged
+    assertTrue(callA.initiateOutgoingCall(getSipUserB(), ua.getStackAddress() + ':' + myPort + '/'
+        + testProtocol));
+    assertTrue(callB.waitForIncomingCall(10000));
+    assertHeaderNotPresent(callB.getLastReceivedRequest(), ProxyAuthorizationHeader.NAME);
+
+    WWWAuthenticateHeader auth_header =
+        AuthUtil.getAuthenticationHeader(callB.getLastReceivedRequest(), callB.getHeaderFactory(),
+            "nist.gov");
+    ArrayList<Header> addnl = new ArrayList<>();
+    addnl.add(auth_header);
+
+    assertTrue(callB.sendIncomingCallResponse(Response.PROXY_AUTHENTICATION_REQUIRED, null, -1,
+        addnl, null, null));
+
+    assertTrue(callA.waitForAuthorisation(5000));
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertHeaderPresent(callB.getLastReceivedRequest(), ProxyAuthorizationHeader.NAME);
+    assertTrue(callB.sendIncomingCallResponse(Response.BUSY_HERE, null, -1));
+    assertTrue(callA.waitOutgoingCallResponse(5000));
+
+    // the next call, with a new Call-ID, is authorized on the first send
+    assertTrue(callA.initiateOutgoingCall(getSipUserB(), ua.getStackAddress() + ':' + myPort + '/'
+        + testProtocol));
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertHeaderContains(callB.getLastReceivedRequest(), ProxyAuthorizationHeader.NAME,
+        "someNonce");
+
+    ub.dispose();
+  }
+
   @Test
   public void testWaitForAuthNegative() throws Exception {
     SipPhone ub = sipStack.createSipPhone(getSipUserB());
@@ -3238,4 +3348,379 @@ public class TestNoProxy {
 
     ub.dispose();
   }
+
+  @Test
+  public void testMessageJournal() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    MessageJournal journal = new MessageJournal(1024);
+    ua.setMessageJournal(journal);
+    ub.setMessageJournal(journal);
+    ua.setHistoryPolicy(HistoryPolicy.NONE);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+
+    callB.listenForIncomingCall();
+
+    assertTrue(callA.initiateOutgoingCall(getSipUserB(), ua.getStackAddress() + ':' + myPort + '/'
+        + testProtocol));
+    assertTrue(callB.waitForIncomingCall(10000));
+    assertTrue(callB.sendIncomingCallResponse(Response.RINGING, null, -1));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "Answer - Hello world", 0));
+    assertTrue(callA.waitOutgoingCallResponse(10000));
+    assertTrue(callA.waitOutgoingCallResponse(10000));
+    assertEquals(Response.OK, callA.getReturnCode());
+
+    // no history kept, but the last response is
+    assertTrue(callA.getAllReceivedResponses().isEmpty());
+    assertEquals(Response.OK, callA.getLastReceivedResponse().getStatusCode());
+
+    String callId = ((CallIdHeader) callA.getLastReceivedResponse().getMessage()
+        .getHeader(CallIdHeader.NAME)).getCallId();
+
+    ArrayList<SipResponse> responses = journal.getAllReceivedResponses(callId);
+    assertEquals(2, responses.size());
+    assertEquals(Response.RINGING, responses.get(0).getStatusCode());
+    assertEquals(Response.OK, responses.get(1).getStatusCode());
+
+    ArrayList<SipRequest> requests = journal.getAllReceivedRequests(callId);
+    assertEquals(1, requests.size());
+    assertTrue(requests.get(0).isInvite());
+
+    assertEquals(3, journal.size());
+    assertTrue(journal.getEntries().get(0).getTimestamp() <= journal.getEntries().get(1)
+        .getTimestamp());
+
+    assertTrue(callA.sendInviteOkAck());
+    assertTrue(callB.waitForAck(5000));
+
+    callB.listenForDisconnect();
+    assertTrue(callA.disconnect());
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect());
+
+    ub.dispose();
+    journal.close();
+  }
+
+  @Test
+  public void testConcurrentCallsOnOnePhone() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    SipCall callA1 = ua.createSipCall();
+    SipCall callA2 = ua.createSipCall();
+    SipCall callB1 = ub.createSipCall();
+    SipCall callB2 = ub.createSipCall();
+
+    assertTrue(callB1.listenForIncomingCall());
+
+    String route = ua.getStackAddress() + ':' + myPort + '/' + testProtocol;
+    assertTrue(callA1.initiateOutgoingCall(getSipUserB(), route));
+    assertTrue(callB1.waitForIncomingCall(5000));
+    assertTrue(callA2.initiateOutgoingCall(getSipUserB(), route));
+    assertTrue(callB2.waitForIncomingCall(5000));
+
+    assertTrue(callB1.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertTrue(callB2.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertTrue(callA1.waitOutgoingCallResponse(5000));
+    assertEquals(Response.OK, callA1.getReturnCode());
+    assertTrue(callA2.waitOutgoingCallResponse(5000));
+    assertEquals(Response.OK, callA2.getReturnCode());
+
+    // both b legs wait at the same time, each must get the requests of its own call
+    CompletableFuture<Boolean> legB1 = CompletableFuture.supplyAsync(() -> callB1.waitForAck(5000)
+        && callB1.waitForDisconnect(5000) && callB1.respondToDisconnect());
+    CompletableFuture<Boolean> legB2 = CompletableFuture.supplyAsync(() -> callB2.waitForAck(5000)
+        && callB2.waitForDisconnect(5000) && callB2.respondToDisconnect());
+
+    assertTrue(callA2.sendInviteOkAck());
+    assertTrue(callA1.sendInviteOkAck());
+    assertTrue(callA2.disconnect());
+    assertTrue(callA1.disconnect());
+
+    assertTrue(legB1.get());
+    assertTrue(legB2.get());
+
+    assertEquals(callIdOf(callA1.getLastReceivedResponse()),
+        callIdOf(callB1.getLastReceivedRequest()));
+    assertEquals(callIdOf(callA2.getLastReceivedResponse()),
+        callIdOf(callB2.getLastReceivedRequest()));
+
+    ub.dispose();
+  }
+
+  @Test
+  public void testWaitForHoldsOneDeadline() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    assertTrue(ua.listenRequestMessage());
+
+    // unrelated traffic keeps arriving during the whole wait
+    String route = ua.getStackAddress() + ':' + myPort + '/' + testProtocol;
+    CompletableFuture<Void> noise = CompletableFuture.runAsync(() -> {
+      for (int i = 0; i < 10; i++) {
+        ub.createSipCall().initiateOutgoingMessage(getSipUserA(), route, "noise " + i);
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    });
+
+    long start = System.nanoTime();
+    assertNull(ua.waitFor(SipRequest::isBye, Duration.ofMillis(500)));
+    long elapsed = (System.nanoTime() - start) / 1000000;
+    assertEquals(SipSession.TIMEOUT_OCCURRED, ua.getReturnCode());
+    assertTrue("waited " + elapsed + " ms", elapsed >= 500 && elapsed < 1500);
+
+    noise.get();
+
+    // the requests passed over are still there, oldest first
+    SipRequest first = ua.waitFor(
+        request -> ((Request) request.getMessage()).getMethod().equals(Request.MESSAGE),
+        Duration.ofSeconds(5));
+    assertNotNull(first);
+    assertEquals("noise 0", new String(first.getRawContent()));
+
+    ub.dispose();
+  }
+
+  @Test
+  public void testAssertionsWakeOnStateChange() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+
+    callA.initiateOutgoingCallAsync(getSipUserB(),
+        ua.getStackAddress() + ':' + myPort + '/' + testProtocol);
+
+    // the INVITE is reported without being taken
+    assertRequestReceived(Request.INVITE, ub, 5000);
+    assertTrue(callB.waitForIncomingCall(5000));
+
+    CompletableFuture.runAsync(() -> {
+      try {
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      callB.sendIncomingCallResponse(Response.OK, "OK", 0);
+    });
+
+    // woken by the answer, sent 200 ms from now, rather than by the 5 s timeout
+    long start = System.nanoTime();
+    assertAnswered(callA, 5000);
+    long elapsed = (System.nanoTime() - start) / 1000000;
+    assertTrue("answer seen after " + elapsed + " ms", elapsed < 2000);
+    assertResponseReceived(Response.OK, callA, 1000);
+
+    assertTrue(callB.waitForAck(5000));
+    assertTrue(callA.disconnect());
+    assertRequestReceived(Request.BYE, ub, 5000);
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect());
+
+    ub.dispose();
+  }
+
+  @Test
+  public void testPassedOverRequestsRecorded() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+
+    callA.initiateOutgoingCallAsync(getSipUserB(),
+        ua.getStackAddress() + ':' + myPort + '/' + testProtocol);
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertAnswered(callA, 5000);
+    assertRequestReceived(Request.ACK, ub, 5000);
+
+    // the ACK isn't taken by a wait for a BYE but is still recorded, once
+    assertFalse(callB.waitForDisconnect(200));
+    assertEquals(2, callB.getAllReceivedRequests().size());
+    assertTrue(callB.getLastReceivedRequest().isAck());
+    assertTrue(callB.waitForAck(1000));
+    assertEquals(2, callB.getAllReceivedRequests().size());
+
+    assertTrue(callA.disconnect());
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect());
+
+    ub.dispose();
+  }
+
+  @Test
+  public void testPassedOverRequestsRecordedOnceWithBoundedHistory() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    callB.setHistoryPolicy(HistoryPolicy.lastN(1));
+    assertTrue(callB.listenForIncomingCall());
+
+    callA.initiateOutgoingCallAsync(getSipUserB(),
+        ua.getStackAddress() + ':' + myPort + '/' + testProtocol);
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertAnswered(callA, 5000);
+    assertRequestReceived(Request.ACK, ub, 5000);
+
+    // the ACK is recorded while waiting for a BYE
+    assertFalse(callB.waitForDisconnect(200));
+    assertTrue(callB.getLastReceivedRequest().isAck());
+
+    // then the BYE pushes it out of the history - taking the ACK mustn't record it again
+    CompletableFuture<SipResponse> bye = callA.disconnectAsync();
+    assertRequestReceived(Request.BYE, ub, 5000);
+    assertTrue(callB.waitForAck(1000));
+    assertTrue(callB.getLastReceivedRequest().isBye());
+    assertEquals(1, callB.getAllReceivedRequests().size());
+
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect());
+    assertEquals(Response.OK, bye.get().getStatusCode());
+
+    ub.dispose();
+  }
+
+  @Test
+  public void testPendingRequestsBounded() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+    assertEquals(SipSession.DEFAULT_MAX_PENDING_REQUESTS, ub.getMaxPendingRequests());
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+
+    callA.initiateOutgoingCallAsync(getSipUserB(),
+        ua.getStackAddress() + ':' + myPort + '/' + testProtocol);
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertAnswered(callA, 5000);
+    assertRequestReceived(Request.ACK, ub, 5000);
+
+    // the ACK nobody waits for makes room for the BYE
+    ub.setMaxPendingRequests(1);
+    CompletableFuture<SipResponse> bye = callA.disconnectAsync();
+    await().until(() -> ub.getDroppedRequestCount() == 1);
+    assertFalse(callB.waitForAck(200));
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect());
+    assertEquals(Response.OK, bye.get().getStatusCode());
+
+    ub.dispose();
+  }
+
+  @Test
+  public void testLatencyStatsRecorded() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+
+    assertTrue(callA.initiateOutgoingCall(getSipUserB(),
+        ua.getStackAddress() + ':' + myPort + '/' + testProtocol));
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertTrue(callB.sendIncomingCallResponse(Response.RINGING, "Ringing", 0));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertAnswered(callA, 5000);
+    assertTrue(callA.sendInviteOkAck());
+    assertTrue(callB.waitForAck(5000));
+
+    assertTrue(callB.listenForDisconnect());
+    assertTrue(callA.disconnect());
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect());
+
+    LatencyStats stats = ua.getLatencyStats();
+    await().until(() -> stats.getHistogram(LatencyMetric.BYE).getTotalCount() == 1);
+    assertEquals(1, stats.getHistogram(LatencyMetric.INVITE_RINGING).getTotalCount());
+    assertEquals(1, stats.getHistogram(LatencyMetric.INVITE_ANSWER).getTotalCount());
+    assertEquals(1, stats.getHistogram(LatencyMetric.BYE).getTotalCount());
+    assertTrue(stats.getValueAtPercentile(LatencyMetric.INVITE_RINGING, 50)
+        <= stats.getValueAtPercentile(LatencyMetric.INVITE_ANSWER, 50));
+    assertEquals(0, ub.getLatencyStats().getHistogram(LatencyMetric.INVITE_ANSWER)
+        .getTotalCount());
+
+    // the stack's statistics cover all of its phones
+    assertEquals(1, sipStack.getLatencyStats().getHistogram(LatencyMetric.INVITE_ANSWER)
+        .getTotalCount());
+
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    HistogramLogWriter writer = new HistogramLogWriter(new PrintStream(log));
+    writer.outputLogFormatVersion();
+    writer.outputLegend();
+    sipStack.getLatencyStats().writeInterval(writer);
+
+    HistogramLogReader reader = new HistogramLogReader(new ByteArrayInputStream(log.toByteArray()));
+    ArrayList<String> tags = new ArrayList<>();
+    EncodableHistogram interval;
+    while ((interval = reader.nextIntervalHistogram()) != null) {
+      tags.add(interval.getTag());
+    }
+    // (plus INVITE_TRYING if the stack sent a 100 Trying)
+    assertTrue(tags.toString(),
+        tags.containsAll(Arrays.asList("INVITE_RINGING", "INVITE_ANSWER", "BYE")));
+
+    ub.dispose();
+  }
+
+  @Test
+  public void testTransactionAndMessageTimes() throws Exception {
+    SipPhone ub = sipStack.createSipPhone(getSipUserB());
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+
+    assertTrue(callA.initiateOutgoingCall(getSipUserB(),
+        ua.getStackAddress() + ':' + myPort + '/' + testProtocol));
+    SipTransaction invite = callA.getLastTransaction();
+    assertTrue(invite.getSentTime() != 0);
+    assertEquals(0, invite.getFinalResponseTime());
+
+    assertTrue(callB.waitForIncomingCall(5000));
+    long inviteReceived = callB.getLastReceivedRequest().getReceivedTime();
+    assertTrue(inviteReceived - invite.getSentTime() >= 0);
+
+    assertTrue(callB.sendIncomingCallResponse(Response.RINGING, "Ringing", 0));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertAnswered(callA, 5000);
+
+    assertTrue(invite.getFirstProvisionalTime() - inviteReceived >= 0);
+    assertTrue(invite.getFinalResponseTime() - invite.getFirstProvisionalTime() >= 0);
+    assertEquals(invite.getFinalResponseTime(), callA.getLastReceivedResponse().getReceivedTime());
+    assertEquals(0, invite.getTimeoutTime());
+
+    // the receive time is kept from when the message came in, not when it's looked at
+    assertEquals(inviteReceived, callB.getLastReceivedRequest().getReceivedTime());
+
+    assertTrue(callA.sendInviteOkAck());
+    assertTrue(callB.waitForAck(5000));
+    assertTrue(callA.disconnect());
+    assertTrue(callB.waitForDisconnect(5000));
+    assertTrue(callB.respondToDisconnect());
+
+    ub.dispose();
+  }
+
+  private static String callIdOf(SipMessage message) {
+    return ((CallIdHeader) message.getMessage().getHeader(CallIdHeader.NAME)).getCallId();
+  }
 }
@@ -72,7 +72,7 @@ public class TestPresenceNoProxy {
 
   private SipStack sipStack;
 
-  private SipPhone ua;
+  protected SipPhone ua;
 
   private String host;
 
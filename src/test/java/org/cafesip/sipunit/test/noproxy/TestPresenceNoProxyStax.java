@@ -0,0 +1,35 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.noproxy;
+
+import org.cafesip.sipunit.StaxPidfParser;
+import org.junit.Before;
+
+/**
+ * Runs all of the TestPresenceNoProxy tests with the subscribing SipPhone using the StAX PIDF
+ * parser instead of the default JAXB one, to verify both produce the same presence information.
+ * 
+ */
+public class TestPresenceNoProxyStax extends TestPresenceNoProxy {
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    ua.setPidfParser(new StaxPidfParser());
+  }
+}
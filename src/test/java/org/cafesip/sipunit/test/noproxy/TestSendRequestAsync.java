@@ -0,0 +1,205 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.noproxy;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+
+import org.cafesip.sipunit.Credential;
+import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipStack;
+import org.cafesip.sipunit.SipTransaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sip.ClientTransaction;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.Timeout;
+import javax.sip.TimeoutEvent;
+import javax.sip.header.AuthorizationHeader;
+import javax.sip.header.WWWAuthenticateHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+/**
+ * Tests SipSession.sendRequestAsync(): the final response, authentication challenges and the
+ * transaction timing out.
+ */
+public class TestSendRequestAsync {
+
+  private SipStack sipStack;
+
+  private SipPhone ua;
+
+  private SipPhone ub;
+
+  private int cseq;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("javax.sip.STACK_NAME", "testSendRequestAsync");
+    properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+    properties.setProperty("gov.nist.javax.sip.READ_TIMEOUT", "1000");
+    properties.setProperty("gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS", "false");
+
+    sipStack = new SipStack(SipStack.PROTOCOL_UDP, 0, properties);
+    ua = sipStack.createSipPhone("sip:amit@nist.gov");
+    ub = sipStack.createSipPhone("sip:becky@nist.gov");
+    ub.setLoopback(true);
+    assertTrue(ub.listenRequestMessage());
+  }
+
+  @After
+  public void tearDown() {
+    ua.dispose();
+    ub.dispose();
+    sipStack.dispose();
+  }
+
+  // a MESSAGE from ua to ub, on a Call-ID of its own
+  private Request message() throws Exception {
+    String host = ua.getStackAddress();
+    int port = sipStack.getPort();
+    cseq++;
+    return sipStack.getMessageFactory().createRequest(
+        "MESSAGE sip:becky@" + host + ":" + port + ";transport=udp SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP " + host + ":" + port + "\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "From: <sip:amit@nist.gov>;tag=1234\r\n"
+            + "To: <sip:becky@nist.gov>\r\n"
+            + "Call-ID: async-" + cseq + "@" + host + "\r\n"
+            + "CSeq: " + cseq + " MESSAGE\r\n"
+            + "Content-Length: 0\r\n\r\n");
+  }
+
+  private RequestEvent receive() {
+    RequestEvent received = ub.waitRequest(5000);
+    assertNotNull(ub.format(), received);
+    return received;
+  }
+
+  @Test
+  public void testFinalResponse() throws Exception {
+    CompletableFuture<ResponseEvent> future = ua.sendRequestAsync(message(), false, null);
+
+    SipTransaction trans = ub.sendReply(receive(), Response.TRYING, null, null, null, -1);
+    assertNotNull(ub.format(), trans);
+    assertFalse(future.isDone());
+    assertNotNull(ub.sendReply(trans, Response.OK, null, null, null, -1));
+
+    assertEquals(Response.OK,
+        future.get(5, TimeUnit.SECONDS).getResponse().getStatusCode());
+  }
+
+  @Test
+  public void testErrorResponse() throws Exception {
+    CompletableFuture<ResponseEvent> future = ua.sendRequestAsync(message(), false, null);
+
+    assertNotNull(ub.sendReply(receive(), Response.NOT_FOUND, null, null, null, -1));
+
+    // an error response completes the future all the same
+    assertEquals(Response.NOT_FOUND,
+        future.get(5, TimeUnit.SECONDS).getResponse().getStatusCode());
+  }
+
+  @Test
+  public void testChallengeAnswered() throws Exception {
+    ua.addUpdateCredential(new Credential("nist.gov", "amit", "a1b2c3d4"));
+    CompletableFuture<ResponseEvent> future = ua.sendRequestAsync(message(), false, null);
+
+    RequestEvent received = receive();
+    assertNull(received.getRequest().getHeader(AuthorizationHeader.NAME));
+    Response challenge =
+        sipStack.getMessageFactory().createResponse(Response.UNAUTHORIZED, received.getRequest());
+    WWWAuthenticateHeader authenticate =
+        sipStack.getHeaderFactory().createWWWAuthenticateHeader("Digest");
+    authenticate.setRealm("nist.gov");
+    authenticate.setNonce("dcd98b7102dd2f0e8b11d0f600bfb0c093");
+    authenticate.setAlgorithm("MD5");
+    challenge.addHeader(authenticate);
+    assertNotNull(ub.sendReply(received, challenge));
+
+    received = receive();
+    assertNotNull(received.getRequest().getHeader(AuthorizationHeader.NAME));
+    assertFalse(future.isDone());
+    assertNotNull(ub.sendReply(received, Response.OK, null, null, null, -1));
+
+    assertEquals(Response.OK,
+        future.get(5, TimeUnit.SECONDS).getResponse().getStatusCode());
+
+    // the authorization cached along the way is gone with the request
+    await().until(() -> ua.getAuthorizationCache().size(), is(0));
+  }
+
+  @Test
+  public void testChallengeNotAnswered() throws Exception {
+    // no credentials, the challenge is passed on
+    CompletableFuture<ResponseEvent> future = ua.sendRequestAsync(message(), false, null);
+
+    RequestEvent received = receive();
+    Response challenge =
+        sipStack.getMessageFactory().createResponse(Response.UNAUTHORIZED, received.getRequest());
+    WWWAuthenticateHeader authenticate =
+        sipStack.getHeaderFactory().createWWWAuthenticateHeader("Digest");
+    authenticate.setRealm("nist.gov");
+    authenticate.setNonce("dcd98b7102dd2f0e8b11d0f600bfb0c093");
+    challenge.addHeader(authenticate);
+    assertNotNull(ub.sendReply(received, challenge));
+
+    assertEquals(Response.UNAUTHORIZED,
+        future.get(5, TimeUnit.SECONDS).getResponse().getStatusCode());
+    await().until(() -> ua.getAuthorizationCache().size(), is(0));
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    Request request = message();
+    CompletableFuture<ResponseEvent> future = ua.sendRequestAsync(request, false, null);
+    receive();
+
+    // the stack takes half a minute to give up, hand ua the TimeoutEvent it would
+    ClientTransaction ct = (ClientTransaction) ((SIPTransactionStack) sipStack.getSipStack())
+        .findTransaction((SIPMessage) request, false);
+    assertNotNull(ct);
+    ua.processTimeout(new TimeoutEvent(sipStack.getSipProvider(), ct, Timeout.TRANSACTION));
+
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("no response was sent");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+  }
+}
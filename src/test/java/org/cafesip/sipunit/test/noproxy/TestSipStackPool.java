@@ -0,0 +1,118 @@
+/*
+ * Created on Oct 18, 2026
+ *
+ * Copyright 2005 CafeSip.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.cafesip.sipunit.test.noproxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.cafesip.sipunit.SipCall;
+import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipStack;
+import org.cafesip.sipunit.SipStackPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import javax.sip.message.Response;
+
+/**
+ * Tests leasing and releasing stacks with SipStackPool.
+ */
+public class TestSipStackPool {
+
+  private SipStackPool pool;
+
+  private Properties properties;
+
+  private int myPort = 5061;
+
+  @Before
+  public void setUp() throws Exception {
+    pool = new SipStackPool();
+
+    properties = new Properties();
+    properties.setProperty("javax.sip.STACK_NAME", "testAgent");
+    properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+    properties.setProperty("gov.nist.javax.sip.READ_TIMEOUT", "1000");
+    properties.setProperty("gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS", "false");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pool.close();
+  }
+
+  private void call(SipStack sipStack) throws Exception {
+    SipPhone ua = sipStack.createSipPhone("sip:amit@nist.gov");
+    SipPhone ub = sipStack.createSipPhone("sip:becky@nist.gov");
+    ub.setLoopback(true);
+
+    SipCall callA = ua.createSipCall();
+    SipCall callB = ub.createSipCall();
+    assertTrue(callB.listenForIncomingCall());
+    assertTrue(callA.initiateOutgoingCall("sip:becky@nist.gov",
+        ua.getStackAddress() + ':' + myPort + "/udp"));
+    assertTrue(callB.waitForIncomingCall(5000));
+    assertTrue(callB.sendIncomingCallResponse(Response.OK, "OK", 0));
+    assertTrue(callA.waitOutgoingCallResponse(5000));
+    assertEquals(Response.OK, callA.getReturnCode());
+    assertTrue(callA.sendInviteOkAck());
+    assertTrue(callB.waitForAck(5000));
+
+    ua.dispose();
+    ub.dispose();
+  }
+
+  @Test
+  public void testReleasedStackIsReused() throws Exception {
+    SipStack first = pool.lease(SipStack.PROTOCOL_UDP, myPort, properties);
+    call(first);
+    assertTrue(pool.release(first));
+    assertEquals(1, pool.getIdleCount());
+    assertFalse(first.isDisposed());
+
+    SipStack second = pool.lease(SipStack.PROTOCOL_UDP, myPort, properties);
+    assertSame(first, second);
+    assertEquals(0, second.getSessionCount());
+    assertEquals(0, second.getRetransmissions());
+    call(second);
+    assertTrue(pool.release(second));
+
+    assertEquals(1, pool.getCreatedCount());
+    assertEquals(1, pool.getReusedCount());
+  }
+
+  @Test
+  public void testStackWithLeakedPhoneIsNotReused() throws Exception {
+    SipStack first = pool.lease(SipStack.PROTOCOL_UDP, myPort, properties);
+    first.createSipPhone("sip:amit@nist.gov");
+
+    assertFalse(pool.release(first));
+    assertTrue(first.isDisposed());
+    assertEquals(0, pool.getIdleCount());
+
+    SipStack second = pool.lease(SipStack.PROTOCOL_UDP, myPort, properties);
+    assertNotSame(first, second);
+    assertEquals(2, pool.getCreatedCount());
+    assertTrue(pool.release(second));
+  }
+}
@@ -19,17 +19,25 @@ package org.cafesip.sipunit.test.noproxy;
 import static org.cafesip.sipunit.SipAssert.assertLastOperationSuccess;
 import static org.cafesip.sipunit.SipAssert.awaitStackDispose;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import org.cafesip.sipunit.SipCall;
 import org.cafesip.sipunit.SipPhone;
+import org.cafesip.sipunit.SipResponse;
 import org.cafesip.sipunit.SipStack;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import javax.sip.address.SipURI;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.ViaHeader;
 import javax.sip.message.Response;
 
 /**
@@ -197,4 +205,108 @@ public class TestTwoOrMoreSipStacksNoProxy {
 
     ub.dispose();
   }
+
+  @Test
+  public void testEphemeralPortsWithSameStackName() throws Exception {
+    // same properties, hence same STACK_NAME, and no port bookkeeping
+    SipStack stackA = new SipStack(testProtocol, 0, properties1);
+    SipStack stackB = new SipStack(testProtocol, 0, properties1);
+    try {
+      assertNotEquals(stackA.getStackName(), stackB.getStackName());
+      assertTrue(stackA.getPort() > 0);
+      assertTrue(stackB.getPort() > 0);
+      assertNotEquals(stackA.getPort(), stackB.getPort());
+
+      SipPhone uc = stackA.createSipPhone("sip:doodah@nist.gov");
+      SipPhone ud = stackB.createSipPhone("sip:becky@nist.gov");
+      ud.setLoopback(true);
+
+      assertEquals(stackA.getPort(),
+          ((SipURI) uc.getContactInfo().getContactHeader().getAddress().getURI()).getPort());
+      assertEquals(stackA.getPort(), uc.getViaHeaders().get(0).getPort());
+
+      SipCall callC = uc.createSipCall();
+      SipCall callD = ud.createSipCall();
+      callD.listenForIncomingCall();
+
+      callC.initiateOutgoingCall("sip:becky@nist.gov",
+          ud.getStackAddress() + ":" + stackB.getPort() + ";lr/" + testProtocol);
+      assertLastOperationSuccess(callC);
+
+      callD.waitForIncomingCall(4000);
+      assertLastOperationSuccess(callD);
+
+      callD.sendIncomingCallResponse(Response.OK, "OK", 0);
+      callC.waitOutgoingCallResponse(5000);
+      assertEquals("Unexpected response received", Response.OK, callC.getReturnCode());
+
+      callC.sendInviteOkAck();
+      assertLastOperationSuccess(callC);
+      assertTrue(callD.waitForAck(5000));
+
+      // uc must take the BYE sent to callC's tcp Contact even though it isn't in loopback mode
+      assertTrue(callC.listenForDisconnect());
+      CompletableFuture<SipResponse> bye = callD.disconnectAsync();
+      assertTrue(callC.waitForDisconnect(5000));
+      assertTrue(callC.respondToDisconnect());
+      assertEquals(Response.OK, bye.get(5, TimeUnit.SECONDS).getStatusCode());
+
+      uc.dispose();
+      ud.dispose();
+    } finally {
+      awaitStackDispose(stackA);
+      awaitStackDispose(stackB);
+    }
+  }
+
+  @Test
+  public void testSeveralTransportsOnOneStack() throws Exception {
+    SipStack stack = new SipStack(SipStack.PROTOCOL_UDP, 0, properties1);
+    try {
+      int tcpPort = stack.addListeningPoint(SipStack.PROTOCOL_TCP, 0);
+      assertEquals(tcpPort, stack.getListeningPoint(SipStack.PROTOCOL_TCP).getPort());
+
+      SipPhone uc = stack.createSipPhone("sip:doodah@nist.gov");
+      SipPhone ud = stack.createSipPhone(null, null, -1, "sip:becky@nist.gov",
+          SipStack.PROTOCOL_TCP);
+      ud.setLoopback(true);
+
+      assertEquals(SipStack.PROTOCOL_UDP, uc.getTransport());
+      assertEquals(SipStack.PROTOCOL_TCP, ud.getTransport());
+      SipURI contact = (SipURI) ud.getContactInfo().getContactHeader().getAddress().getURI();
+      assertEquals(tcpPort, contact.getPort());
+      assertEquals(SipStack.PROTOCOL_TCP, contact.getTransportParam().toLowerCase());
+      assertEquals(tcpPort, ud.getViaHeaders().get(0).getPort());
+
+      // the call follows its route's transport, not the udp phone's own
+      SipCall callC = uc.createSipCall();
+      SipCall callD = ud.createSipCall();
+      callD.listenForIncomingCall();
+
+      callC.initiateOutgoingCall("sip:becky@nist.gov",
+          ud.getStackAddress() + ":" + tcpPort + ";lr/" + SipStack.PROTOCOL_TCP);
+      assertLastOperationSuccess(callC);
+
+      callD.waitForIncomingCall(4000);
+      assertLastOperationSuccess(callD);
+      ViaHeader via = (ViaHeader) callD.getLastReceivedRequest().getMessage()
+          .getHeader(ViaHeader.NAME);
+      assertEquals(SipStack.PROTOCOL_TCP, via.getTransport().toLowerCase());
+      SipURI callContact = (SipURI) ((ContactHeader) callD.getLastReceivedRequest().getMessage()
+          .getHeader(ContactHeader.NAME)).getAddress().getURI();
+      assertEquals(tcpPort, callContact.getPort());
+
+      callD.sendIncomingCallResponse(Response.OK, "OK", 0);
+      callC.waitOutgoingCallResponse(5000);
+      assertEquals("Unexpected response received", Response.OK, callC.getReturnCode());
+
+      callC.sendInviteOkAck();
+      assertLastOperationSuccess(callC);
+
+      uc.dispose();
+      ud.dispose();
+    } finally {
+      awaitStackDispose(stack);
+    }
+  }
 }